@@ -13,7 +13,10 @@ import java.io.OutputStream;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import org.bsplines.ltexls.client.LtexLanguageClient;
+import org.bsplines.ltexls.server.CheckExecutor;
 import org.bsplines.ltexls.server.LtexLanguageServer;
+import org.bsplines.ltexls.settings.LanguageToolInterfacePool;
+import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.framework.qual.DefaultQualifier;
@@ -31,7 +34,21 @@ public class LtexLanguageServerLauncher {
    */
   public static void launch(InputStream in, OutputStream out) throws
         InterruptedException, ExecutionException {
-    LtexLanguageServer server = new LtexLanguageServer();
+    launch(in, out, new CheckExecutor(), new LanguageToolInterfacePool());
+  }
+
+  /**
+   * Launch the LTeX language server.
+   *
+   * @param in InputStream to listen for client input
+   * @param out OutputStream to write server output to
+   * @param checkExecutor executor that runs the checks of documents
+   * @param languageToolInterfacePool pool of LanguageTool instances
+   */
+  public static void launch(InputStream in, OutputStream out, CheckExecutor checkExecutor,
+        LanguageToolInterfacePool languageToolInterfacePool) throws
+        InterruptedException, ExecutionException {
+    LtexLanguageServer server = new LtexLanguageServer(checkExecutor, languageToolInterfacePool);
     Launcher<LtexLanguageClient> launcher = (new LSPLauncher.Builder<LtexLanguageClient>())
         .setLocalService(server).setRemoteInterface(LtexLanguageClient.class)
         .setInput(in).setOutput(out).create();
@@ -44,12 +61,25 @@ public class LtexLanguageServerLauncher {
   }
 
   /**
-   * Main method. Checks command-line arguments and launches the LTeX language server with
-   * @c System.in and @c System.out as streams.
+   * Main method. Checks command-line arguments and launches the LTeX language server
+   * with @c System.in and @c System.out as streams.
+   *
+   * <p>The checking executor can be configured with the arguments
+   * <code>--check-thread-count=N</code> (number of threads that run checks),
+   * <code>--check-queue-capacity=N</code> (maximum number of checks waiting for a free thread,
+   * unbounded by default; checks are coalesced per document), and
+   * <code>--check-queue-policy=discard-oldest|reject</code> (what to do if the queue is full).
+   * The maximum number of LanguageTool instances can be set with
+   * <code>--max-language-tool-instances=N</code>; if exceeded, idle instances are evicted.
    *
    * @param args command-line arguments
    */
   public static void main(String[] args) throws InterruptedException, ExecutionException {
+    int checkThreadCount = CheckExecutor.defaultThreadCount;
+    int checkQueueCapacity = CheckExecutor.defaultQueueCapacity;
+    CheckExecutor.QueuePolicy checkQueuePolicy = CheckExecutor.QueuePolicy.DISCARD_OLDEST;
+    int maxLanguageToolInstanceCount = LanguageToolInterfacePool.defaultMaxTotalInstanceCount;
+
     for (String arg : args) {
       if (arg.equals("--version")) {
         @Nullable Package ltexLsPackage = LtexLanguageServer.class.getPackage();
@@ -66,9 +96,37 @@ public class LtexLanguageServerLauncher {
         Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
         System.out.println(gsonBuilder.toJson(jsonObject));
         return;
+      } else if (arg.startsWith("--check-thread-count=")) {
+        checkThreadCount = parsePositiveInteger(arg);
+      } else if (arg.startsWith("--check-queue-capacity=")) {
+        checkQueueCapacity = parsePositiveInteger(arg);
+      } else if (arg.startsWith("--check-queue-policy=")) {
+        checkQueuePolicy = CheckExecutor.QueuePolicy.valueOf(
+            getArgumentValue(arg).toUpperCase().replace('-', '_'));
+      } else if (arg.startsWith("--max-language-tool-instances=")) {
+        maxLanguageToolInstanceCount = parsePositiveInteger(arg);
       }
     }
 
-    launch(System.in, System.out);
+    CheckExecutor checkExecutor =
+        new CheckExecutor(checkThreadCount, checkQueueCapacity, checkQueuePolicy);
+    LanguageToolInterfacePool languageToolInterfacePool = new LanguageToolInterfacePool(
+        Math.min(LanguageToolInterfacePool.defaultMaxInstanceCount, maxLanguageToolInstanceCount),
+        maxLanguageToolInstanceCount);
+    launch(System.in, System.out, checkExecutor, languageToolInterfacePool);
+  }
+
+  private static String getArgumentValue(String arg) {
+    return arg.substring(arg.indexOf('=') + 1);
+  }
+
+  private static int parsePositiveInteger(String arg) {
+    int value = Integer.parseInt(getArgumentValue(arg));
+
+    if (value <= 0) {
+      throw new IllegalArgumentException(Tools.i18n("invalidCommandLineArgument", arg));
+    }
+
+    return value;
   }
 }
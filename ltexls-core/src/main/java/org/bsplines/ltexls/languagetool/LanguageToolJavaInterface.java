@@ -41,7 +41,7 @@ public class LanguageToolJavaInterface extends LanguageToolInterface {
   private @MonotonicNonNull ResultCache resultCache;
   private @MonotonicNonNull JLanguageTool languageTool;
 
-  private static final int resultCacheExpireAfterMinutes = 60;
+  public static final int resultCacheExpireAfterMinutes = 60;
 
   /**
    * Constructor.
@@ -53,6 +53,22 @@ public class LanguageToolJavaInterface extends LanguageToolInterface {
    */
   public LanguageToolJavaInterface(String languageShortCode, String motherTongueShortCode,
         int sentenceCacheSize, Set<String> dictionary) {
+    this(languageShortCode, motherTongueShortCode, new ResultCache(
+        sentenceCacheSize, resultCacheExpireAfterMinutes, TimeUnit.MINUTES), dictionary);
+  }
+
+  /**
+   * Constructor. The result cache may be shared with other instances (also with instances for
+   * other languages or rule configurations), as the cached results are keyed by the language,
+   * the rule configuration, the user dictionary, and the sentence.
+   *
+   * @param languageShortCode short code of the checking language
+   * @param motherTongueShortCode short code of the mother tongue language
+   * @param resultCache cache for analyzed sentences and matches
+   * @param dictionary list of words of the user dictionary
+   */
+  public LanguageToolJavaInterface(String languageShortCode, String motherTongueShortCode,
+        ResultCache resultCache, Set<String> dictionary) {
     if (!Languages.isLanguageSupported(languageShortCode)) {
       Tools.logger.severe(Tools.i18n("notARecognizedLanguage", languageShortCode));
       return;
@@ -61,8 +77,7 @@ public class LanguageToolJavaInterface extends LanguageToolInterface {
     Language language = Languages.getLanguageForShortCode(languageShortCode);
     @Nullable Language motherTongue = ((!motherTongueShortCode.isEmpty())
         ? Languages.getLanguageForShortCode(motherTongueShortCode) : null);
-    this.resultCache = new ResultCache(
-        sentenceCacheSize, resultCacheExpireAfterMinutes, TimeUnit.MINUTES);
+    this.resultCache = resultCache;
     UserConfig userConfig = new UserConfig(new ArrayList<>(dictionary));
 
     @SuppressWarnings("argument.type.incompatible")
@@ -49,6 +49,20 @@ public class LanguageToolRuleMatch {
     }
   }
 
+  /**
+   * Copy constructor.
+   *
+   * @param obj match to copy
+   */
+  public LanguageToolRuleMatch(LanguageToolRuleMatch obj) {
+    if (obj.ruleId != null) this.ruleId = obj.ruleId;
+    if (obj.sentence != null) this.sentence = obj.sentence;
+    this.fromPos = obj.fromPos;
+    this.toPos = obj.toPos;
+    this.message = obj.message;
+    this.suggestedReplacements = new ArrayList<>(obj.suggestedReplacements);
+  }
+
   public @Nullable String getRuleId() {
     return this.ruleId;
   }
@@ -53,6 +53,36 @@ public abstract class CodeAnnotatedTextBuilder extends AnnotatedTextBuilder {
 
   public abstract CodeAnnotatedTextBuilder addCode(String code);
 
+  /**
+   * Add code to the builder, reusing the parse state of the previous version of the code
+   * fragment if possible. The default implementation ignores the parse cache and parses all
+   * of the code.
+   *
+   * @param code code
+   * @param parseCache parse states of the previous check of the document; builders that
+   *     support incremental parsing store the parse state of the code in it
+   * @param fragmentIndex index of the code fragment in the document
+   * @return @c this
+   */
+  public CodeAnnotatedTextBuilder addCode(String code, IncrementalParseCache parseCache,
+        int fragmentIndex) {
+    return addCode(code);
+  }
+
+  /**
+   * Add the code of a code fragment to the builder. The default implementation ignores all
+   * information of the fragment except for its code.
+   *
+   * @param codeFragment code fragment
+   * @param parseCache parse states of the previous check of the document
+   * @param fragmentIndex index of the code fragment in the document
+   * @return @c this
+   */
+  public CodeAnnotatedTextBuilder addCode(CodeFragment codeFragment,
+        IncrementalParseCache parseCache, int fragmentIndex) {
+    return addCode(codeFragment.getCode(), parseCache, fragmentIndex);
+  }
+
   public void setSettings(Settings settings) {
   }
 }
@@ -8,13 +8,19 @@
 package org.bsplines.ltexls.parsing;
 
 import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
+import org.bsplines.ltexls.parsing.latex.LatexBraceMatchingTable;
 import org.bsplines.ltexls.settings.Settings;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class CodeFragment {
   private String codeLanguageId;
-  private String code;
+  private String documentCode;
+  private int codeFromPos;
+  private int codeToPos;
+  private @Nullable String code;
   private int fromPos;
   private Settings settings;
+  private @Nullable LatexBraceMatchingTable documentBraceMatchingTable;
 
   /**
    * Constructor.
@@ -25,40 +31,114 @@ public class CodeFragment {
    * @param settings settings to apply to this fragment
    */
   public CodeFragment(String codeLanguageId, String code, int fromPos, Settings settings) {
-    this.codeLanguageId = codeLanguageId;
+    this(codeLanguageId, code, 0, code.length(), fromPos, settings);
     this.code = code;
+  }
+
+  /**
+   * Constructor for a fragment that is a part of the code of a document. The code of the
+   * fragment is only copied when it is requested with @c getCode.
+   *
+   * @param codeLanguageId ID of the code language
+   * @param documentCode code of the document
+   * @param fromPos from position of the fragment in the document (inclusive)
+   * @param toPos to position of the fragment in the document (exclusive)
+   * @param settings settings to apply to this fragment
+   */
+  public CodeFragment(String codeLanguageId, String documentCode, int fromPos, int toPos,
+        Settings settings) {
+    this(codeLanguageId, documentCode, fromPos, toPos, fromPos, settings);
+  }
+
+  private CodeFragment(String codeLanguageId, String documentCode, int codeFromPos,
+        int codeToPos, int fromPos, Settings settings) {
+    this.codeLanguageId = codeLanguageId;
+    this.documentCode = documentCode;
+    this.codeFromPos = codeFromPos;
+    this.codeToPos = codeToPos;
+    this.code = null;
     this.fromPos = fromPos;
     this.settings = settings;
+    this.documentBraceMatchingTable = null;
   }
 
   public CodeFragment(CodeFragment obj) {
-    this(obj.codeLanguageId, obj.code, obj.fromPos, obj.settings);
+    this(obj.codeLanguageId, obj.documentCode, obj.codeFromPos, obj.codeToPos, obj.fromPos,
+        obj.settings);
+    this.code = obj.code;
+    this.documentBraceMatchingTable = obj.documentBraceMatchingTable;
   }
 
   public String getCodeLanguageId() {
     return this.codeLanguageId;
   }
 
+  /**
+   * Get the code of the fragment. If the fragment covers the whole code of the document, the
+   * code of the document is returned without copying it.
+   *
+   * @return code of the fragment
+   */
   public String getCode() {
-    return this.code;
+    @Nullable String code = this.code;
+
+    if (code == null) {
+      code = this.documentCode.substring(this.codeFromPos, this.codeToPos);
+      this.code = code;
+    }
+
+    return code;
   }
 
   public int getFromPos() {
     return this.fromPos;
   }
 
+  public int getToPos() {
+    return this.fromPos + getLength();
+  }
+
+  public int getLength() {
+    return this.codeToPos - this.codeFromPos;
+  }
+
   public Settings getSettings() {
     return this.settings;
   }
 
+  /**
+   * Get the brace matching table of the code of the fragment, if the fragment has been created
+   * by a fragmentizer that computes the table of the code of the document.
+   *
+   * @return brace matching table of the code of the fragment, or @c null if there is no table
+   */
+  public @Nullable LatexBraceMatchingTable getBraceMatchingTable() {
+    @Nullable LatexBraceMatchingTable documentBraceMatchingTable =
+        this.documentBraceMatchingTable;
+    return ((documentBraceMatchingTable != null)
+        ? documentBraceMatchingTable.getSubtable(this.codeFromPos, this.codeToPos) : null);
+  }
+
   public CodeFragment withFromPos(int fromPos) {
     CodeFragment obj = new CodeFragment(this);
     obj.fromPos = fromPos;
     return obj;
   }
 
+  /**
+   * Get a copy of the fragment with the brace matching table of the code of the document.
+   *
+   * @param documentBraceMatchingTable brace matching table of the code of the document
+   * @return copy of the fragment
+   */
+  public CodeFragment withBraceMatchingTable(
+        LatexBraceMatchingTable documentBraceMatchingTable) {
+    CodeFragment obj = new CodeFragment(this);
+    obj.documentBraceMatchingTable = documentBraceMatchingTable;
+    return obj;
+  }
+
   public boolean contains(LanguageToolRuleMatch match) {
-    return ((match.getFromPos() >= this.fromPos)
-        && (match.getToPos() <= this.fromPos + this.code.length()));
+    return ((match.getFromPos() >= this.fromPos) && (match.getToPos() <= getToPos()));
   }
 }
@@ -0,0 +1,67 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Parse states of the code fragments of a document, as obtained by the previous check.
+ * Annotated text builders that support incremental parsing use the parse state of the previous
+ * version of a code fragment to parse only the parts of the code that changed. Code fragments
+ * are identified by their index in the document; the type of a parse state is specific to the
+ * builder that created it. Only parse states that were part of the last check are retained.
+ * All methods are thread-safe.
+ */
+public class IncrementalParseCache {
+  private Map<Integer, Object> previousMap;
+  private Map<Integer, Object> currentMap;
+
+  public IncrementalParseCache() {
+    this.previousMap = new HashMap<>();
+    this.currentMap = new HashMap<>();
+  }
+
+  /**
+   * Get the parse state of a code fragment stored by the previous check.
+   *
+   * @param <T> type of the parse state
+   * @param fragmentIndex index of the code fragment in the document
+   * @param parseStateClass class of the parse state
+   * @return parse state, or @c null if there is no parse state of the given class
+   */
+  public synchronized <T> @Nullable T get(int fragmentIndex, Class<T> parseStateClass) {
+    @Nullable Object parseState = this.previousMap.get(fragmentIndex);
+    return (parseStateClass.isInstance(parseState) ? parseStateClass.cast(parseState) : null);
+  }
+
+  /**
+   * Store the parse state of a code fragment obtained by the current check.
+   *
+   * @param fragmentIndex index of the code fragment in the document
+   * @param parseState parse state
+   */
+  public synchronized void put(int fragmentIndex, Object parseState) {
+    this.currentMap.put(fragmentIndex, parseState);
+  }
+
+  /**
+   * Finish the current check. Parse states of code fragments that have not been part of the
+   * current check are discarded.
+   */
+  public synchronized void finishCheck() {
+    this.previousMap = this.currentMap;
+    this.currentMap = new HashMap<>();
+  }
+
+  public synchronized void clear() {
+    this.previousMap.clear();
+    this.currentMap.clear();
+  }
+}
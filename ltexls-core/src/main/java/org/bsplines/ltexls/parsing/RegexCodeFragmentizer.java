@@ -37,9 +37,9 @@ public class RegexCodeFragmentizer extends CodeFragmentizer {
     while (matcher.find()) {
       int lastFromPos = curFromPos;
       curFromPos = matcher.start();
-      String lastCode = code.substring(lastFromPos, curFromPos);
       Settings lastSettings = curSettings;
-      codeFragments.add(new CodeFragment(codeLanguageId, lastCode, lastFromPos, lastSettings));
+      codeFragments.add(new CodeFragment(codeLanguageId, code, lastFromPos, curFromPos,
+          lastSettings));
 
       @Nullable String settingsLine = matcher.group("settings");
 
@@ -48,28 +48,41 @@ public class RegexCodeFragmentizer extends CodeFragmentizer {
         continue;
       }
 
-      Map<String, String> settingsMap = RegexCodeFragmentizer.parseSettings(
-          settingsLine, splitSettingsPattern);
-      settingsLine = settingsLine.trim();
-
-      for (Map.Entry<String, String> setting : settingsMap.entrySet()) {
-        if (setting.getKey().equalsIgnoreCase("enabled")) {
-          curSettings = curSettings.withEnabled(setting.getValue().equals("true"));
-        } else if (setting.getKey().equalsIgnoreCase("language")) {
-          curSettings = curSettings.withLanguageShortCode(setting.getValue());
-        } else {
-          Tools.logger.warning(Tools.i18n("ignoringUnknownInlineSetting",
-              setting.getKey(), setting.getValue()));
-        }
-      }
+      curSettings = applySettings(curSettings, settingsLine);
     }
 
     codeFragments.add(new CodeFragment(
-        codeLanguageId, code.substring(curFromPos), curFromPos, curSettings));
+        codeLanguageId, code, curFromPos, code.length(), curSettings));
 
     return codeFragments;
   }
 
+  /**
+   * Apply the settings of a magic comment (e.g., <code>language=de-DE</code>) to the given
+   * settings.
+   *
+   * @param settings settings to apply the changes to
+   * @param settingsLine settings of the magic comment
+   * @return changed settings
+   */
+  public static Settings applySettings(Settings settings, String settingsLine) {
+    Map<String, String> settingsMap = RegexCodeFragmentizer.parseSettings(
+        settingsLine, splitSettingsPattern);
+
+    for (Map.Entry<String, String> setting : settingsMap.entrySet()) {
+      if (setting.getKey().equalsIgnoreCase("enabled")) {
+        settings = settings.withEnabled(setting.getValue().equals("true"));
+      } else if (setting.getKey().equalsIgnoreCase("language")) {
+        settings = settings.withLanguageShortCode(setting.getValue());
+      } else {
+        Tools.logger.warning(Tools.i18n("ignoringUnknownInlineSetting",
+            setting.getKey(), setting.getValue()));
+      }
+    }
+
+    return settings;
+  }
+
   public static Map<String, String> parseSettings(
         String settingsLine, Pattern splitSettingsPattern) {
     Map<String, String> settingsMap = new HashMap<>();
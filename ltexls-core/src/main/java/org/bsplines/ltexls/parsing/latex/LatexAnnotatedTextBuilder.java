@@ -7,18 +7,17 @@
 
 package org.bsplines.ltexls.parsing.latex;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.text.StringEscapeUtils;
 import org.bsplines.ltexls.parsing.CodeAnnotatedTextBuilder;
+import org.bsplines.ltexls.parsing.CodeFragment;
 import org.bsplines.ltexls.parsing.DummyGenerator;
+import org.bsplines.ltexls.parsing.IncrementalParseCache;
 import org.bsplines.ltexls.settings.Settings;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -40,29 +39,12 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
     RSWEAVE,
   }
 
-  private static final Pattern commandPattern = Pattern.compile(
-      "^\\\\(([^A-Za-z@]|([A-Za-z@]+))\\*?)");
-  private static final Pattern argumentPattern = Pattern.compile("^\\{[^\\}]*?\\}");
-  private static final Pattern commentPattern = Pattern.compile(
-      "^%.*?($|((\n|\r|\r\n)[ \n\r\t]*))");
-  private static final Pattern whitespacePattern = Pattern.compile(
-      "^[ \n\r\t]+(%.*?($|((\n|\r|\r\n)[ \n\r\t]*)))?");
-  private static final Pattern lengthPattern = Pattern.compile(
-      "-?[0-9]*(\\.[0-9]+)?(pt|mm|cm|ex|em|bp|dd|pc|in)");
-  private static final Pattern lengthInBracePattern = Pattern.compile(
-      "^\\{" + lengthPattern.pattern() + "\\}");
-  private static final Pattern lengthInBracketPattern = Pattern.compile(
-      "^\\[" + lengthPattern.pattern() + "\\]");
-  private static final Pattern emDashPattern = Pattern.compile("^---");
-  private static final Pattern enDashPattern = Pattern.compile("^--");
   private static final Pattern accentPattern1 = Pattern.compile(
       "^(\\\\[`'\\^~\"=\\.])(([A-Za-z]|\\\\i)|(\\{([A-Za-z]|\\\\i)\\}))");
   private static final Pattern accentPattern2 = Pattern.compile(
       "^(\\\\[cr])( *([A-Za-z])|\\{([A-Za-z])\\})");
-  private static final Pattern displayMathPattern = Pattern.compile("^\\$\\$");
-  private static final Pattern verbCommandPattern = Pattern.compile("^\\\\verb\\*?(.).*?\\1");
-  private static final Pattern rsweaveBeginPattern = Pattern.compile("^<<.*?>>=");
-  private static final Pattern rsweaveEndPattern = Pattern.compile("^@");
+
+  private static final String[] asciiStrings = createAsciiStrings();
 
   private static final List<String> mathEnvironments = Arrays.asList(
       "align", "align*", "alignat", "alignat*",
@@ -81,7 +63,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
   private boolean preserveDummyLast;
   private boolean canInsertSpaceBeforeDummy;
   private boolean isMathCharTrivial;
-  private Stack<Mode> modeStack = new Stack<>();
+  private Deque<Mode> modeStack = new ArrayDeque<>();
+  private LatexBraceMatchingTable braceMatchingTable = new LatexBraceMatchingTable("");
 
   private char curChar;
   private String curString = "";
@@ -89,38 +72,31 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
 
   private String language = "en-US";
   private String codeLanguageId = "latex";
-  private List<LatexCommandSignature> commandSignatures =
-      new ArrayList<>(LatexAnnotatedTextBuilderDefaults.getDefaultLatexCommandSignatures());
-  private Map<String, List<LatexCommandSignature>> commandSignatureMap =
-      createCommandSignatureMap(this.commandSignatures);
-  private List<LatexEnvironmentSignature> environmentSignatures =
-      new ArrayList<>(LatexAnnotatedTextBuilderDefaults.getDefaultLatexEnvironmentSignatures());
+  private LatexSignatureTables signatureTables = LatexSignatureTables.getDefault();
   private boolean isInStrictMode = false;
 
   public LatexAnnotatedTextBuilder(String codeLanguageId) {
     this.codeLanguageId = codeLanguageId;
   }
 
-  private static Map<String, List<LatexCommandSignature>> createCommandSignatureMap(
-        List<LatexCommandSignature> commandSignatures) {
-    Map<String, List<LatexCommandSignature>> map = new HashMap<>();
-
-    for (LatexCommandSignature commandSignature : commandSignatures) {
-      String commandName = commandSignature.getName();
-      if (!map.containsKey(commandName)) map.put(commandName, new ArrayList<>());
-      map.get(commandName).add(commandSignature);
-    }
-
-    return map;
+  private static String[] createAsciiStrings() {
+    String[] asciiStrings = new String[128];
+    for (char ch = 0; ch < asciiStrings.length; ch++) asciiStrings[ch] = String.valueOf(ch);
+    return asciiStrings;
   }
 
-  private String matchFromPosition(Pattern pattern) {
-    return matchFromPosition(pattern, this.pos);
+  private String matchFromPosition(int toPos) {
+    return this.code.substring(this.pos, toPos);
   }
 
-  private String matchFromPosition(Pattern pattern, int pos) {
-    Matcher matcher = pattern.matcher(this.code.substring(pos));
-    return (matcher.find() ? matcher.group() : "");
+  /**
+   * Create a matcher that matches the code from a position on. Instead of copying the rest of
+   * the code, the region of the matcher is restricted, such that matching does not depend on
+   * the length of the code. As the matcher uses anchoring bounds, @c ^ and @c $ match at the
+   * position and at the end of the code, respectively.
+   */
+  private Matcher matcherFromPosition(Pattern pattern, int pos) {
+    return pattern.matcher(this.code).region(pos, this.code.length());
   }
 
   private String generateDummy() {
@@ -142,7 +118,7 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
     } else if (this.curMode == Mode.DISPLAY_MATH) {
       dummy = ((this.lastSpace.isEmpty() ? " " : ""))
           + dummyGenerator.generate(this.language, this.dummyCounter++)
-          + this.dummyLastPunctuation + ((this.modeStack.peek() == Mode.INLINE_TEXT)
+          + this.dummyLastPunctuation + ((this.modeStack.getFirst() == Mode.INLINE_TEXT)
           ? this.dummyLastSpace : " ");
     } else {
       dummy = dummyGenerator.generate(this.language, this.dummyCounter++, startsWithVowel)
@@ -163,7 +139,13 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
    */
   public LatexAnnotatedTextBuilder addText(String text) {
     if (text.isEmpty()) return this;
-    super.addText(text);
+
+    if (this.code.startsWith(text, this.pos)) {
+      super.addText(this.code, this.pos, this.pos + text.length());
+    } else {
+      super.addText(text);
+    }
+
     this.pos += text.length();
     textAdded(text);
     return this;
@@ -177,7 +159,13 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
    */
   public LatexAnnotatedTextBuilder addMarkup(String markup) {
     if (markup.isEmpty()) return this;
-    super.addMarkup(markup);
+
+    if (this.code.startsWith(markup, this.pos)) {
+      super.addMarkup(this.code, this.pos, this.pos + markup.length());
+    } else {
+      super.addMarkup(markup);
+    }
+
     this.pos += markup.length();
 
     if (this.preserveDummyLast) {
@@ -201,7 +189,12 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
     if (interpretAs.isEmpty()) {
       return addMarkup(markup);
     } else {
-      super.addMarkup(markup, interpretAs);
+      if (this.code.startsWith(markup, this.pos)) {
+        super.addMarkup(this.code, this.pos, this.pos + markup.length(), interpretAs);
+      } else {
+        super.addMarkup(markup, interpretAs);
+      }
+
       this.pos += markup.length();
       this.preserveDummyLast = false;
       textAdded(interpretAs);
@@ -211,6 +204,9 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
 
   private void textAdded(String text) {
     if (text.isEmpty()) return;
+    // dummies are numbered per paragraph, such that a change in one paragraph doesn't change
+    // the plain text of the other paragraphs, whose check results can then be reused
+    if (text.contains("\n\n")) this.dummyCounter = 0;
     char lastChar = text.charAt(text.length() - 1);
     this.lastSpace = (((lastChar == ' ') || (lastChar == '\n') || (lastChar == '\r')) ? " " : "");
     this.lastPunctuation = (isPunctuation(lastChar) ? " " : "");
@@ -412,7 +408,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
   private void consumeEnvironmentArguments(String environmentName) {
     while (this.pos < this.code.length()) {
       String environmentArgument = LatexCommandSignature.matchArgumentFromPosition(
-          this.code, this.pos, LatexCommandSignature.ArgumentType.BRACE);
+          this.code, this.pos, LatexCommandSignature.ArgumentType.BRACE,
+          this.braceMatchingTable);
 
       if (!environmentArgument.isEmpty()) {
         addMarkup(environmentArgument);
@@ -420,7 +417,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
       }
 
       environmentArgument = LatexCommandSignature.matchArgumentFromPosition(
-          this.code, this.pos, LatexCommandSignature.ArgumentType.BRACKET);
+          this.code, this.pos, LatexCommandSignature.ArgumentType.BRACKET,
+          this.braceMatchingTable);
 
       if (!environmentArgument.isEmpty()) {
         addMarkup(environmentArgument);
@@ -429,7 +427,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
 
       if (environmentName.equals("textblock") || environmentName.equals("textblock*")) {
         environmentArgument = LatexCommandSignature.matchArgumentFromPosition(
-            this.code, this.pos, LatexCommandSignature.ArgumentType.PARENTHESIS);
+            this.code, this.pos, LatexCommandSignature.ArgumentType.PARENTHESIS,
+            this.braceMatchingTable);
 
         if (!environmentArgument.isEmpty()) {
           addMarkup(environmentArgument);
@@ -441,6 +440,15 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
     }
   }
 
+  @Override
+  public LatexAnnotatedTextBuilder addCode(CodeFragment codeFragment,
+        IncrementalParseCache parseCache, int fragmentIndex) {
+    String code = codeFragment.getCode();
+    @Nullable LatexBraceMatchingTable braceMatchingTable = codeFragment.getBraceMatchingTable();
+    return addCode(code, ((braceMatchingTable != null)
+        ? braceMatchingTable : new LatexBraceMatchingTable(code)));
+  }
+
   /**
    * Add LaTeX code to the builder, i.e., parse it and call @c addText and @c addMarkup.
    *
@@ -448,6 +456,19 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
    * @return @c this
    */
   public LatexAnnotatedTextBuilder addCode(String code) {
+    return addCode(code, new LatexBraceMatchingTable(code));
+  }
+
+  /**
+   * Add LaTeX code to the builder, using the given brace matching table instead of computing
+   * it.
+   *
+   * @param code LaTeX code
+   * @param braceMatchingTable brace matching table of the code
+   * @return @c this
+   */
+  public LatexAnnotatedTextBuilder addCode(String code,
+        LatexBraceMatchingTable braceMatchingTable) {
     this.code = code;
     this.pos = 0;
     this.dummyCounter = 0;
@@ -461,52 +482,47 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
     this.canInsertSpaceBeforeDummy = false;
     this.isMathCharTrivial = false;
 
-    this.modeStack = new Stack<>();
+    this.modeStack = new ArrayDeque<>();
     this.modeStack.push(Mode.PARAGRAPH_TEXT);
+    this.braceMatchingTable = braceMatchingTable;
 
-    @Nullable Pattern ignoreEnvironmentEndPattern = null;
+    @Nullable String ignoreEnvironmentEnd = null;
     int lastPos = -1;
 
     while (this.pos < code.length()) {
       this.curChar = code.charAt(this.pos);
-      this.curString = String.valueOf(this.curChar);
-      this.curMode = this.modeStack.peek();
+      this.curString = ((this.curChar < asciiStrings.length)
+          ? asciiStrings[this.curChar] : String.valueOf(this.curChar));
+      this.curMode = this.modeStack.getFirst();
       this.isMathCharTrivial = false;
       lastPos = this.pos;
 
       if (isIgnoreEnvironmentMode(this.curMode)) {
-        if (ignoreEnvironmentEndPattern != null) {
-          String ignoreEnvironmentEnd = matchFromPosition(ignoreEnvironmentEndPattern);
-
-          if (ignoreEnvironmentEnd.isEmpty()) {
-            addMarkup(this.curString);
-          } else {
+        if (ignoreEnvironmentEnd != null) {
+          if (code.startsWith(ignoreEnvironmentEnd, this.pos)) {
             popMode();
             addMarkup(ignoreEnvironmentEnd);
+          } else {
+            addMarkup(this.curString);
           }
         } else {
           Tools.logger.warning(Tools.i18n("ignoreEnvironmentEndPatternNotSet"));
           popMode();
         }
       } else if (this.codeLanguageId.equals("rsweave") && isRsweaveMode(this.curMode)) {
-        String rsweaveEnd = matchFromPosition(rsweaveEndPattern);
-
-        if (rsweaveEnd.isEmpty()) {
-          addMarkup(this.curString);
-        } else {
-          popMode();
-          addMarkup(rsweaveEnd);
-        }
+        if (this.curChar == '@') popMode();
+        addMarkup(this.curString);
       } else {
         switch (this.curChar) {
           case '\\': {
-            String command = matchFromPosition(commandPattern);
+            String command = matchFromPosition(LatexScanner.scanCommand(code, this.pos));
 
             if (command.equals("\\begin") || command.equals("\\end")) {
               this.preserveDummyLast = true;
               addMarkup(command);
 
-              String argument = matchFromPosition(argumentPattern);
+              String argument = matchFromPosition(
+                  LatexScanner.scanSimpleArgument(code, this.pos));
               String environmentName = argument.substring(1, argument.length() - 1);
               String interpretAs = "";
 
@@ -522,20 +538,13 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
                   interpretAs = generateDummy();
                 }
               } else if (command.equals("\\begin")) {
-                @Nullable LatexEnvironmentSignature matchingEnvironment = null;
-
-                for (LatexEnvironmentSignature latexEnvironmentSignature
-                      : this.environmentSignatures) {
-                  if (latexEnvironmentSignature.getName().equals(environmentName)) {
-                    matchingEnvironment = latexEnvironmentSignature;
-                  }
-                }
+                @Nullable LatexEnvironmentSignature matchingEnvironment =
+                    this.signatureTables.getEnvironmentSignature(environmentName);
 
                 if ((matchingEnvironment != null) && (matchingEnvironment.getAction()
                       == LatexEnvironmentSignature.Action.IGNORE)) {
                   this.modeStack.push(Mode.IGNORE_ENVIRONMENT);
-                  ignoreEnvironmentEndPattern = Pattern.compile(
-                      "^\\\\end\\{" + Pattern.quote(environmentName) + "\\}");
+                  ignoreEnvironmentEnd = "\\end{" + environmentName + "}";
                 } else {
                   this.modeStack.push(this.curMode);
                 }
@@ -543,7 +552,7 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
                 popMode();
               }
 
-              if (!isIgnoreEnvironmentMode(this.modeStack.peek())) {
+              if (!isIgnoreEnvironmentMode(this.modeStack.getFirst())) {
                 this.isMathCharTrivial = true;
                 this.preserveDummyLast = true;
                 addMarkup(argument, interpretAs);
@@ -573,9 +582,9 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
             } else if (command.equals("\\`") || command.equals("\\'") || command.equals("\\^")
                   || command.equals("\\~") || command.equals("\\\"") || command.equals("\\=")
                   || command.equals("\\.")) {
-              Matcher matcher = accentPattern1.matcher(code.substring(this.pos));
+              Matcher matcher = matcherFromPosition(accentPattern1, this.pos);
 
-              if (matcher.find()) {
+              if (matcher.lookingAt()) {
                 @Nullable String accentCommand = matcher.group(1);
                 @Nullable String letter = ((matcher.group(3) != null)
                     ? matcher.group(3) : matcher.group(5));
@@ -586,9 +595,9 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
                 addMarkup(command);
               }
             } else if (command.equals("\\c") || command.equals("\\r")) {
-              Matcher matcher = accentPattern2.matcher(code.substring(this.pos));
+              Matcher matcher = matcherFromPosition(accentPattern2, this.pos);
 
-              if (matcher.find()) {
+              if (matcher.lookingAt()) {
                 @Nullable String accentCommand = matcher.group(1);
                 @Nullable String letter = ((matcher.group(3) != null)
                     ? matcher.group(3) : matcher.group(4));
@@ -606,8 +615,9 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
                   || command.equals("\\quad") || command.equals("\\qquad")
                   || command.equals("\\newline")) {
               if (command.equals("\\hspace") || command.equals("\\hspace*")) {
-                String argument = matchFromPosition(argumentPattern, this.pos + command.length());
-                command += argument;
+                int argumentPos = this.pos + command.length();
+                command += code.substring(argumentPos,
+                    LatexScanner.scanSimpleArgument(code, argumentPos));
               }
 
               if (isMathMode(this.curMode) && this.lastSpace.isEmpty()
@@ -666,7 +676,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
                   || command.equals("\\subparagraph*")) {
               addMarkup(command);
               String headingArgument = LatexCommandSignature.matchArgumentFromPosition(
-                  code, this.pos, LatexCommandSignature.ArgumentType.BRACKET);
+                  code, this.pos, LatexCommandSignature.ArgumentType.BRACKET,
+                  this.braceMatchingTable);
               if (!headingArgument.isEmpty()) addMarkup(headingArgument);
               this.modeStack.push(Mode.HEADING);
               addMarkup("{");
@@ -675,20 +686,18 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
               String interpretAs = (isMathMode(this.curMode) ? generateDummy() : "");
               addMarkup(command + "{", interpretAs);
             } else if (command.equals("\\verb")) {
-              String verbCommand = matchFromPosition(verbCommandPattern);
+              String verbCommand = matchFromPosition(
+                  LatexScanner.scanVerbCommand(code, this.pos));
               addMarkup(verbCommand, generateDummy());
             } else {
               String match = "";
-              @Nullable List<LatexCommandSignature> possibleCommandSignatures =
-                  this.commandSignatureMap.get(command);
+              List<LatexCommandSignature> possibleCommandSignatures =
+                  this.signatureTables.getCommandSignatures(command);
               @Nullable LatexCommandSignature matchingCommand = null;
 
-              if (possibleCommandSignatures == null) {
-                possibleCommandSignatures = Collections.emptyList();
-              }
-
               for (LatexCommandSignature latexCommandSignature : possibleCommandSignatures) {
-                String curMatch = latexCommandSignature.matchFromPosition(code, this.pos);
+                String curMatch = latexCommandSignature.matchFromPosition(
+                    code, this.pos, this.braceMatchingTable);
 
                 if (!curMatch.isEmpty() && (curMatch.length() >= match.length())) {
                   match = curMatch;
@@ -733,7 +742,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
             break;
           }
           case '{': {
-            String length = matchFromPosition(lengthInBracePattern);
+            String length = matchFromPosition(
+                LatexScanner.scanDelimitedLength(code, this.pos, '{', '}'));
 
             if (!length.isEmpty()) {
               addMarkup(length);
@@ -751,7 +761,7 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
             addMarkup(this.curString, interpretAs);
             this.canInsertSpaceBeforeDummy = true;
 
-            if (isTextMode(this.curMode) && isMathMode(this.modeStack.peek())) {
+            if (isTextMode(this.curMode) && isMathMode(this.modeStack.getFirst())) {
               this.isMathEmpty = true;
             }
 
@@ -759,7 +769,7 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
             break;
           }
           case '$': {
-            String displayMath = matchFromPosition(displayMathPattern);
+            String displayMath = matchFromPosition(LatexScanner.scanString(code, this.pos, "$$"));
 
             if (!displayMath.isEmpty()) {
               if (this.curMode == Mode.DISPLAY_MATH) {
@@ -782,7 +792,7 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
             break;
           }
           case '%': {
-            String comment = matchFromPosition(commentPattern);
+            String comment = matchFromPosition(LatexScanner.scanComment(code, this.pos));
             this.preserveDummyLast = true;
             this.isMathCharTrivial = true;
             addMarkup(comment, (containsTwoEndsOfLine(comment) ? "\n\n" : ""));
@@ -795,7 +805,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
           case '\r':
           case '\t': {
             String whitespace = (((this.curChar != '~') && (this.curChar != '&'))
-                ? matchFromPosition(whitespacePattern) : this.curString);
+                ? matchFromPosition(LatexScanner.scanWhitespace(code, this.pos))
+                : this.curString);
             this.preserveDummyLast = true;
             this.isMathCharTrivial = true;
 
@@ -851,14 +862,15 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
             break;
           }
           case '-': {
-            String emDash = matchFromPosition(emDashPattern);
+            String emDash = matchFromPosition(LatexScanner.scanString(code, this.pos, "---"));
 
             if (isTextMode(this.curMode)) {
               if (!emDash.isEmpty()) {
                 addMarkup(emDash, "\u2014");
                 break;
               } else {
-                String enDash = matchFromPosition(enDashPattern);
+                String enDash = matchFromPosition(
+                    LatexScanner.scanString(code, this.pos, "--"));
 
                 if (!enDash.isEmpty()) {
                   addMarkup(enDash, "\u2013");
@@ -869,7 +881,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
           }
           // fall through
           case '[': {
-            String length = matchFromPosition(lengthInBracketPattern);
+            String length = matchFromPosition(
+                LatexScanner.scanDelimitedLength(code, this.pos, '[', ']'));
 
             if (!length.isEmpty()) {
               this.isMathCharTrivial = true;
@@ -881,7 +894,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
           // fall through
           case '<': {
             if (this.codeLanguageId.equals("rsweave")) {
-              String rsweaveBegin = matchFromPosition(rsweaveBeginPattern);
+              String rsweaveBegin = matchFromPosition(
+                  LatexScanner.scanRsweaveBegin(code, this.pos));
 
               if (!rsweaveBegin.isEmpty()) {
                 this.modeStack.push(Mode.RSWEAVE);
@@ -933,45 +947,8 @@ public class LatexAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
   @Override
   public void setSettings(Settings settings) {
     this.language = settings.getLanguageShortCode();
-
-    for (Map.Entry<String, String> entry : settings.getLatexCommands().entrySet()) {
-      String actionString = entry.getValue();
-      LatexCommandSignature.Action action;
-      @Nullable DummyGenerator dummyGenerator = null;
-
-      if (actionString.equals("default")) {
-        action = LatexCommandSignature.Action.DEFAULT;
-      } else if (actionString.equals("ignore")) {
-        action = LatexCommandSignature.Action.IGNORE;
-      } else if (actionString.equals("dummy")) {
-        action = LatexCommandSignature.Action.DUMMY;
-      } else if (actionString.equals("pluralDummy")) {
-        action = LatexCommandSignature.Action.DUMMY;
-        dummyGenerator = DummyGenerator.getDefault(true);
-      } else {
-        continue;
-      }
-
-      if (dummyGenerator == null) dummyGenerator = DummyGenerator.getDefault();
-      this.commandSignatures.add(new LatexCommandSignature(entry.getKey(), action, dummyGenerator));
-    }
-
-    this.commandSignatureMap = createCommandSignatureMap(this.commandSignatures);
-
-    for (Map.Entry<String, String> entry : settings.getLatexEnvironments().entrySet()) {
-      String actionString = entry.getValue();
-      LatexEnvironmentSignature.Action action;
-
-      if (actionString.equals("default")) {
-        action = LatexEnvironmentSignature.Action.DEFAULT;
-      } else if (actionString.equals("ignore")) {
-        action = LatexEnvironmentSignature.Action.IGNORE;
-      } else {
-        continue;
-      }
-
-      this.environmentSignatures.add(new LatexEnvironmentSignature(entry.getKey(), action));
-    }
+    this.signatureTables = LatexSignatureTables.get(
+        settings.getLatexCommands(), settings.getLatexEnvironments());
   }
 
   public void setInStrictMode(boolean isInStrictMode) {
@@ -0,0 +1,192 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Table that maps the positions of opening braces, brackets, and parentheses of LaTeX code to
+ * the positions of the matching closing characters. The table is computed in one pass over the
+ * code, such that matching an argument is a lookup instead of a walk over the argument.
+ *
+ * <p>The matching is the same as in @c findClosingPosition: backslashes escape the next
+ * character, braces and brackets have to be properly nested, and an opening parenthesis is
+ * closed by the first closing parenthesis that is not enclosed in braces or brackets (nested
+ * parentheses are not counted).
+ *
+ * <p>The table of a document is computed once by the fragmentizer and passed with the code
+ * fragments to the annotated text builder, which uses a view of the table for the range of the
+ * fragment (see @c getSubtable).
+ */
+public final class LatexBraceMatchingTable {
+  private static final int noOpeningChar = -2;
+  private static final int noClosingChar = -1;
+
+  private int[] closingPositions;
+  private int fromPos;
+  private int toPos;
+
+  /**
+   * Constructor. Computes the table for the given code.
+   *
+   * @param code LaTeX code
+   */
+  public LatexBraceMatchingTable(String code) {
+    this.closingPositions = new int[code.length()];
+    this.fromPos = 0;
+    this.toPos = code.length();
+    Arrays.fill(this.closingPositions, noOpeningChar);
+    int[] openingPositionStack = new int[16];
+    int stackSize = 0;
+
+    for (int pos = 0; pos < code.length(); pos++) {
+      char ch = code.charAt(pos);
+
+      switch (ch) {
+        case '\\': {
+          pos++;
+          break;
+        }
+        case '{':
+        case '[':
+        case '(': {
+          if (stackSize == openingPositionStack.length) {
+            openingPositionStack = Arrays.copyOf(openingPositionStack, 2 * stackSize);
+          }
+
+          openingPositionStack[stackSize] = pos;
+          stackSize++;
+          this.closingPositions[pos] = noClosingChar;
+          break;
+        }
+        case '}':
+        case ']': {
+          // parentheses that are still open cannot contain the closing character
+          while ((stackSize > 0) && (code.charAt(openingPositionStack[stackSize - 1]) == '(')) {
+            stackSize--;
+          }
+
+          if (stackSize == 0) break;
+          int openingPos = openingPositionStack[stackSize - 1];
+
+          if (code.charAt(openingPos) == ((ch == '}') ? '{' : '[')) {
+            this.closingPositions[openingPos] = pos;
+            stackSize--;
+          } else {
+            // mismatch, none of the open characters can be closed anymore
+            stackSize = 0;
+          }
+
+          break;
+        }
+        case ')': {
+          // all parentheses that are not enclosed in braces or brackets are closed
+          while ((stackSize > 0) && (code.charAt(openingPositionStack[stackSize - 1]) == '(')) {
+            this.closingPositions[openingPositionStack[stackSize - 1]] = pos;
+            stackSize--;
+          }
+
+          break;
+        }
+        default: {
+          break;
+        }
+      }
+    }
+  }
+
+  private LatexBraceMatchingTable(LatexBraceMatchingTable table, int fromPos, int toPos) {
+    this.closingPositions = table.closingPositions;
+    this.fromPos = table.fromPos + fromPos;
+    this.toPos = table.fromPos + toPos;
+  }
+
+  /**
+   * Get the table for a part of the code the table has been computed for. The returned table
+   * shares the data of this table and is equal to the table that would be computed for the
+   * part of the code, as a closing character is matched by only looking at the code after the
+   * opening character.
+   *
+   * @param fromPos from position of the part of the code (inclusive)
+   * @param toPos to position of the part of the code (exclusive)
+   * @return table for the part of the code
+   */
+  public LatexBraceMatchingTable getSubtable(int fromPos, int toPos) {
+    return new LatexBraceMatchingTable(this, fromPos, toPos);
+  }
+
+  /**
+   * Get the position of the closing character that matches the opening brace, bracket, or
+   * parenthesis at the given position.
+   *
+   * @param code LaTeX code the table has been computed for
+   * @param openingPos position of the opening character
+   * @return position of the closing character, or -1 if there is no matching closing character
+   */
+  public int getClosingPosition(String code, int openingPos) {
+    int closingPos = this.closingPositions[this.fromPos + openingPos];
+
+    if (closingPos == noOpeningChar) {
+      // escaped opening characters are not in the table
+      return findClosingPosition(code, openingPos);
+    } else if ((closingPos == noClosingChar) || (closingPos >= this.toPos)) {
+      return -1;
+    } else {
+      return closingPos - this.fromPos;
+    }
+  }
+
+  /**
+   * Find the position of the closing character that matches the opening brace, bracket, or
+   * parenthesis at the given position by walking over the code.
+   *
+   * @param code LaTeX code
+   * @param openingPos position of the opening character
+   * @return position of the closing character, or -1 if there is no matching closing character
+   */
+  static int findClosingPosition(String code, int openingPos) {
+    char openingChar = code.charAt(openingPos);
+    if ((openingChar != '{') && (openingChar != '[') && (openingChar != '(')) return -1;
+
+    Deque<Character> openingCharStack = new ArrayDeque<>();
+    openingCharStack.push(openingChar);
+
+    for (int pos = openingPos + 1; pos < code.length(); pos++) {
+      switch (code.charAt(pos)) {
+        case '\\': {
+          pos++;
+          break;
+        }
+        case '{':
+        case '[': {
+          openingCharStack.push(code.charAt(pos));
+          break;
+        }
+        case '}':
+        case ']': {
+          char expectedOpeningChar = ((code.charAt(pos) == '}') ? '{' : '[');
+          if (openingCharStack.getFirst() != expectedOpeningChar) return -1;
+          if (openingCharStack.size() == 1) return pos;
+          openingCharStack.pop();
+          break;
+        }
+        case ')': {
+          if ((openingCharStack.getFirst() == '(') && (openingCharStack.size() == 1)) return pos;
+          break;
+        }
+        default: {
+          break;
+        }
+      }
+    }
+
+    return -1;
+  }
+}
@@ -8,8 +8,8 @@
 package org.bsplines.ltexls.parsing.latex;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.bsplines.ltexls.parsing.DummyGenerator;
@@ -30,9 +30,6 @@ public class LatexCommandSignature {
     DUMMY,
   }
 
-  private static final Pattern genericCommandPattern = Pattern.compile(
-      "^(\\\\.+?)(\\{\\}|\\[\\]|\\(\\))*$");
-  private static final Pattern argumentPattern = Pattern.compile("^((\\{\\})|(\\[\\])|(\\(\\)))");
   private static final Pattern commentPattern = Pattern.compile("^%.*?($|(\n[ \n\r\t]*))");
 
   private String name = "";
@@ -41,7 +38,6 @@ public class LatexCommandSignature {
   private DummyGenerator dummyGenerator;
 
   private String commandPrototype;
-  private Pattern commandPattern;
 
   public LatexCommandSignature(String commandPrototype) {
     this(commandPrototype, Action.IGNORE, DummyGenerator.getDefault());
@@ -62,47 +58,96 @@ public class LatexCommandSignature {
         DummyGenerator dummyGenerator) {
     this.dummyGenerator = dummyGenerator;
     this.commandPrototype = commandPrototype;
-    Matcher commandMatcher = genericCommandPattern.matcher(commandPrototype);
-    boolean found = commandMatcher.find();
-    @Nullable String name = (found ? commandMatcher.group(1) : null);
+    int toPos = getPrototypeToPosition(commandPrototype);
+    int argumentsFromPos = findArgumentsFromPosition(commandPrototype, toPos);
 
-    if (name == null) {
+    if (argumentsFromPos == -1) {
       Tools.logger.warning(Tools.i18n("invalidCommandPrototype", commandPrototype));
-      this.commandPattern = Pattern.compile(" ^$");
       return;
     }
 
-    this.name = name;
-    int pos = commandMatcher.end(1);
+    this.name = commandPrototype.substring(0, argumentsFromPos);
 
-    while (true) {
-      Matcher argumentMatcher = argumentPattern.matcher(commandPrototype.substring(pos));
-      if (!argumentMatcher.find()) break;
+    for (int pos = argumentsFromPos; pos < toPos; pos += 2) {
+      switch (commandPrototype.charAt(pos)) {
+        case '[': {
+          this.argumentTypes.add(ArgumentType.BRACKET);
+          break;
+        }
+        case '(': {
+          this.argumentTypes.add(ArgumentType.PARENTHESIS);
+          break;
+        }
+        default: {
+          this.argumentTypes.add(ArgumentType.BRACE);
+          break;
+        }
+      }
+    }
 
-      LatexCommandSignature.ArgumentType argumentType;
+    this.action = action;
+  }
 
-      if (argumentMatcher.group(2) != null) {
-        argumentType = LatexCommandSignature.ArgumentType.BRACE;
-      } else if (argumentMatcher.group(3) != null) {
-        argumentType = LatexCommandSignature.ArgumentType.BRACKET;
-      } else if (argumentMatcher.group(4) != null) {
-        argumentType = LatexCommandSignature.ArgumentType.PARENTHESIS;
-      } else {
-        argumentType = LatexCommandSignature.ArgumentType.BRACE;
-      }
+  private static boolean isLineTerminator(char ch) {
+    return ((ch == '\n') || (ch == '\r') || (ch == '\u0085') || (ch == '\u2028')
+        || (ch == '\u2029'));
+  }
 
-      this.argumentTypes.add(argumentType);
-      pos += argumentMatcher.group().length();
-      assert argumentMatcher.group().length() > 0;
+  /**
+   * Get the end of the prototype, not including a final line terminator (which is ignored, as
+   * if the prototype were matched by a regular expression ending in @c $).
+   */
+  private static int getPrototypeToPosition(String commandPrototype) {
+    int length = commandPrototype.length();
+
+    if (commandPrototype.endsWith("\r\n")) {
+      return length - 2;
+    } else if ((length > 0) && isLineTerminator(commandPrototype.charAt(length - 1))) {
+      return length - 1;
+    } else {
+      return length;
     }
+  }
 
-    this.action = action;
-    this.commandPattern = Pattern.compile("^" + Pattern.quote(this.name));
+  private static boolean isEmptyArgument(String commandPrototype, int pos) {
+    char openingChar = commandPrototype.charAt(pos);
+    char closingChar = commandPrototype.charAt(pos + 1);
+    return (((openingChar == '{') && (closingChar == '}'))
+        || ((openingChar == '[') && (closingChar == ']'))
+        || ((openingChar == '(') && (closingChar == ')')));
+  }
+
+  /**
+   * Find the position at which the empty arguments of the prototype start. The name of the
+   * command is the shortest prefix that consists of a backslash and at least one other
+   * character such that the rest of the prototype consists of empty arguments. The prototype is
+   * parsed without regular expressions, as hundreds of signatures are created at startup.
+   *
+   * @param commandPrototype prototype of the command
+   * @param toPos end of the prototype (exclusive)
+   * @return position at which the arguments start, or -1 if the prototype is invalid
+   */
+  static int findArgumentsFromPosition(String commandPrototype, int toPos) {
+    if ((toPos < 2) || (commandPrototype.charAt(0) != '\\')) return -1;
+
+    for (int pos = 1; pos < toPos; pos++) {
+      if (isLineTerminator(commandPrototype.charAt(pos))) return -1;
+    }
+
+    int argumentsFromPos = toPos;
+
+    while ((argumentsFromPos >= 4)
+          && isEmptyArgument(commandPrototype, argumentsFromPos - 2)) {
+      argumentsFromPos -= 2;
+    }
+
+    return argumentsFromPos;
   }
 
   private static String matchPatternFromPosition(String code, int fromPos, Pattern pattern) {
-    Matcher matcher = pattern.matcher(code.substring(fromPos));
-    return (matcher.find() ? matcher.group() : "");
+    // restrict the region instead of copying the rest of the code
+    Matcher matcher = pattern.matcher(code).region(fromPos, code.length());
+    return (matcher.lookingAt() ? matcher.group() : "");
   }
 
   /**
@@ -117,7 +162,23 @@ public class LatexCommandSignature {
    */
   public static String matchArgumentFromPosition(
         String code, int fromPos, ArgumentType argumentType) {
-    int pos = fromPos;
+    return matchArgumentFromPosition(code, fromPos, argumentType, null);
+  }
+
+  /**
+   * Try to match a specific argument type against the given code, starting from the given
+   * position, and look up the closing character in the given brace matching table.
+   *
+   * @param code LaTeX code to match against
+   * @param fromPos from position to start matching (inclusive)
+   * @param argumentType type of the argument to match
+   * @param braceMatchingTable brace matching table of the code, or @c null if the closing
+   *     character should be found by walking over the code (which is faster for single matches)
+   * @return matched argument including braces/brackets/parenthesis;
+   *         empty string if matching failed
+   */
+  static String matchArgumentFromPosition(String code, int fromPos, ArgumentType argumentType,
+        @Nullable LatexBraceMatchingTable braceMatchingTable) {
     char openChar = '\0';
 
     switch (argumentType) {
@@ -139,65 +200,11 @@ public class LatexCommandSignature {
       }
     }
 
-    if (code.charAt(pos) != openChar) return "";
-    pos++;
-
-    Stack<ArgumentType> argumentTypeStack = new Stack<>();
-    argumentTypeStack.push(argumentType);
-
-    while (pos < code.length()) {
-      switch (code.charAt(pos)) {
-        case '\\': {
-          if (pos + 1 < code.length()) pos++;
-          break;
-        }
-        case '{': {
-          argumentTypeStack.push(ArgumentType.BRACE);
-          break;
-        }
-        case '[': {
-          argumentTypeStack.push(ArgumentType.BRACKET);
-          break;
-        }
-        case '}': {
-          if (argumentTypeStack.peek() != ArgumentType.BRACE) {
-            return "";
-          } else if (argumentTypeStack.size() == 1) {
-            return code.substring(fromPos, pos + 1);
-          } else {
-            argumentTypeStack.pop();
-          }
-
-          break;
-        }
-        case ']': {
-          if (argumentTypeStack.peek() != ArgumentType.BRACKET) {
-            return "";
-          } else if (argumentTypeStack.size() == 1) {
-            return code.substring(fromPos, pos + 1);
-          } else {
-            argumentTypeStack.pop();
-          }
-
-          break;
-        }
-        case ')': {
-          if ((argumentTypeStack.peek() == ArgumentType.PARENTHESIS)
-                && (argumentTypeStack.size() == 1)) {
-            return code.substring(fromPos, pos + 1);
-          }
-
-          break;
-        }
-        default: {
-          break;
-        }
-      }
-
-      pos++;
-    }
-
-    return "";
+    if ((fromPos >= code.length()) || (code.charAt(fromPos) != openChar)) return "";
+    int closingPos = ((braceMatchingTable != null)
+        ? braceMatchingTable.getClosingPosition(code, fromPos)
+        : LatexBraceMatchingTable.findClosingPosition(code, fromPos));
+    return ((closingPos > -1) ? code.substring(fromPos, closingPos + 1) : "");
   }
 
   /**
@@ -211,28 +218,40 @@ public class LatexCommandSignature {
    */
   public @Nullable List<Pair<Integer, Integer>> matchArgumentsFromPosition(
         String code, int fromPos) {
+    return matchArgumentsFromPosition(code, fromPos, null);
+  }
+
+  @Nullable List<Pair<Integer, Integer>> matchArgumentsFromPosition(
+        String code, int fromPos, @Nullable LatexBraceMatchingTable braceMatchingTable) {
     List<Pair<Integer, Integer>> arguments = new ArrayList<>();
-    int toPos = matchFromPosition(code, fromPos, arguments);
+    int toPos = matchFromPosition(code, fromPos, braceMatchingTable, arguments);
     return ((toPos > -1) ? arguments : null);
   }
 
   public String matchFromPosition(String code, int fromPos) {
-    int toPos = matchFromPosition(code, fromPos, null);
+    return matchFromPosition(code, fromPos, null);
+  }
+
+  String matchFromPosition(String code, int fromPos,
+        @Nullable LatexBraceMatchingTable braceMatchingTable) {
+    int toPos = matchFromPosition(code, fromPos, braceMatchingTable, null);
     return ((toPos > -1) ? code.substring(fromPos, toPos) : "");
   }
 
   private int matchFromPosition(String code, int fromPos,
+        @Nullable LatexBraceMatchingTable braceMatchingTable,
         @Nullable List<Pair<Integer, Integer>> arguments) {
     int pos = fromPos;
-    String match = matchPatternFromPosition(code, pos, this.commandPattern);
-    if (match.isEmpty()) return -1;
-    pos += match.length();
+    // invalid signatures have an empty name and don't match anything
+    if (this.name.isEmpty() || !code.startsWith(this.name, pos)) return -1;
+    pos += this.name.length();
+    String match;
 
     for (ArgumentType argumentType : this.argumentTypes) {
       match = matchPatternFromPosition(code, pos, commentPattern);
       pos += match.length();
 
-      match = matchArgumentFromPosition(code, pos, argumentType);
+      match = matchArgumentFromPosition(code, pos, argumentType, braceMatchingTable);
       if (match.isEmpty()) return -1;
       if (arguments != null) arguments.add(new Pair<>(pos, pos + match.length()));
       pos += match.length();
@@ -245,6 +264,10 @@ public class LatexCommandSignature {
     return this.name;
   }
 
+  public List<ArgumentType> getArgumentTypes() {
+    return Collections.unmodifiableList(this.argumentTypes);
+  }
+
   public String getCommandPrototype() {
     return this.commandPrototype;
   }
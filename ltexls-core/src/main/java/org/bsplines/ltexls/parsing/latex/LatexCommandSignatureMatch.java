@@ -52,6 +52,11 @@ public class LatexCommandSignatureMatch {
     return argument.getKey() + 1;
   }
 
+  public int getArgumentContentsToPos(int index) {
+    Pair<Integer, Integer> argument = this.argumentPos.get(index);
+    return argument.getValue() - 1;
+  }
+
   public int getArgumentsSize() {
     return this.argumentPos.size();
   }
@@ -10,20 +10,25 @@ package org.bsplines.ltexls.parsing.latex;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.xtext.xbase.lib.Pair;
 
+/**
+ * Matcher that finds the occurrences of a set of command signatures in LaTeX code. The names of
+ * the commands are stored in a trie. At every backslash, the trie is walked along the code, and
+ * only the signatures whose names are prefixes of the code at this position are tried.
+ *
+ * <p>The matcher is immutable after construction and can be shared between threads. The state
+ * of a matching run is stored in a @c Cursor, which is returned by @c startMatching
+ * and must not be shared between threads.
+ */
 public class LatexCommandSignatureMatcher {
-  private List<LatexCommandSignature> commandSignatures;
-  private Pattern commandPattern;
-  private @Nullable String code;
-  private @Nullable Matcher matcher;
-  private @Nullable Set<String> ignoreCommandPrototypes;
+  private final List<LatexCommandSignature> commandSignatures;
+  private final TrieNode rootNode;
 
   public LatexCommandSignatureMatcher(LatexCommandSignature commandSignature) {
     this(Collections.singletonList(commandSignature));
@@ -31,69 +36,167 @@ public class LatexCommandSignatureMatcher {
 
   public LatexCommandSignatureMatcher(
         Collection<? extends LatexCommandSignature> commandSignatures) {
-    this.commandSignatures = new ArrayList<>(commandSignatures);
-
-    Set<String> commandNames = new HashSet<>();
-    this.commandSignatures.forEach((LatexCommandSignature x) -> commandNames.add(x.getName()));
-    StringBuilder commandPatternStringBuilder = new StringBuilder("");
-    boolean first = true;
-
-    for (String commandName : commandNames) {
-      if (first) {
-        first = false;
-      } else {
-        commandPatternStringBuilder.append("|");
+    this.commandSignatures = Collections.unmodifiableList(new ArrayList<>(commandSignatures));
+    this.rootNode = new TrieNode();
+
+    for (int i = 0; i < this.commandSignatures.size(); i++) {
+      String commandName = this.commandSignatures.get(i).getName();
+      // invalid command prototypes don't match anything
+      if (commandName.isEmpty()) continue;
+      TrieNode node = this.rootNode;
+
+      for (int j = 0; j < commandName.length(); j++) {
+        node = node.getOrCreateChild(commandName.charAt(j));
       }
 
-      commandPatternStringBuilder.append(Pattern.quote(commandName));
+      node.commandSignatureIndices.add(i);
+    }
+  }
+
+  private static class TrieNode {
+    private final Map<Character, TrieNode> children;
+    private final List<Integer> commandSignatureIndices;
+
+    public TrieNode() {
+      this.children = new HashMap<>();
+      this.commandSignatureIndices = new ArrayList<>();
+    }
+
+    public @Nullable TrieNode getChild(char ch) {
+      return this.children.get(ch);
     }
 
-    this.commandPattern = Pattern.compile(commandPatternStringBuilder.toString());
+    public TrieNode getOrCreateChild(char ch) {
+      @Nullable TrieNode child = this.children.get(ch);
+
+      if (child == null) {
+        child = new TrieNode();
+        this.children.put(ch, child);
+      }
+
+      return child;
+    }
+  }
 
-    this.code = null;
-    this.matcher = null;
-    this.ignoreCommandPrototypes = null;
+  /**
+   * Start matching the command signatures in the given code.
+   *
+   * @param code LaTeX code
+   * @param ignoreCommandPrototypes prototypes of the command signatures that should not be
+   *     matched; the set must not be modified while the returned cursor is used
+   * @return cursor that finds the matches one after another
+   */
+  public Cursor startMatching(String code, Set<String> ignoreCommandPrototypes) {
+    return startMatching(code, new LatexBraceMatchingTable(code), ignoreCommandPrototypes);
   }
 
-  public void startMatching(String code, Set<String> ignoreCommandPrototypes) {
-    this.code = code;
-    this.matcher = this.commandPattern.matcher(code);
-    this.ignoreCommandPrototypes = new HashSet<String>(ignoreCommandPrototypes);
+  /**
+   * Start matching the command signatures in the given code, using the given brace matching
+   * table instead of computing it.
+   *
+   * @param code LaTeX code
+   * @param braceMatchingTable brace matching table of the code
+   * @param ignoreCommandPrototypes prototypes of the command signatures that should not be
+   *     matched; the set must not be modified while the returned cursor is used
+   * @return cursor that finds the matches one after another
+   */
+  public Cursor startMatching(String code, LatexBraceMatchingTable braceMatchingTable,
+        Set<String> ignoreCommandPrototypes) {
+    return new Cursor(code, braceMatchingTable, ignoreCommandPrototypes);
   }
 
-  public @Nullable LatexCommandSignatureMatch findNextMatch() {
-    // fixes false-positive dereference.of.nullable warnings
-    @Nullable String code = this.code;
-    @Nullable Matcher matcher = this.matcher;
-    @Nullable Set<String> ignoreCommandPrototypes = this.ignoreCommandPrototypes;
-    if ((code == null) || (matcher == null) || (ignoreCommandPrototypes == null)) return null;
+  /**
+   * State of a matching run of the command signatures of the matcher in a piece of code.
+   */
+  public class Cursor {
+    private final String code;
+    private final LatexBraceMatchingTable braceMatchingTable;
+    private final Set<String> ignoreCommandPrototypes;
+    private int pos;
+
+    private Cursor(String code, LatexBraceMatchingTable braceMatchingTable,
+          Set<String> ignoreCommandPrototypes) {
+      this.code = code;
+      this.braceMatchingTable = braceMatchingTable;
+      this.ignoreCommandPrototypes = ignoreCommandPrototypes;
+      this.pos = 0;
+    }
 
-    while (matcher.find()) {
-      int fromPos = matcher.start();
-      @Nullable LatexCommandSignatureMatch bestMatch = null;
+    public @Nullable LatexCommandSignatureMatch findNextMatch() {
+      List<LatexCommandSignatureMatch> matches = findNextMatches();
+      return (matches.isEmpty() ? null : matches.get(0));
+    }
 
-      for (LatexCommandSignature commandSignature : this.commandSignatures) {
-        if (ignoreCommandPrototypes.contains(commandSignature.getCommandPrototype())) {
-          continue;
+    /**
+     * Find all matches at the next position at which at least one of the command signatures
+     * matches.
+     *
+     * @return matches at the next position, sorted from the best match (longest match; on ties,
+     *     the signature that comes first in the list) to the worst match; empty list if there
+     *     are no more matches
+     */
+    public List<LatexCommandSignatureMatch> findNextMatches() {
+      while (this.pos < this.code.length()) {
+        int fromPos = this.code.indexOf('\\', this.pos);
+
+        if (fromPos == -1) {
+          this.pos = this.code.length();
+          break;
         }
 
-        @Nullable List<Pair<Integer, Integer>> arguments =
-            commandSignature.matchArgumentsFromPosition(code, fromPos);
+        this.pos = fromPos + 1;
+        List<Pair<Integer, LatexCommandSignatureMatch>> matches = new ArrayList<>();
+        @Nullable TrieNode node = LatexCommandSignatureMatcher.this.rootNode;
+
+        for (int curPos = fromPos; curPos < this.code.length(); curPos++) {
+          node = node.getChild(this.code.charAt(curPos));
+          if (node == null) break;
+
+          for (int i : node.commandSignatureIndices) {
+            LatexCommandSignature commandSignature =
+                LatexCommandSignatureMatcher.this.commandSignatures.get(i);
+
+            if (this.ignoreCommandPrototypes.contains(commandSignature.getCommandPrototype())) {
+              continue;
+            }
+
+            @Nullable List<Pair<Integer, Integer>> arguments =
+                commandSignature.matchArgumentsFromPosition(
+                  this.code, fromPos, this.braceMatchingTable);
 
-        if (arguments != null) {
-          LatexCommandSignatureMatch match = new LatexCommandSignatureMatch(
-              commandSignature, code, fromPos, arguments);
-          if ((bestMatch == null) || (match.getToPos() > bestMatch.getToPos())) bestMatch = match;
+            if (arguments != null) {
+              matches.add(new Pair<>(i, new LatexCommandSignatureMatch(
+                  commandSignature, this.code, fromPos, arguments)));
+            }
+          }
         }
+
+        if (!matches.isEmpty()) return sortMatches(matches);
       }
 
-      if (bestMatch != null) return bestMatch;
+      return Collections.emptyList();
+    }
+  }
+
+  private static int compareMatches(Pair<Integer, LatexCommandSignatureMatch> match1,
+        Pair<Integer, LatexCommandSignatureMatch> match2) {
+    int result = Integer.compare(match2.getValue().getToPos(), match1.getValue().getToPos());
+    return ((result != 0) ? result : Integer.compare(match1.getKey(), match2.getKey()));
+  }
+
+  private static List<LatexCommandSignatureMatch> sortMatches(
+        List<Pair<Integer, LatexCommandSignatureMatch>> matches) {
+    matches.sort(LatexCommandSignatureMatcher::compareMatches);
+    List<LatexCommandSignatureMatch> sortedMatches = new ArrayList<>(matches.size());
+
+    for (Pair<Integer, LatexCommandSignatureMatch> match : matches) {
+      sortedMatches.add(match.getValue());
     }
 
-    return null;
+    return sortedMatches;
   }
 
   public List<LatexCommandSignature> getCommandSignatures() {
-    return Collections.unmodifiableList(this.commandSignatures);
+    return this.commandSignatures;
   }
 }
@@ -7,15 +7,15 @@
 
 package org.bsplines.ltexls.parsing.latex;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.Stack;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.bsplines.ltexls.parsing.CodeFragment;
 import org.bsplines.ltexls.parsing.CodeFragmentizer;
@@ -29,37 +29,44 @@ public class LatexFragmentizer extends CodeFragmentizer {
   private static final Pattern commentPattern = Pattern.compile(
       "^\\s*%\\s*(?i)ltex(?-i):(?<settings>.*?)$", Pattern.MULTILINE);
 
-  private static final LatexCommandSignatureMatcher extraCommandSignatureMatcher =
-      new LatexCommandSignatureMatcher(Arrays.asList(
-        new LatexCommandSignature("\\footnote{}"),
-        new LatexCommandSignature("\\footnote[]{}"),
-        new LatexCommandSignature("\\todo{}"),
-        new LatexCommandSignature("\\todo[]{}")));
+  private static final List<LatexCommandSignature> extraCommandSignatures = Arrays.asList(
+      new LatexCommandSignature("\\footnote{}"),
+      new LatexCommandSignature("\\footnote[]{}"),
+      new LatexCommandSignature("\\todo{}"),
+      new LatexCommandSignature("\\todo[]{}"));
 
   private static final Pattern languageTagReplacementPattern = Pattern.compile("[^A-Za-z]+");
   private static final Map<String, String> babelLanguageMap = createBabelLanguageMap();
 
   private static final LatexCommandSignature usePackageCommandSignature =
       new LatexCommandSignature("\\usepackage[]{}");
-  private static final LatexCommandSignatureMatcher usePackageCommandSignatureMatcher =
-      new LatexCommandSignatureMatcher(Collections.singletonList(usePackageCommandSignature));
-
   private static final LatexCommandSignature babelSwitchCommandSignature =
       new LatexCommandSignature("\\selectlanguage{}");
-  private static final LatexCommandSignatureMatcher babelSwitchCommandSignatureMatcher =
-      new LatexCommandSignatureMatcher(Collections.singletonList(babelSwitchCommandSignature));
-
   private static final Map<LatexCommandSignature, String> babelInlineCommandSignatureMap =
       createBabelInlineCommandSignatureMap();
-  private static final LatexCommandSignatureMatcher babelInlineCommandSignatureMatcher =
-      new LatexCommandSignatureMatcher(babelInlineCommandSignatureMap.keySet());
-
   private static final Map<LatexCommandSignature, String> babelEnvironmentCommandSignatureMap =
       createBabelEnvironmentCommandSignatureMap();
-  private static final LatexCommandSignatureMatcher babelEnvironmentCommandSignatureMatcher =
-      new LatexCommandSignatureMatcher(babelEnvironmentCommandSignatureMap.keySet());
 
-  private RegexCodeFragmentizer commentFragmentizer;
+  private static final LatexCommandSignatureMatcher commandSignatureMatcher =
+      new LatexCommandSignatureMatcher(createCommandSignatures());
+
+  private enum SplitPointType {
+    MAGIC_COMMENT,
+    BABEL_USE_PACKAGE,
+    BABEL_SWITCH,
+  }
+
+  private static class SplitPoint {
+    private int pos;
+    private SplitPointType type;
+    private String value;
+
+    public SplitPoint(int pos, SplitPointType type, String value) {
+      this.pos = pos;
+      this.type = type;
+      this.value = value;
+    }
+  }
 
   private static Map<String, String> createBabelLanguageMap() {
     Map<String, String> babelLanguageMap = new HashMap<>();
@@ -216,272 +223,366 @@ public class LatexFragmentizer extends CodeFragmentizer {
     return babelEnvironmentCommandSignatureMap;
   }
 
-  /**
-   * Constructor.
-   *
-   * @param codeLanguageId ID of the code language
-   */
+  private static List<LatexCommandSignature> createCommandSignatures() {
+    List<LatexCommandSignature> commandSignatures = new ArrayList<>();
+    commandSignatures.add(usePackageCommandSignature);
+    commandSignatures.add(babelSwitchCommandSignature);
+    commandSignatures.addAll(babelInlineCommandSignatureMap.keySet());
+    commandSignatures.addAll(babelEnvironmentCommandSignatureMap.keySet());
+    commandSignatures.addAll(extraCommandSignatures);
+    return commandSignatures;
+  }
+
   public LatexFragmentizer(String codeLanguageId) {
     super(codeLanguageId);
-    this.commentFragmentizer = new RegexCodeFragmentizer(codeLanguageId, commentPattern);
   }
 
-  private static Set<String> getIgnoreCommandPrototypes(Settings settings) {
-    Set<String> ignoreCommandPrototypes = new HashSet<>();
+  /**
+   * Split the code into fragments. All split points and commands are found in one scan over
+   * the code, and the fragments refer to ranges of the code instead of copying it.
+   *
+   * <p>The fragments are the same as if the code were split successively at magic comments,
+   * at babel package imports, and at babel language switches, and if then, successively for
+   * babel inline commands, babel environments, and extra commands like footnotes, the contents
+   * of the commands of every fragment were prepended as new fragments. A command is only taken
+   * into account for a fragment if it is completely contained in the fragment.
+   *
+   * <p>The brace matching table of the code is passed with the fragments, such that the
+   * annotated text builder does not have to compute it again.
+   */
+  @Override
+  public List<CodeFragment> fragmentize(String code, Settings originalSettings) {
+    // for every position, all matches are stored, as the best match might not be contained
+    // in a fragment, while a shorter match is
+    List<List<LatexCommandSignatureMatch>> usePackageMatches = new ArrayList<>();
+    List<List<LatexCommandSignatureMatch>> babelSwitchMatches = new ArrayList<>();
+    List<List<LatexCommandSignatureMatch>> babelInlineMatches = new ArrayList<>();
+    List<List<LatexCommandSignatureMatch>> babelEnvironmentMatches = new ArrayList<>();
+    List<List<LatexCommandSignatureMatch>> extraMatches = new ArrayList<>();
+    LatexBraceMatchingTable braceMatchingTable = new LatexBraceMatchingTable(code);
+    LatexCommandSignatureMatcher.Cursor cursor = commandSignatureMatcher.startMatching(
+        code, braceMatchingTable, originalSettings.getIgnoredLatexCommandPrototypes());
+    List<LatexCommandSignatureMatch> matches;
+
+    while (!(matches = cursor.findNextMatches()).isEmpty()) {
+      LatexCommandSignature commandSignature = matches.get(0).getCommandSignature();
+
+      if (commandSignature == usePackageCommandSignature) {
+        usePackageMatches.add(matches);
+      } else if (commandSignature == babelSwitchCommandSignature) {
+        babelSwitchMatches.add(matches);
+      } else if (babelInlineCommandSignatureMap.containsKey(commandSignature)) {
+        babelInlineMatches.add(matches);
+      } else if (babelEnvironmentCommandSignatureMap.containsKey(commandSignature)) {
+        babelEnvironmentMatches.add(matches);
+      } else {
+        extraMatches.add(matches);
+      }
+    }
 
-    for (Map.Entry<String, String> entry : settings.getLatexCommands().entrySet()) {
-      if (entry.getValue().equals("ignore")) ignoreCommandPrototypes.add(entry.getKey());
+    List<CodeFragment> fragments = new ArrayList<>();
+
+    for (CodeFragment fragment : splitCode(code, originalSettings,
+          usePackageMatches, babelSwitchMatches)) {
+      for (CodeFragment inlineFragment : fragmentizeBabelInlineCommands(
+            code, fragment, babelInlineMatches)) {
+        for (CodeFragment environmentFragment : fragmentizeBabelEnvironments(
+              code, inlineFragment, babelEnvironmentMatches)) {
+          for (CodeFragment extraFragment : fragmentizeExtraCommands(
+                code, environmentFragment, extraMatches)) {
+            fragments.add(extraFragment.withBraceMatchingTable(braceMatchingTable));
+          }
+        }
+      }
     }
 
-    return ignoreCommandPrototypes;
+    return fragments;
   }
 
-  @Override
-  public List<CodeFragment> fragmentize(String code, Settings originalSettings) {
-    List<CodeFragment> fragments = Collections.singletonList(new CodeFragment(
-          this.codeLanguageId, code, 0, originalSettings));
+  private List<CodeFragment> splitCode(String code, Settings originalSettings,
+        List<List<LatexCommandSignatureMatch>> usePackageMatches,
+        List<List<LatexCommandSignatureMatch>> babelSwitchMatches) {
+    List<SplitPoint> splitPoints = new ArrayList<>();
+    List<Integer> splitPositions = new ArrayList<>();
+    Matcher commentMatcher = commentPattern.matcher(code);
+
+    while (commentMatcher.find()) {
+      @Nullable String settingsLine = commentMatcher.group("settings");
+      splitPoints.add(new SplitPoint(commentMatcher.start(), SplitPointType.MAGIC_COMMENT,
+          ((settingsLine != null) ? settingsLine : "")));
+      splitPositions.add(commentMatcher.start());
+    }
 
-    fragments = this.commentFragmentizer.fragmentize(fragments);
-    fragments = fragmentizeBabelUsePackageCommands(fragments);
-    fragments = fragmentizeBabelSwitchCommands(fragments);
-    fragments = fragmentizeBabelInlineCommands(fragments);
-    fragments = fragmentizeBabelEnvironments(fragments);
-    fragments = fragmentizeExtraCommands(fragments);
+    for (List<LatexCommandSignatureMatch> matches : usePackageMatches) {
+      @Nullable LatexCommandSignatureMatch match = getUnsplitMatch(matches, splitPositions);
+      if (match == null) continue;
+      String packageName = match.getArgumentContents(1);
+      if (!packageName.equals("babel")) continue;
 
-    return fragments;
-  }
+      List<Pair<String, String>> packageOptions = LatexPackageOptionsParser.parse(
+          match.getArgumentContents(0));
+      @Nullable String babelLanguage = null;
 
-  private List<CodeFragment> fragmentizeBabelUsePackageCommands(List<CodeFragment> fragments) {
-    ArrayList<CodeFragment> newFragments = new ArrayList<>();
-
-    for (CodeFragment oldFragment : fragments) {
-      String oldFragmentCode = oldFragment.getCode();
-      Settings oldFragmentSettings = oldFragment.getSettings();
-      usePackageCommandSignatureMatcher.startMatching(oldFragmentCode,
-          getIgnoreCommandPrototypes(oldFragmentSettings));
-      int prevFromPos = 0;
-      Settings prevSettings = oldFragmentSettings;
-      @Nullable LatexCommandSignatureMatch match;
-
-      while ((match = usePackageCommandSignatureMatcher.findNextMatch()) != null) {
-        String packageName = match.getArgumentContents(1);
-        if (!packageName.equals("babel")) continue;
-
-        List<Pair<String, String>> packageOptions = LatexPackageOptionsParser.parse(
-            match.getArgumentContents(0));
-        @Nullable String babelLanguage = null;
-
-        for (Pair<String, String> packageOption : packageOptions) {
-          String key = packageOption.getKey();
-          if (babelLanguageMap.containsKey(key)) babelLanguage = key;
-        }
+      for (Pair<String, String> packageOption : packageOptions) {
+        String key = packageOption.getKey();
+        if (babelLanguageMap.containsKey(key)) babelLanguage = key;
+      }
 
-        if (babelLanguage == null) continue;
-        @Nullable String languageShortCode = babelLanguageMap.get(babelLanguage);
+      if (babelLanguage == null) continue;
+      @Nullable String languageShortCode = babelLanguageMap.get(babelLanguage);
 
-        if (languageShortCode == null) {
-          Tools.logger.warning(Tools.i18n("unknownBabelLanguage", babelLanguage));
-          continue;
-        }
+      if (languageShortCode == null) {
+        Tools.logger.warning(Tools.i18n("unknownBabelLanguage", babelLanguage));
+        continue;
+      }
+
+      splitPoints.add(new SplitPoint(match.getFromPos(), SplitPointType.BABEL_USE_PACKAGE,
+          languageShortCode));
+    }
+
+    for (SplitPoint splitPoint : splitPoints) {
+      if (splitPoint.type == SplitPointType.BABEL_USE_PACKAGE) splitPositions.add(splitPoint.pos);
+    }
 
-        int nextFromPos = match.getFromPos();
-        Settings nextSettings = prevSettings.withLanguageShortCode(languageShortCode);
+    Collections.sort(splitPositions);
 
-        newFragments.add(new CodeFragment(this.codeLanguageId,
-            oldFragmentCode.substring(prevFromPos, nextFromPos),
-            oldFragment.getFromPos() + prevFromPos, prevSettings));
+    for (List<LatexCommandSignatureMatch> matches : babelSwitchMatches) {
+      @Nullable LatexCommandSignatureMatch match = getUnsplitMatch(matches, splitPositions);
+      if (match == null) continue;
+      String babelLanguage = match.getArgumentContents(0);
+      @Nullable String languageShortCode = babelLanguageMap.get(babelLanguage);
 
-        prevFromPos = nextFromPos;
-        prevSettings = nextSettings;
+      if (languageShortCode == null) {
+        Tools.logger.warning(Tools.i18n("unknownBabelLanguage", babelLanguage));
+        continue;
       }
 
-      newFragments.add(new CodeFragment(this.codeLanguageId,
-          oldFragmentCode.substring(prevFromPos),
-          oldFragment.getFromPos() + prevFromPos, prevSettings));
+      splitPoints.add(new SplitPoint(match.getFromPos(), SplitPointType.BABEL_SWITCH,
+          languageShortCode));
     }
 
-    return newFragments;
+    splitPoints.sort((SplitPoint splitPoint1, SplitPoint splitPoint2) ->
+        Integer.compare(splitPoint1.pos, splitPoint2.pos));
+
+    // magic comments reset the language of babel commands, and babel packages reset the
+    // language of babel switch commands
+    List<CodeFragment> fragments = new ArrayList<>();
+    Settings magicCommentSettings = originalSettings;
+    Settings usePackageSettings = originalSettings;
+    Settings curSettings = originalSettings;
+    int prevFromPos = 0;
+
+    for (SplitPoint splitPoint : splitPoints) {
+      fragments.add(new CodeFragment(this.codeLanguageId, code, prevFromPos, splitPoint.pos,
+          curSettings));
+      prevFromPos = splitPoint.pos;
+
+      switch (splitPoint.type) {
+        case MAGIC_COMMENT: {
+          magicCommentSettings = RegexCodeFragmentizer.applySettings(
+              magicCommentSettings, splitPoint.value);
+          usePackageSettings = magicCommentSettings;
+          curSettings = magicCommentSettings;
+          break;
+        }
+        case BABEL_USE_PACKAGE: {
+          usePackageSettings = usePackageSettings.withLanguageShortCode(splitPoint.value);
+          curSettings = usePackageSettings;
+          break;
+        }
+        case BABEL_SWITCH: {
+          curSettings = curSettings.withLanguageShortCode(splitPoint.value);
+          break;
+        }
+        default: {
+          break;
+        }
+      }
+    }
+
+    fragments.add(new CodeFragment(this.codeLanguageId, code, prevFromPos, code.length(),
+        curSettings));
+
+    return fragments;
   }
 
-  private List<CodeFragment> fragmentizeBabelSwitchCommands(List<CodeFragment> fragments) {
-    ArrayList<CodeFragment> newFragments = new ArrayList<>();
+  /**
+   * Get the best of the given matches that is not split by one of the given positions, i.e.,
+   * none of the positions is strictly inside the range of the match.
+   *
+   * @param matches matches at the same position, sorted from best to worst
+   * @param sortedPositions sorted list of positions
+   * @return best match that is not split, or @c null if all matches are split
+   */
+  private static @Nullable LatexCommandSignatureMatch getUnsplitMatch(
+        List<LatexCommandSignatureMatch> matches, List<Integer> sortedPositions) {
+    int index = Collections.binarySearch(sortedPositions, matches.get(0).getFromPos() + 1);
+    if (index < 0) index = -index - 1;
+    int splitPos = ((index < sortedPositions.size())
+        ? sortedPositions.get(index) : Integer.MAX_VALUE);
+
+    for (LatexCommandSignatureMatch match : matches) {
+      if (match.getToPos() <= splitPos) return match;
+    }
+
+    return null;
+  }
+
+  /**
+   * Get the matches that are completely contained in the given fragment.
+   *
+   * @param matches for every position, matches at this position sorted from best to worst;
+   *     sorted by position
+   * @param fragment fragment
+   * @return for every position, the best match that is completely contained in the fragment;
+   *     sorted by position
+   */
+  private static List<LatexCommandSignatureMatch> getContainedMatches(
+        List<List<LatexCommandSignatureMatch>> matches, CodeFragment fragment) {
+    int fromIndex = 0;
+    int toIndex = matches.size();
+
+    while (fromIndex < toIndex) {
+      int index = (fromIndex + toIndex) >>> 1;
+
+      if (matches.get(index).get(0).getFromPos() < fragment.getFromPos()) {
+        fromIndex = index + 1;
+      } else {
+        toIndex = index;
+      }
+    }
 
-    for (CodeFragment oldFragment : fragments) {
-      String oldFragmentCode = oldFragment.getCode();
-      Settings oldFragmentSettings = oldFragment.getSettings();
-      babelSwitchCommandSignatureMatcher.startMatching(oldFragmentCode,
-          getIgnoreCommandPrototypes(oldFragmentSettings));
-      int prevFromPos = 0;
-      Settings prevSettings = oldFragmentSettings;
-      @Nullable LatexCommandSignatureMatch match;
+    List<LatexCommandSignatureMatch> containedMatches = new ArrayList<>();
 
-      while ((match = babelSwitchCommandSignatureMatcher.findNextMatch()) != null) {
-        String babelLanguage = match.getArgumentContents(0);
-        @Nullable String languageShortCode = babelLanguageMap.get(babelLanguage);
+    for (int i = fromIndex; i < matches.size(); i++) {
+      if (matches.get(i).get(0).getFromPos() >= fragment.getToPos()) break;
 
-        if (languageShortCode == null) {
-          Tools.logger.warning(Tools.i18n("unknownBabelLanguage", babelLanguage));
-          continue;
+      for (LatexCommandSignatureMatch match : matches.get(i)) {
+        if (match.getToPos() <= fragment.getToPos()) {
+          containedMatches.add(match);
+          break;
         }
+      }
+    }
+
+    return containedMatches;
+  }
+
+  private CodeFragment createArgumentContentsFragment(String code,
+        LatexCommandSignatureMatch match, int argumentIndex, Settings settings) {
+    return new CodeFragment(this.codeLanguageId, code,
+        match.getArgumentContentsFromPos(argumentIndex),
+        match.getArgumentContentsToPos(argumentIndex), settings);
+  }
 
-        int nextFromPos = match.getFromPos();
-        Settings nextSettings = prevSettings.withLanguageShortCode(languageShortCode);
+  private List<CodeFragment> fragmentizeBabelInlineCommands(String code, CodeFragment fragment,
+        List<List<LatexCommandSignatureMatch>> babelInlineMatches) {
+    List<CodeFragment> newFragments = new ArrayList<>();
+    Settings curSettings = fragment.getSettings();
 
-        newFragments.add(new CodeFragment(this.codeLanguageId,
-            oldFragmentCode.substring(prevFromPos, nextFromPos),
-            oldFragment.getFromPos() + prevFromPos, prevSettings));
+    for (LatexCommandSignatureMatch match : getContainedMatches(babelInlineMatches, fragment)) {
+      @Nullable String languageShortCode =
+          babelInlineCommandSignatureMap.get(match.getCommandSignature());
+      String babelLanguage = "";
 
-        prevFromPos = nextFromPos;
-        prevSettings = nextSettings;
+      if (languageShortCode == null) {
+        String commandPrototype = match.getCommandSignature().getCommandPrototype();
+        Tools.logger.warning(Tools.i18n("invalidBabelInlineCommand", commandPrototype));
+        continue;
+      } else if (languageShortCode.isEmpty()) {
+        babelLanguage = match.getArgumentContents(match.getArgumentsSize() - 2);
+        languageShortCode = babelLanguageMap.get(babelLanguage);
+      }
+
+      if (languageShortCode == null) {
+        Tools.logger.warning(Tools.i18n("unknownBabelLanguage", babelLanguage));
+      } else {
+        curSettings = curSettings.withLanguageShortCode(languageShortCode);
       }
 
-      newFragments.add(new CodeFragment(this.codeLanguageId,
-          oldFragmentCode.substring(prevFromPos),
-          oldFragment.getFromPos() + prevFromPos, prevSettings));
+      newFragments.add(createArgumentContentsFragment(code, match,
+          match.getArgumentsSize() - 1, curSettings));
     }
 
+    newFragments.add(fragment);
     return newFragments;
   }
 
-  private List<CodeFragment> fragmentizeBabelInlineCommands(List<CodeFragment> fragments) {
-    ArrayList<CodeFragment> newFragments = new ArrayList<>();
+  private List<CodeFragment> fragmentizeBabelEnvironments(String code, CodeFragment fragment,
+        List<List<LatexCommandSignatureMatch>> babelEnvironmentMatches) {
+    List<CodeFragment> newFragments = new ArrayList<>();
+    Deque<Settings> settingsStack = new ArrayDeque<>();
+    Deque<Integer> fromPosStack = new ArrayDeque<>();
+    settingsStack.push(fragment.getSettings());
+    fromPosStack.push(fragment.getFromPos());
 
-    for (CodeFragment oldFragment : fragments) {
-      String oldFragmentCode = oldFragment.getCode();
-      Settings oldFragmentSettings = oldFragment.getSettings();
-      babelInlineCommandSignatureMatcher.startMatching(oldFragmentCode,
-          getIgnoreCommandPrototypes(oldFragmentSettings));
-      Settings curSettings = oldFragmentSettings;
-      @Nullable LatexCommandSignatureMatch match;
+    for (LatexCommandSignatureMatch match
+          : getContainedMatches(babelEnvironmentMatches, fragment)) {
+      String commandPrototype = match.getCommandSignature().getCommandPrototype();
+      boolean isBegin = commandPrototype.startsWith("\\begin");
 
-      while ((match = babelInlineCommandSignatureMatcher.findNextMatch()) != null) {
+      if (isBegin) {
         @Nullable String languageShortCode =
-            babelInlineCommandSignatureMap.get(match.getCommandSignature());
+            babelEnvironmentCommandSignatureMap.get(match.getCommandSignature());
         String babelLanguage = "";
 
         if (languageShortCode == null) {
-          String commandPrototype = match.getCommandSignature().getCommandPrototype();
-          Tools.logger.warning(Tools.i18n("invalidBabelInlineCommand", commandPrototype));
+          Tools.logger.warning(Tools.i18n("invalidBabelEnvironment", commandPrototype));
           continue;
         } else if (languageShortCode.isEmpty()) {
-          babelLanguage = match.getArgumentContents(match.getArgumentsSize() - 2);
+          babelLanguage = match.getArgumentContents(match.getArgumentsSize() - 1);
           languageShortCode = babelLanguageMap.get(babelLanguage);
         }
 
+        Settings newSettings = settingsStack.getFirst();
+
         if (languageShortCode == null) {
           Tools.logger.warning(Tools.i18n("unknownBabelLanguage", babelLanguage));
         } else {
-          curSettings = curSettings.withLanguageShortCode(languageShortCode);
+          newSettings = newSettings.withLanguageShortCode(languageShortCode);
         }
 
-        String contents = match.getArgumentContents(match.getArgumentsSize() - 1);
-        int contentsFromPos = match.getArgumentContentsFromPos(match.getArgumentsSize() - 1);
-        newFragments.add(new CodeFragment(this.codeLanguageId, contents,
-            oldFragment.getFromPos() + contentsFromPos, curSettings));
-      }
-
-      newFragments.add(oldFragment);
-    }
-
-    return newFragments;
-  }
-
-  private List<CodeFragment> fragmentizeBabelEnvironments(List<CodeFragment> fragments) {
-    ArrayList<CodeFragment> newFragments = new ArrayList<>();
-
-    for (CodeFragment oldFragment : fragments) {
-      String oldFragmentCode = oldFragment.getCode();
-      Settings oldFragmentSettings = oldFragment.getSettings();
-      babelEnvironmentCommandSignatureMatcher.startMatching(oldFragmentCode,
-          getIgnoreCommandPrototypes(oldFragmentSettings));
-      Stack<Settings> settingsStack = new Stack<>();
-      Stack<Integer> fromPosStack = new Stack<>();
-      settingsStack.push(oldFragmentSettings);
-      fromPosStack.push(0);
-      @Nullable LatexCommandSignatureMatch match;
-
-      while (((match = babelEnvironmentCommandSignatureMatcher.findNextMatch()) != null)
-            && !settingsStack.isEmpty()) {
-        String commandPrototype = match.getCommandSignature().getCommandPrototype();
-        boolean isBegin = commandPrototype.startsWith("\\begin");
-
-        if (isBegin) {
-          @Nullable String languageShortCode =
-              babelEnvironmentCommandSignatureMap.get(match.getCommandSignature());
-          String babelLanguage = "";
-
-          if (languageShortCode == null) {
-            Tools.logger.warning(Tools.i18n("invalidBabelEnvironment", commandPrototype));
-            continue;
-          } else if (languageShortCode.isEmpty()) {
-            babelLanguage = match.getArgumentContents(match.getArgumentsSize() - 1);
-            languageShortCode = babelLanguageMap.get(babelLanguage);
-          }
-
-          Settings newSettings = settingsStack.peek();
-
-          if (languageShortCode == null) {
-            Tools.logger.warning(Tools.i18n("unknownBabelLanguage", babelLanguage));
-          } else {
-            newSettings = newSettings.withLanguageShortCode(languageShortCode);
-          }
+        settingsStack.push(newSettings);
+        fromPosStack.push(match.getToPos());
 
-          settingsStack.push(newSettings);
-          fromPosStack.push(match.getToPos());
+      } else if (settingsStack.size() <= 1) {
+        // shouldn't happen, as then there is an unmatched \end
+        break;
 
-        } else if (settingsStack.size() <= 1) {
-          // shouldn't happen, as then there is an unmatched \end
-          break;
+      } else if (match.getFromPos() < fromPosStack.getFirst()) {
+        // \end in the arguments of the corresponding \begin
+        continue;
 
-        } else {
-          Settings prevSettings = settingsStack.pop();
-          int prevFromPos = fromPosStack.pop();
-          newFragments.add(new CodeFragment(this.codeLanguageId,
-              oldFragmentCode.substring(prevFromPos, match.getFromPos()),
-              oldFragment.getFromPos() + prevFromPos, prevSettings));
-        }
-      }
-
-      int stackSize = settingsStack.size();
-
-      if (stackSize > 1) {
-        // shouldn't happen, as then there is an unmatched \begin
-
-        for (int i = 0; i < stackSize - 1; i++) {
-          Settings prevSettings = settingsStack.pop();
-          int prevFromPos = fromPosStack.pop();
-          newFragments.add(new CodeFragment(this.codeLanguageId,
-              oldFragmentCode.substring(prevFromPos),
-              oldFragment.getFromPos() + prevFromPos, prevSettings));
-        }
+      } else {
+        Settings prevSettings = settingsStack.pop();
+        int prevFromPos = fromPosStack.pop();
+        newFragments.add(new CodeFragment(this.codeLanguageId, code,
+            prevFromPos, match.getFromPos(), prevSettings));
       }
+    }
 
-      newFragments.add(oldFragment);
+    // shouldn't happen, as then there is an unmatched \begin
+    while (settingsStack.size() > 1) {
+      Settings prevSettings = settingsStack.pop();
+      int prevFromPos = fromPosStack.pop();
+      newFragments.add(new CodeFragment(this.codeLanguageId, code,
+          prevFromPos, fragment.getToPos(), prevSettings));
     }
 
+    newFragments.add(fragment);
     return newFragments;
   }
 
-  private List<CodeFragment> fragmentizeExtraCommands(List<CodeFragment> fragments) {
-    ArrayList<CodeFragment> newFragments = new ArrayList<>();
-
-    for (CodeFragment oldFragment : fragments) {
-      String oldFragmentCode = oldFragment.getCode();
-      Settings oldFragmentSettings = oldFragment.getSettings();
-      extraCommandSignatureMatcher.startMatching(oldFragmentCode,
-          getIgnoreCommandPrototypes(oldFragmentSettings));
-      @Nullable LatexCommandSignatureMatch match;
-
-      while ((match = extraCommandSignatureMatcher.findNextMatch()) != null) {
-        String contents = match.getArgumentContents(match.getArgumentsSize() - 1);
-        int contentsFromPos = match.getArgumentContentsFromPos(match.getArgumentsSize() - 1);
-        newFragments.add(new CodeFragment(this.codeLanguageId, contents,
-            oldFragment.getFromPos() + contentsFromPos, oldFragmentSettings));
-      }
+  private List<CodeFragment> fragmentizeExtraCommands(String code, CodeFragment fragment,
+        List<List<LatexCommandSignatureMatch>> extraMatches) {
+    List<CodeFragment> newFragments = new ArrayList<>();
 
-      newFragments.add(oldFragment);
+    for (LatexCommandSignatureMatch match : getContainedMatches(extraMatches, fragment)) {
+      newFragments.add(createArgumentContentsFragment(code, match,
+          match.getArgumentsSize() - 1, fragment.getSettings()));
     }
 
+    newFragments.add(fragment);
     return newFragments;
   }
 
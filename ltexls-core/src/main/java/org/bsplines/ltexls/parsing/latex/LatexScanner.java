@@ -0,0 +1,216 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+/**
+ * Hand-written scanner for the lexical units of LaTeX code. Every method scans one unit starting
+ * at a given position and returns the position after the unit, or the given position if there
+ * is no such unit at the position. The methods neither allocate objects nor copy the code.
+ *
+ * <p>The units are defined as in the regular expressions that were used before; the comment of
+ * every method contains the respective regular expression. The regular expressions are anchored
+ * at the given position, the dot does not match line terminators, and the dollar sign matches
+ * at the end of the code or before a line terminator at the end of the code.
+ */
+final class LatexScanner {
+  private static final String lengthUnits = "ptmmcmexembpddpcin";
+
+  private LatexScanner() {
+  }
+
+  private static boolean isLineTerminator(char ch) {
+    return ((ch == '\n') || (ch == '\r') || (ch == '\u0085') || (ch == '\u2028')
+        || (ch == '\u2029'));
+  }
+
+  private static boolean isWhitespace(char ch) {
+    return ((ch == ' ') || (ch == '\n') || (ch == '\r') || (ch == '\t'));
+  }
+
+  private static boolean isLetter(char ch) {
+    return (((ch >= 'A') && (ch <= 'Z')) || ((ch >= 'a') && (ch <= 'z')));
+  }
+
+  private static boolean isDigit(char ch) {
+    return ((ch >= '0') && (ch <= '9'));
+  }
+
+  private static int getCharCount(String code, int pos) {
+    return Character.charCount(code.codePointAt(pos));
+  }
+
+  private static boolean isAtEnd(String code, int pos) {
+    int length = code.length();
+
+    if (pos == length) {
+      return true;
+    } else if (pos == length - 1) {
+      // no match between "\r" and "\n"
+      char ch = code.charAt(pos);
+      return (isLineTerminator(ch) && ((ch != '\n') || (pos == 0)
+          || (code.charAt(pos - 1) != '\r')));
+    } else {
+      return ((pos == length - 2) && (code.charAt(pos) == '\r')
+          && (code.charAt(pos + 1) == '\n'));
+    }
+  }
+
+  private static int skipWhitespace(String code, int pos) {
+    while ((pos < code.length()) && isWhitespace(code.charAt(pos))) pos++;
+    return pos;
+  }
+
+  /**
+   * Scan a command: <code>\\(([^A-Za-z@]|([A-Za-z@]+))\*?)</code>.
+   */
+  public static int scanCommand(String code, int pos) {
+    if ((pos + 1 >= code.length()) || (code.charAt(pos) != '\\')) return pos;
+    int endPos = pos + 1;
+    char ch = code.charAt(endPos);
+
+    if (isLetter(ch) || (ch == '@')) {
+      do {
+        endPos++;
+      } while ((endPos < code.length())
+            && (isLetter(code.charAt(endPos)) || (code.charAt(endPos) == '@')));
+    } else {
+      endPos += getCharCount(code, endPos);
+    }
+
+    if ((endPos < code.length()) && (code.charAt(endPos) == '*')) endPos++;
+    return endPos;
+  }
+
+  /**
+   * Scan an argument without nested braces: <code>\{[^\}]*?\}</code>.
+   */
+  public static int scanSimpleArgument(String code, int pos) {
+    if ((pos >= code.length()) || (code.charAt(pos) != '{')) return pos;
+    int closingPos = code.indexOf('}', pos + 1);
+    return ((closingPos > -1) ? (closingPos + 1) : pos);
+  }
+
+  /**
+   * Scan a comment: <code>%.*?($|((\n|\r|\r\n)[ \n\r\t]*))</code>.
+   */
+  public static int scanComment(String code, int pos) {
+    if ((pos >= code.length()) || (code.charAt(pos) != '%')) return pos;
+    int endPos = pos + 1;
+
+    while (true) {
+      if (isAtEnd(code, endPos)) return endPos;
+      char ch = code.charAt(endPos);
+
+      if ((ch == '\n') || (ch == '\r')) {
+        return skipWhitespace(code, endPos + 1);
+      } else if (isLineTerminator(ch)) {
+        return pos;
+      }
+
+      endPos++;
+    }
+  }
+
+  /**
+   * Scan whitespace, optionally followed by a comment:
+   * <code>[ \n\r\t]+(%.*?($|((\n|\r|\r\n)[ \n\r\t]*)))?</code>.
+   */
+  public static int scanWhitespace(String code, int pos) {
+    int endPos = skipWhitespace(code, pos);
+    if (endPos == pos) return pos;
+    return scanComment(code, endPos);
+  }
+
+  /**
+   * Scan a length: <code>-?[0-9]*(\.[0-9]+)?(pt|mm|cm|ex|em|bp|dd|pc|in)</code>.
+   */
+  private static int scanLength(String code, int pos) {
+    int endPos = pos;
+    if ((endPos < code.length()) && (code.charAt(endPos) == '-')) endPos++;
+    while ((endPos < code.length()) && isDigit(code.charAt(endPos))) endPos++;
+
+    if ((endPos + 1 < code.length()) && (code.charAt(endPos) == '.')
+          && isDigit(code.charAt(endPos + 1))) {
+      endPos += 2;
+      while ((endPos < code.length()) && isDigit(code.charAt(endPos))) endPos++;
+    }
+
+    for (int i = 0; i < lengthUnits.length(); i += 2) {
+      if (code.regionMatches(endPos, lengthUnits, i, 2)) return endPos + 2;
+    }
+
+    return pos;
+  }
+
+  /**
+   * Scan a length in braces or brackets, e.g., <code>\{</code> + length + <code>\}</code>.
+   *
+   * @param openChar opening brace or bracket
+   * @param closeChar closing brace or bracket
+   */
+  public static int scanDelimitedLength(String code, int pos, char openChar, char closeChar) {
+    if ((pos >= code.length()) || (code.charAt(pos) != openChar)) return pos;
+    int endPos = scanLength(code, pos + 1);
+    if ((endPos == pos + 1) || (endPos >= code.length())) return pos;
+    return ((code.charAt(endPos) == closeChar) ? (endPos + 1) : pos);
+  }
+
+  /**
+   * Scan a string literally (e.g., <code>---</code> or <code>$$</code>).
+   */
+  public static int scanString(String code, int pos, String str) {
+    return (code.startsWith(str, pos) ? (pos + str.length()) : pos);
+  }
+
+  /**
+   * Scan a @c \verb command: <code>\\verb\*?(.).*?\1</code>.
+   */
+  public static int scanVerbCommand(String code, int pos) {
+    if (!code.startsWith("\\verb", pos)) return pos;
+    int delimiterPos = pos + 5;
+
+    if ((delimiterPos < code.length()) && (code.charAt(delimiterPos) == '*')) {
+      int endPos = scanDelimitedVerbatim(code, delimiterPos + 1);
+      if (endPos > -1) return endPos;
+    }
+
+    int endPos = scanDelimitedVerbatim(code, delimiterPos);
+    return ((endPos > -1) ? endPos : pos);
+  }
+
+  private static int scanDelimitedVerbatim(String code, int delimiterPos) {
+    if ((delimiterPos >= code.length()) || isLineTerminator(code.charAt(delimiterPos))) {
+      return -1;
+    }
+
+    int delimiter = code.codePointAt(delimiterPos);
+    int endPos = delimiterPos + Character.charCount(delimiter);
+
+    while ((endPos < code.length()) && !isLineTerminator(code.charAt(endPos))) {
+      int codePoint = code.codePointAt(endPos);
+      endPos += Character.charCount(codePoint);
+      if (codePoint == delimiter) return endPos;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Scan the beginning of an Rsweave code chunk: <code>&lt;&lt;.*?&gt;&gt;=</code>.
+   */
+  public static int scanRsweaveBegin(String code, int pos) {
+    if (!code.startsWith("<<", pos)) return pos;
+
+    for (int endPos = pos + 2; endPos < code.length(); endPos++) {
+      if (code.startsWith(">>=", endPos)) return endPos + 3;
+      if (isLineTerminator(code.charAt(endPos))) break;
+    }
+
+    return pos;
+  }
+}
@@ -0,0 +1,164 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bsplines.ltexls.parsing.DummyGenerator;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.xtext.xbase.lib.Pair;
+
+/**
+ * Immutable lookup tables of the command and environment signatures for the annotated text
+ * builder, i.e., the default signatures followed by the signatures of the
+ * <code>ltex.latex.commands</code> and <code>ltex.latex.environments</code> settings.
+ *
+ * <p>Tables are cached for the most recently used settings, such that the signatures do not
+ * have to be parsed again for every annotated text builder (i.e., for every code fragment).
+ */
+final class LatexSignatureTables {
+  private static final int maxCacheSize = 16;
+
+  private static final LatexSignatureTables defaultTables =
+      new LatexSignatureTables(Collections.emptyMap(), Collections.emptyMap());
+  private static final Map<Pair<Map<String, String>, Map<String, String>>, LatexSignatureTables>
+      cache = new LinkedHashMap<>(maxCacheSize, 0.75f, true);
+
+  private final Map<String, List<LatexCommandSignature>> commandSignatureMap;
+  private final Map<String, LatexEnvironmentSignature> environmentSignatureMap;
+
+  private LatexSignatureTables(Map<String, String> latexCommands,
+        Map<String, String> latexEnvironments) {
+    List<LatexCommandSignature> commandSignatures =
+        new ArrayList<>(LatexAnnotatedTextBuilderDefaults.getDefaultLatexCommandSignatures());
+    List<LatexEnvironmentSignature> environmentSignatures =
+        new ArrayList<>(LatexAnnotatedTextBuilderDefaults.getDefaultLatexEnvironmentSignatures());
+
+    for (Map.Entry<String, String> entry : latexCommands.entrySet()) {
+      String actionString = entry.getValue();
+      LatexCommandSignature.Action action;
+      @Nullable DummyGenerator dummyGenerator = null;
+
+      if (actionString.equals("default")) {
+        action = LatexCommandSignature.Action.DEFAULT;
+      } else if (actionString.equals("ignore")) {
+        action = LatexCommandSignature.Action.IGNORE;
+      } else if (actionString.equals("dummy")) {
+        action = LatexCommandSignature.Action.DUMMY;
+      } else if (actionString.equals("pluralDummy")) {
+        action = LatexCommandSignature.Action.DUMMY;
+        dummyGenerator = DummyGenerator.getDefault(true);
+      } else {
+        continue;
+      }
+
+      if (dummyGenerator == null) dummyGenerator = DummyGenerator.getDefault();
+      commandSignatures.add(new LatexCommandSignature(entry.getKey(), action, dummyGenerator));
+    }
+
+    for (Map.Entry<String, String> entry : latexEnvironments.entrySet()) {
+      String actionString = entry.getValue();
+      LatexEnvironmentSignature.Action action;
+
+      if (actionString.equals("default")) {
+        action = LatexEnvironmentSignature.Action.DEFAULT;
+      } else if (actionString.equals("ignore")) {
+        action = LatexEnvironmentSignature.Action.IGNORE;
+      } else {
+        continue;
+      }
+
+      environmentSignatures.add(new LatexEnvironmentSignature(entry.getKey(), action));
+    }
+
+    Map<String, List<LatexCommandSignature>> commandSignatureMap = new HashMap<>();
+
+    for (LatexCommandSignature commandSignature : commandSignatures) {
+      String commandName = commandSignature.getName();
+      @Nullable List<LatexCommandSignature> list = commandSignatureMap.get(commandName);
+
+      if (list == null) {
+        list = new ArrayList<>();
+        commandSignatureMap.put(commandName, list);
+      }
+
+      list.add(commandSignature);
+    }
+
+    for (Map.Entry<String, List<LatexCommandSignature>> entry : commandSignatureMap.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+
+    Map<String, LatexEnvironmentSignature> environmentSignatureMap = new HashMap<>();
+
+    // later signatures take precedence over earlier signatures with the same name
+    for (LatexEnvironmentSignature environmentSignature : environmentSignatures) {
+      environmentSignatureMap.put(environmentSignature.getName(), environmentSignature);
+    }
+
+    this.commandSignatureMap = commandSignatureMap;
+    this.environmentSignatureMap = environmentSignatureMap;
+  }
+
+  /**
+   * Get the tables for the default signatures and the given settings. The tables are created
+   * if they are not cached.
+   *
+   * @param latexCommands map of command prototypes to actions (<code>ltex.latex.commands</code>)
+   * @param latexEnvironments map of environment names to actions
+   *     (<code>ltex.latex.environments</code>)
+   * @return tables
+   */
+  public static LatexSignatureTables get(Map<String, String> latexCommands,
+        Map<String, String> latexEnvironments) {
+    if (latexCommands.isEmpty() && latexEnvironments.isEmpty()) return defaultTables;
+
+    synchronized (cache) {
+      @Nullable LatexSignatureTables tables = cache.get(Pair.of(latexCommands, latexEnvironments));
+      if (tables != null) return tables;
+    }
+
+    // parsing the signatures is done without holding the lock
+    LatexSignatureTables tables = new LatexSignatureTables(latexCommands, latexEnvironments);
+
+    synchronized (cache) {
+      // the maps are copied, as the key must not change
+      cache.put(Pair.of(new HashMap<>(latexCommands), new HashMap<>(latexEnvironments)), tables);
+
+      if (cache.size() > maxCacheSize) {
+        cache.remove(cache.keySet().iterator().next());
+      }
+    }
+
+    return tables;
+  }
+
+  public static LatexSignatureTables getDefault() {
+    return defaultTables;
+  }
+
+  /**
+   * Get the signatures of the commands with the given name.
+   *
+   * @param commandName name of the command, including the backslash
+   * @return signatures in the order of precedence, or an empty list if there are none
+   */
+  public List<LatexCommandSignature> getCommandSignatures(String commandName) {
+    @Nullable List<LatexCommandSignature> commandSignatures =
+        this.commandSignatureMap.get(commandName);
+    return ((commandSignatures != null) ? commandSignatures : Collections.emptyList());
+  }
+
+  public @Nullable LatexEnvironmentSignature getEnvironmentSignature(String environmentName) {
+    return this.environmentSignatureMap.get(environmentName);
+  }
+}
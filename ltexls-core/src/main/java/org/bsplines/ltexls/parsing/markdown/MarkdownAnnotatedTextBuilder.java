@@ -10,15 +10,20 @@ package org.bsplines.ltexls.parsing.markdown;
 import com.vladsch.flexmark.parser.Parser;
 import com.vladsch.flexmark.util.ast.Document;
 import com.vladsch.flexmark.util.ast.Node;
+import com.vladsch.flexmark.util.sequence.BasedSequence;
 import com.vladsch.flexmark.util.sequence.Escaping;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.bsplines.ltexls.parsing.CodeAnnotatedTextBuilder;
 import org.bsplines.ltexls.parsing.DummyGenerator;
+import org.bsplines.ltexls.parsing.IncrementalParseCache;
 import org.bsplines.ltexls.settings.Settings;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -26,91 +31,151 @@ public class MarkdownAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
   private static final Pattern yamlFrontMatterPattern = Pattern.compile(
       "\\A---\\s*$.*?^---\\s*$", Pattern.MULTILINE | Pattern.DOTALL);
 
-  private Parser parser = Parser.builder().build();
+  // parsers are immutable and can be shared by all builders
+  private static final Parser parser = Parser.builder().build();
+  private static final Map<String, MarkdownNodeSignature.Action> defaultNodeActionMap =
+      createNodeActionMap(MarkdownAnnotatedTextBuilderDefaults.getDefaultMarkdownNodeSignatures());
 
   private String code;
   private int pos;
   private int dummyCounter;
-  private Stack<String> nodeTypeStack = new Stack<>();
+  private int paragraphDepth;
+  private boolean isInIgnoredNodeType;
+  private Deque<Boolean> isInIgnoredNodeTypeStack = new ArrayDeque<>();
+  private List<MarkdownParseState.Part> parts = new ArrayList<>();
 
   private String language = "en-US";
-  private List<MarkdownNodeSignature> nodeSignatures =
-      new ArrayList<>(MarkdownAnnotatedTextBuilderDefaults.getDefaultMarkdownNodeSignatures());
+  private Map<String, MarkdownNodeSignature.Action> nodeActionMap = defaultNodeActionMap;
 
   public MarkdownAnnotatedTextBuilder() {
     this.code = "";
   }
 
-  private void visitChildren(final Node node) {
-    node.getChildren().forEach(this::visit);
+  private static Map<String, MarkdownNodeSignature.Action> createNodeActionMap(
+        List<MarkdownNodeSignature> nodeSignatures) {
+    Map<String, MarkdownNodeSignature.Action> map = new HashMap<>();
+
+    // later signatures take precedence over earlier signatures with the same name
+    for (MarkdownNodeSignature nodeSignature : nodeSignatures) {
+      map.put(nodeSignature.getName(), nodeSignature.getAction());
+    }
+
+    return map;
   }
 
-  private boolean isInNodeType(String nodeType) {
-    return this.nodeTypeStack.contains(nodeType);
+  private void visitChildren(final Node node) {
+    node.getChildren().forEach(this::visit);
   }
 
-  private boolean isInIgnoredNodeType() {
-    boolean result = false;
+  /**
+   * Enter a node of a given type. Whether the builder is in an ignored node type is determined
+   * by the innermost entered node type that has a signature, and it is updated incrementally
+   * instead of searching all entered node types for every visited node.
+   */
+  private void enterNodeType(String nodeType) {
+    this.isInIgnoredNodeTypeStack.push(this.isInIgnoredNodeType);
+    MarkdownNodeSignature.@Nullable Action action = this.nodeActionMap.get(nodeType);
 
-    for (String nodeType : this.nodeTypeStack) {
-      for (MarkdownNodeSignature nodeSignature : this.nodeSignatures) {
-        if (nodeSignature.getName().equals(nodeType)) {
-          result = (nodeSignature.getAction() == MarkdownNodeSignature.Action.IGNORE);
-        }
-      }
+    if (action != null) {
+      this.isInIgnoredNodeType = (action == MarkdownNodeSignature.Action.IGNORE);
     }
 
-    return result;
+    if (nodeType.equals("Paragraph")) this.paragraphDepth++;
+  }
+
+  private void leaveNodeType(String nodeType) {
+    this.isInIgnoredNodeType = this.isInIgnoredNodeTypeStack.pop();
+    if (nodeType.equals("Paragraph")) this.paragraphDepth--;
   }
 
   private boolean isDummyNodeType(String nodeType) {
-    boolean result = false;
+    return (this.nodeActionMap.get(nodeType) == MarkdownNodeSignature.Action.DUMMY);
+  }
 
-    for (MarkdownNodeSignature nodeSignature : this.nodeSignatures) {
-      if (nodeSignature.getName().equals(nodeType)) {
-        result = (nodeSignature.getAction() == MarkdownNodeSignature.Action.DUMMY);
-      }
+  /**
+   * Find a character in the code between two positions. In contrast to @c String.indexOf, the
+   * search stops at the end position, such that adding markup doesn't scan the rest of the
+   * code every time.
+   */
+  private int indexOf(char ch, int fromPos, int toPos) {
+    int endPos = Math.min(toPos, this.code.length());
+
+    for (int pos = fromPos; pos < endPos; pos++) {
+      if (this.code.charAt(pos) == ch) return pos;
     }
 
-    return result;
+    return -1;
   }
 
   private void addMarkup(int newPos) {
-    boolean inParagraph = isInNodeType("Paragraph");
+    boolean inParagraph = (this.paragraphDepth > 0);
 
     while (true) {
       if ((this.pos >= this.code.length()) || (this.pos >= newPos)) break;
-      int curPos = this.code.indexOf('\r', this.pos);
+      int curPos = indexOf('\r', this.pos, newPos);
 
-      if ((curPos == -1) || (curPos >= newPos)) {
-        curPos = this.code.indexOf('\n', this.pos);
-        if ((curPos == -1) || (curPos >= newPos)) break;
+      if (curPos == -1) {
+        curPos = indexOf('\n', this.pos, newPos);
+        if (curPos == -1) break;
       }
 
-      if (curPos > this.pos) super.addMarkup(this.code.substring(this.pos, curPos));
-      super.addMarkup(this.code.substring(curPos, curPos + 1), (inParagraph ? " " : "\n"));
-
-      this.pos = curPos + 1;
+      if (curPos > this.pos) addPart(MarkdownParseState.PartType.MARKUP, curPos, null);
+      addPart(MarkdownParseState.PartType.MARKUP, curPos + 1, (inParagraph ? " " : "\n"));
     }
 
-    if (newPos > this.pos) {
-      super.addMarkup(this.code.substring(this.pos, newPos));
-      this.pos = newPos;
-    }
+    if (newPos > this.pos) addPart(MarkdownParseState.PartType.MARKUP, newPos, null);
   }
 
   private void addMarkup(Node node, String interpretAs) {
     addMarkup(node.getStartOffset());
-    int newPos = node.getEndOffset();
-    super.addMarkup(this.code.substring(this.pos, newPos), interpretAs);
-    this.pos = newPos;
+    addPart(MarkdownParseState.PartType.MARKUP, node.getEndOffset(), interpretAs);
+  }
+
+  private void addDummy(Node node) {
+    addMarkup(node.getStartOffset());
+    addPart(MarkdownParseState.PartType.DUMMY, node.getEndOffset(), null);
   }
 
   private void addText(int newPos) {
-    if (newPos > this.pos) {
-      super.addText(this.code.substring(this.pos, newPos));
-      this.pos = newPos;
+    if (newPos > this.pos) addPart(MarkdownParseState.PartType.TEXT, newPos, null);
+  }
+
+  private void addPart(MarkdownParseState.PartType type, int newPos,
+        @Nullable String interpretAs) {
+    this.parts.add(new MarkdownParseState.Part(type, newPos - this.pos, interpretAs));
+    this.pos = newPos;
+  }
+
+  /**
+   * Add parts to the annotated text. The parts refer to the code instead of copying it. Dummies
+   * are generated when adding the parts.
+   *
+   * @param code code after the YAML front matter
+   * @param fromPos position in the code where the first part starts
+   * @param parts parts to add
+   * @return position in the code where the last part ends
+   */
+  private int addParts(String code, int fromPos, List<MarkdownParseState.Part> parts) {
+    int pos = fromPos;
+
+    for (MarkdownParseState.Part part : parts) {
+      @Nullable String interpretAs = part.getInterpretAs();
+      int endPos = pos + part.getLength();
+
+      if (part.getType() == MarkdownParseState.PartType.TEXT) {
+        super.addText(code, pos, endPos);
+      } else if (part.getType() == MarkdownParseState.PartType.DUMMY) {
+        super.addMarkup(code, pos, endPos, generateDummy());
+      } else if (interpretAs == null) {
+        super.addMarkup(code, pos, endPos);
+      } else {
+        super.addMarkup(code, pos, endPos, interpretAs);
+      }
+
+      pos = endPos;
     }
+
+    return pos;
   }
 
   private String generateDummy() {
@@ -124,36 +189,212 @@ public class MarkdownAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
    * @return @c this
    */
   public MarkdownAnnotatedTextBuilder addCode(String code) {
+    addCode(code, null);
+    return this;
+  }
+
+  /**
+   * Add Markdown code to the builder incrementally. Only the top-level blocks of the Markdown
+   * document that intersect the range changed since the previous version of the code fragment
+   * are parsed again; the annotated text parts of the other blocks are reused.
+   *
+   * @param code Markdown code
+   * @param parseCache parse states of the previous check of the document; will be updated to
+   *     contain the parse state of the code
+   * @param fragmentIndex index of the code fragment in the document
+   * @return @c this
+   */
+  @Override
+  public MarkdownAnnotatedTextBuilder addCode(String code, IncrementalParseCache parseCache,
+        int fragmentIndex) {
+    MarkdownParseState parseState = addCode(code,
+        parseCache.get(fragmentIndex, MarkdownParseState.class));
+    parseCache.put(fragmentIndex, parseState);
+    return this;
+  }
+
+  private MarkdownParseState addCode(String code,
+        @Nullable MarkdownParseState previousParseState) {
     int pos = 0;
     Matcher matcher = MarkdownAnnotatedTextBuilder.yamlFrontMatterPattern.matcher(code);
 
     if (matcher.find()) {
-      int newPos = pos + matcher.end();
-      super.addMarkup(code.substring(pos, newPos));
-      pos += newPos;
+      pos = matcher.end();
+      super.addMarkup(code, 0, pos);
     }
 
-    Document document = this.parser.parse(code.substring(pos));
-    visit(document);
-    return this;
+    String frontMatter = code.substring(0, pos);
+    String markdownCode = code.substring(pos);
+    @Nullable MarkdownParseState parseState = null;
+
+    if ((previousParseState != null)
+          && previousParseState.isReusable(this.language, this.nodeActionMap, frontMatter)) {
+      parseState = (markdownCode.equals(previousParseState.getCode()) ? previousParseState
+          : parseIncrementally(frontMatter, markdownCode, previousParseState));
+    }
+
+    if (parseState == null) {
+      Document document = parser.parse(markdownCode);
+      List<MarkdownParseState.Block> blocks = visitBlocks(markdownCode, document, 0);
+      parseState = new MarkdownParseState(this.language, this.nodeActionMap, frontMatter,
+          markdownCode, !Parser.REFERENCES.get(document).isEmpty(), blocks, visitTail());
+    }
+
+    int partsPos = 0;
+
+    // dummies are numbered per top-level block, such that a change in one block doesn't change
+    // the plain text of the other blocks, whose check results can then be reused
+    for (MarkdownParseState.Block block : parseState.getBlocks()) {
+      this.dummyCounter = 0;
+      partsPos = addParts(markdownCode, partsPos, block.getParts());
+    }
+
+    addParts(markdownCode, partsPos, parseState.getTailParts());
+    return parseState;
   }
 
-  private void visit(Document document) {
-    this.code = document.getChars().toString();
-    this.pos = 0;
-    this.dummyCounter = 0;
-    this.nodeTypeStack.clear();
-    visitChildren(document);
-    if (this.pos < this.code.length()) addMarkup(this.code.length());
+  /**
+   * Parse the top-level blocks that intersect the changed range again. The range of parsed
+   * blocks is extended by one unchanged block on each side, as the parse of a block may depend
+   * on the following lines (e.g., for setext headings or lazy continuation lines). If the
+   * unchanged blocks at the boundaries are not parsed as before, then the change affects more
+   * blocks (e.g., in the case of an unclosed fenced code block), and @c null is returned.
+   */
+  private @Nullable MarkdownParseState parseIncrementally(String frontMatter, String code,
+        MarkdownParseState previousParseState) {
+    String previousCode = previousParseState.getCode();
+    List<MarkdownParseState.Block> previousBlocks = previousParseState.getBlocks();
+    int numberOfBlocks = previousBlocks.size();
+    int minLength = Math.min(code.length(), previousCode.length());
+    int changeFromPos = 0;
+
+    while ((changeFromPos < minLength)
+          && (code.charAt(changeFromPos) == previousCode.charAt(changeFromPos))) {
+      changeFromPos++;
+    }
+
+    int suffixLength = 0;
+
+    while ((suffixLength < minLength - changeFromPos)
+          && (code.charAt(code.length() - suffixLength - 1)
+            == previousCode.charAt(previousCode.length() - suffixLength - 1))) {
+      suffixLength++;
+    }
+
+    final int changeToPos = previousCode.length() - suffixLength;
+    final int offset = code.length() - previousCode.length();
+    int firstIndex = 0;
+
+    while ((firstIndex < numberOfBlocks)
+          && (previousBlocks.get(firstIndex).getEndPos() < changeFromPos)) {
+      firstIndex++;
+    }
+
+    firstIndex = Math.max(firstIndex - 1, 0);
+    int lastIndex = firstIndex;
+
+    while ((lastIndex + 1 < numberOfBlocks)
+          && (previousBlocks.get(lastIndex + 1).getFromPos() <= changeToPos)) {
+      lastIndex++;
+    }
+
+    lastIndex++;
+    boolean isRegionAtEnd = (lastIndex >= numberOfBlocks - 1);
+    if ((firstIndex == 0) && isRegionAtEnd) return null;
+
+    int regionFromPos = ((firstIndex > 0) ? previousBlocks.get(firstIndex - 1).getEndPos() : 0);
+    int regionToPos = (isRegionAtEnd ? code.length()
+        : (previousBlocks.get(lastIndex).getEndPos() + offset));
+    // the region is parsed as a subsequence of the code, as the inline parser of flexmark-java
+    // behaves differently for different offsets of the parsed paragraph in some cases
+    Document document = parser.parse(
+        BasedSequence.of(code).subSequence(regionFromPos, regionToPos));
+    if (!Parser.REFERENCES.get(document).isEmpty()) return null;
+    @Nullable Node firstNode = document.getFirstChild();
+    @Nullable Node lastNode = document.getLastChild();
+    if ((firstNode == null) || (lastNode == null)) return null;
+
+    if ((firstIndex > 0) && !isSameBlock(firstNode, previousBlocks.get(firstIndex))) {
+      return null;
+    } else if (!isRegionAtEnd
+          && !isSameBlock(lastNode, previousBlocks.get(lastIndex).shift(offset))) {
+      return null;
+    }
+
+    List<MarkdownParseState.Block> blocks = new ArrayList<>(previousBlocks.subList(0, firstIndex));
+    List<MarkdownParseState.Block> regionBlocks = visitBlocks(code, document,
+        ((firstIndex > 0) ? previousBlocks.get(firstIndex - 1).getToPos() : 0));
+    blocks.addAll(regionBlocks);
+    List<MarkdownParseState.Part> tailParts;
+
+    if (isRegionAtEnd) {
+      tailParts = visitTail();
+    } else {
+      // the parts of the next block start where the parts of the last block of the region end,
+      // which might be before the end of its node (e.g., if the node doesn't contain text)
+      int toPos = regionBlocks.get(regionBlocks.size() - 1).getToPos();
+      if (toPos != previousBlocks.get(lastIndex).getToPos() + offset) return null;
+
+      for (int i = lastIndex + 1; i < numberOfBlocks; i++) {
+        blocks.add(previousBlocks.get(i).shift(offset));
+      }
+
+      tailParts = previousParseState.getTailParts();
+    }
+
+    return new MarkdownParseState(this.language, this.nodeActionMap, frontMatter, code, false,
+        blocks, tailParts);
+  }
+
+  private static boolean isSameBlock(Node node, MarkdownParseState.Block block) {
+    return ((node.getClass() == block.getNodeClass())
+        && (node.getStartOffset() == block.getStartPos())
+        && (node.getEndOffset() == block.getEndPos()));
+  }
+
+  /**
+   * Visit the top-level blocks of a parsed document and record their parts.
+   *
+   * @param code code after the YAML front matter
+   * @param document parsed document or region of the code
+   * @param fromPos position in the code where the parts of the first block start
+   * @return blocks of the document
+   */
+  private List<MarkdownParseState.Block> visitBlocks(String code, Document document,
+        int fromPos) {
+    List<MarkdownParseState.Block> blocks = new ArrayList<>();
+    this.code = code;
+    this.pos = fromPos;
+    this.paragraphDepth = 0;
+    this.isInIgnoredNodeType = false;
+    this.isInIgnoredNodeTypeStack.clear();
+
+    for (Node node : document.getChildren()) {
+      this.parts = new ArrayList<>();
+      final int blockFromPos = this.pos;
+      visit(node);
+      blocks.add(new MarkdownParseState.Block(node.getClass(), node.getStartOffset(),
+          node.getEndOffset(), blockFromPos, this.pos, Collections.unmodifiableList(this.parts)));
+    }
+
+    this.parts = new ArrayList<>();
+    return blocks;
+  }
+
+  private List<MarkdownParseState.Part> visitTail() {
+    addMarkup(this.code.length());
+    List<MarkdownParseState.Part> tailParts = this.parts;
+    this.parts = new ArrayList<>();
+    return tailParts;
   }
 
   private void visit(Node node) {
     String nodeType = node.getClass().getSimpleName();
 
-    if (isInIgnoredNodeType()) {
+    if (this.isInIgnoredNodeType) {
       addMarkup(node.getEndOffset());
     } else if (isDummyNodeType(nodeType)) {
-      addMarkup(node, generateDummy());
+      addDummy(node);
     } else if (nodeType.equals("Text")) {
       addMarkup(node.getStartOffset());
       addText(node.getEndOffset());
@@ -161,36 +402,34 @@ public class MarkdownAnnotatedTextBuilder extends CodeAnnotatedTextBuilder {
       addMarkup(node, Escaping.unescapeHtml(node.getChars()));
     } else {
       if (nodeType.equals("Paragraph")) addMarkup(node.getStartOffset());
-      this.nodeTypeStack.push(nodeType);
+      enterNodeType(nodeType);
       visitChildren(node);
-      this.nodeTypeStack.pop();
+      leaveNodeType(nodeType);
     }
   }
 
   @Override
   public void setSettings(Settings settings) {
     this.language = settings.getLanguageShortCode();
+    Map<String, String> markdownNodes = settings.getMarkdownNodes();
+    if (markdownNodes.isEmpty()) return;
+    this.nodeActionMap = new HashMap<>(defaultNodeActionMap);
 
-    for (Map.Entry<String, String> entry : settings.getMarkdownNodes().entrySet()) {
+    for (Map.Entry<String, String> entry : markdownNodes.entrySet()) {
       String actionString = entry.getValue();
       MarkdownNodeSignature.Action action;
-      @Nullable DummyGenerator dummyGenerator = null;
 
       if (actionString.equals("default")) {
         action = MarkdownNodeSignature.Action.DEFAULT;
       } else if (actionString.equals("ignore")) {
         action = MarkdownNodeSignature.Action.IGNORE;
-      } else if (actionString.equals("dummy")) {
-        action = MarkdownNodeSignature.Action.DUMMY;
-      } else if (actionString.equals("pluralDummy")) {
+      } else if (actionString.equals("dummy") || actionString.equals("pluralDummy")) {
         action = MarkdownNodeSignature.Action.DUMMY;
-        dummyGenerator = DummyGenerator.getDefault(true);
       } else {
         continue;
       }
 
-      if (dummyGenerator == null) dummyGenerator = DummyGenerator.getDefault();
-      this.nodeSignatures.add(new MarkdownNodeSignature(entry.getKey(), action, dummyGenerator));
+      this.nodeActionMap.put(entry.getKey(), action);
     }
   }
 }
@@ -0,0 +1,160 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.markdown;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Immutable result of parsing a version of Markdown code, which is used to parse the next
+ * version incrementally. The code after the YAML front matter is divided into the top-level
+ * blocks of the Markdown document; for every block, the annotated text parts that have been
+ * generated for it are stored, such that they can be reused if the block has not changed.
+ * The parts of the code after the last block are stored separately as tail parts.
+ */
+final class MarkdownParseState {
+  enum PartType {
+    TEXT,
+    MARKUP,
+    DUMMY,
+  }
+
+  /**
+   * Part of the annotated text. Parts don't store their text, as they cover the code
+   * contiguously; the text of a part is given by its length and the end of the previous part.
+   */
+  static final class Part {
+    private final PartType type;
+    private final int length;
+    private final @Nullable String interpretAs;
+
+    Part(PartType type, int length, @Nullable String interpretAs) {
+      this.type = type;
+      this.length = length;
+      this.interpretAs = interpretAs;
+    }
+
+    public PartType getType() {
+      return this.type;
+    }
+
+    public int getLength() {
+      return this.length;
+    }
+
+    public @Nullable String getInterpretAs() {
+      return this.interpretAs;
+    }
+  }
+
+  /**
+   * Top-level block of the Markdown document. The node of the block spans from the start
+   * position to the end position. The parts of the block have been generated while visiting the
+   * node; they cover the code from the position where the parts of the previous block ended
+   * (which might be before the end of the previous node) to the position where the visit ended
+   * (which might be before the end of the node). The list of parts is shared by shifted copies
+   * of the block and must not be modified.
+   */
+  static final class Block {
+    private final Class<?> nodeClass;
+    private final int startPos;
+    private final int endPos;
+    private final int fromPos;
+    private final int toPos;
+    private final List<Part> parts;
+
+    Block(Class<?> nodeClass, int startPos, int endPos, int fromPos, int toPos,
+          List<Part> parts) {
+      this.nodeClass = nodeClass;
+      this.startPos = startPos;
+      this.endPos = endPos;
+      this.fromPos = fromPos;
+      this.toPos = toPos;
+      this.parts = parts;
+    }
+
+    public Block shift(int offset) {
+      return ((offset == 0) ? this : new Block(this.nodeClass, this.startPos + offset,
+          this.endPos + offset, this.fromPos + offset, this.toPos + offset, this.parts));
+    }
+
+    public Class<?> getNodeClass() {
+      return this.nodeClass;
+    }
+
+    public int getStartPos() {
+      return this.startPos;
+    }
+
+    public int getEndPos() {
+      return this.endPos;
+    }
+
+    public int getFromPos() {
+      return this.fromPos;
+    }
+
+    public int getToPos() {
+      return this.toPos;
+    }
+
+    public List<Part> getParts() {
+      return this.parts;
+    }
+  }
+
+  private final String language;
+  private final Map<String, MarkdownNodeSignature.Action> nodeActionMap;
+  private final String frontMatter;
+  private final String code;
+  private final boolean hasReferences;
+  private final List<Block> blocks;
+  private final List<Part> tailParts;
+
+  MarkdownParseState(String language, Map<String, MarkdownNodeSignature.Action> nodeActionMap,
+        String frontMatter, String code, boolean hasReferences, List<Block> blocks,
+        List<Part> tailParts) {
+    this.language = language;
+    this.nodeActionMap = nodeActionMap;
+    this.frontMatter = frontMatter;
+    this.code = code;
+    this.hasReferences = hasReferences;
+    this.blocks = Collections.unmodifiableList(blocks);
+    this.tailParts = tailParts;
+  }
+
+  /**
+   * Check whether the blocks of this parse state can be reused for parsing new code with the
+   * given settings. This is not the case if the settings or the YAML front matter changed, or
+   * if the document contains link reference definitions, as they affect links in all blocks.
+   *
+   * @param language language short code of the settings
+   * @param nodeActionMap actions of the Markdown nodes
+   * @param frontMatter YAML front matter of the new code
+   * @return whether the blocks can be reused
+   */
+  public boolean isReusable(String language,
+        Map<String, MarkdownNodeSignature.Action> nodeActionMap, String frontMatter) {
+    return (!this.hasReferences && this.language.equals(language)
+        && this.nodeActionMap.equals(nodeActionMap) && this.frontMatter.equals(frontMatter));
+  }
+
+  public String getCode() {
+    return this.code;
+  }
+
+  public List<Block> getBlocks() {
+    return this.blocks;
+  }
+
+  public List<Part> getTailParts() {
+    return this.tailParts;
+  }
+}
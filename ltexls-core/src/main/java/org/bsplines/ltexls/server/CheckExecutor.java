@@ -0,0 +1,193 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.bsplines.ltexls.tools.Tools;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Bounded executor that runs checks of documents. Checks are not run on the thread that
+ * processes the JSON-RPC messages, such that the server stays responsive (e.g., to
+ * notifications about changed documents) while LanguageTool is busy.
+ *
+ * <p>Checks are coalesced per document: submitting a check for a URI replaces the check for
+ * the same URI that is still waiting in the queue (if any). Therefore, the queue contains at
+ * most one check per document, and by default, it is unbounded, such that the latest check of
+ * a document is never discarded in favor of a check of another document.
+ */
+public class CheckExecutor {
+  public static final int defaultThreadCount = 1;
+  public static final int defaultQueueCapacity = Integer.MAX_VALUE;
+
+  /**
+   * What to do with a check if the queue is full. This only applies if the queue capacity is
+   * smaller than the number of documents with pending checks.
+   */
+  public enum QueuePolicy {
+    /**
+     * Cancel the oldest queued check and enqueue the new check.
+     */
+    DISCARD_OLDEST,
+
+    /**
+     * Cancel the new check.
+     */
+    REJECT,
+  }
+
+  private ThreadPoolExecutor executor;
+  private Map<String, CheckTask<?>> queuedCheckMap;
+
+  public CheckExecutor() {
+    this(defaultThreadCount, defaultQueueCapacity, QueuePolicy.DISCARD_OLDEST);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param threadCount number of threads that run checks
+   * @param queueCapacity maximum number of checks that wait for a free thread
+   * @param queuePolicy what to do with a check if the queue is full
+   */
+  public CheckExecutor(int threadCount, int queueCapacity, QueuePolicy queuePolicy) {
+    AtomicInteger threadNumber = new AtomicInteger();
+
+    this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(queueCapacity),
+        (Runnable runnable) -> createThread(runnable, threadNumber.incrementAndGet()),
+        (Runnable runnable, ThreadPoolExecutor executor) ->
+          rejectCheck(runnable, executor, queuePolicy));
+    this.queuedCheckMap = new ConcurrentHashMap<>();
+  }
+
+  private static Thread createThread(Runnable runnable, int threadNumber) {
+    Thread thread = new Thread(runnable, "ltex-ls-checker-" + threadNumber);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  private static void rejectCheck(Runnable runnable, ThreadPoolExecutor executor,
+        QueuePolicy queuePolicy) {
+    if ((queuePolicy == QueuePolicy.DISCARD_OLDEST) && !executor.isShutdown()) {
+      @Nullable Runnable oldestRunnable = executor.getQueue().poll();
+
+      if (oldestRunnable instanceof CheckTask) {
+        Tools.logger.warning(Tools.i18n("discardingOldestCheckAsQueueIsFull"));
+        ((CheckTask<?>)oldestRunnable).cancel();
+      }
+
+      executor.execute(runnable);
+    } else {
+      Tools.logger.warning(Tools.i18n("rejectingCheckAsQueueIsFull"));
+      if (runnable instanceof CheckTask) ((CheckTask<?>)runnable).cancel();
+    }
+  }
+
+  /**
+   * Submit a check that is not coalesced with other checks.
+   *
+   * @param <T> type of the result of the check
+   * @param check check to run
+   * @return future that is completed with the result of the check, or that is cancelled if
+   *     the check has been discarded due to the queue policy
+   */
+  public <T> CompletableFuture<T> submit(Supplier<T> check) {
+    return submit(null, check);
+  }
+
+  /**
+   * Submit a check of a document. If a check of the same document is still waiting in the
+   * queue, it is cancelled and replaced by the new check.
+   *
+   * @param <T> type of the result of the check
+   * @param uri URI of the document to check (@c null if the check should not be coalesced)
+   * @param check check to run
+   * @return future that is completed with the result of the check, or that is cancelled if
+   *     the check has been superseded by a newer check of the same document or if it has been
+   *     discarded due to the queue policy
+   */
+  public <T> CompletableFuture<T> submit(@Nullable String uri, Supplier<T> check) {
+    CheckTask<T> checkTask = new CheckTask<>(uri, check, this.queuedCheckMap);
+
+    if (uri != null) {
+      @Nullable CheckTask<?> queuedCheckTask = this.queuedCheckMap.put(uri, checkTask);
+
+      if ((queuedCheckTask != null) && this.executor.remove(queuedCheckTask)) {
+        queuedCheckTask.cancel();
+      }
+    }
+
+    try {
+      this.executor.execute(checkTask);
+    } catch (RejectedExecutionException e) {
+      checkTask.dequeue();
+      checkTask.getFuture().completeExceptionally(e);
+    }
+
+    return checkTask.getFuture();
+  }
+
+  /**
+   * Shut down the executor. Checks that have not been started yet are cancelled.
+   */
+  public void shutdown() {
+    for (Runnable runnable : this.executor.shutdownNow()) {
+      if (runnable instanceof CheckTask) ((CheckTask<?>)runnable).cancel();
+    }
+  }
+
+  private static class CheckTask<T> implements Runnable {
+    private @Nullable String uri;
+    private Supplier<T> check;
+    private CompletableFuture<T> future;
+    private Map<String, CheckTask<?>> queuedCheckMap;
+
+    public CheckTask(@Nullable String uri, Supplier<T> check,
+          Map<String, CheckTask<?>> queuedCheckMap) {
+      this.uri = uri;
+      this.check = check;
+      this.future = new CompletableFuture<>();
+      this.queuedCheckMap = queuedCheckMap;
+    }
+
+    @Override
+    public void run() {
+      dequeue();
+      if (this.future.isDone()) return;
+
+      try {
+        this.future.complete(this.check.get());
+      } catch (RuntimeException | Error e) {
+        this.future.completeExceptionally(e);
+      }
+    }
+
+    public void cancel() {
+      dequeue();
+      this.future.completeExceptionally(new CancellationException());
+    }
+
+    public void dequeue() {
+      if (this.uri != null) this.queuedCheckMap.remove(this.uri, this);
+    }
+
+    public CompletableFuture<T> getFuture() {
+      return this.future;
+    }
+  }
+}
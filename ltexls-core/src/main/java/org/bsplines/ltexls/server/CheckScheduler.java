@@ -0,0 +1,103 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.xtext.xbase.lib.Pair;
+
+/**
+ * Scheduler that debounces checks of documents. Scheduling a check for a URI cancels the
+ * pending check for the same URI, such that a burst of changes results in only one check
+ * after the burst. Checks that are already running are not interrupted by the scheduler;
+ * instead, the document checker stops them early as soon as it notices that the document
+ * has been changed.
+ */
+public class CheckScheduler {
+  private static final Duration maxAdaptiveDelay = Duration.ofSeconds(2);
+
+  private ScheduledExecutorService executor;
+  private Map<String, Pair<ScheduledFuture<?>, Runnable>> scheduledCheckMap;
+
+  public CheckScheduler() {
+    this.executor = Executors.newSingleThreadScheduledExecutor((Runnable runnable) -> {
+      Thread thread = new Thread(runnable, "ltex-ls-check-scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduledCheckMap = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Compute the delay after which a document should be checked. The delay is adapted to the
+   * duration of the last check of the document, as there is no point in checking more often
+   * than checks can be completed.
+   *
+   * @param minDelay minimum delay (e.g., as configured by the user)
+   * @param lastCheckDuration duration of the last check of the document
+   * @return delay after which the document should be checked
+   */
+  public static Duration computeDelay(Duration minDelay, Duration lastCheckDuration) {
+    Duration adaptiveDelay = ((lastCheckDuration.compareTo(maxAdaptiveDelay) < 0)
+        ? lastCheckDuration : maxAdaptiveDelay);
+    return ((adaptiveDelay.compareTo(minDelay) > 0) ? adaptiveDelay : minDelay);
+  }
+
+  /**
+   * Schedule a check. If there is a pending check for the same URI, it is cancelled.
+   *
+   * @param uri URI of the document to check
+   * @param delay delay after which the check should be run
+   * @param check check to run
+   */
+  public void schedule(String uri, Duration delay, Runnable check) {
+    ScheduledFuture<?> scheduledCheck = this.executor.schedule(
+        check, delay.toMillis(), TimeUnit.MILLISECONDS);
+    @Nullable Pair<ScheduledFuture<?>, Runnable> previousScheduledCheck =
+        this.scheduledCheckMap.put(uri, Pair.of(scheduledCheck, check));
+    if (previousScheduledCheck != null) previousScheduledCheck.getKey().cancel(false);
+  }
+
+  /**
+   * Run the pending check for a URI immediately in the calling thread, if there is one that
+   * has not been started yet. This is used if up-to-date checking results are required
+   * (e.g., for code actions) and it is not sensible to wait for the delay to expire.
+   *
+   * @param uri URI of the document
+   * @return whether a pending check has been run
+   */
+  public boolean flush(String uri) {
+    @Nullable Pair<ScheduledFuture<?>, Runnable> scheduledCheck =
+        this.scheduledCheckMap.remove(uri);
+    if ((scheduledCheck == null) || !scheduledCheck.getKey().cancel(false)) return false;
+    scheduledCheck.getValue().run();
+    return true;
+  }
+
+  /**
+   * Cancel the pending check for a URI, if any.
+   *
+   * @param uri URI of the document
+   */
+  public void cancel(String uri) {
+    @Nullable Pair<ScheduledFuture<?>, Runnable> scheduledCheck =
+        this.scheduledCheckMap.remove(uri);
+    if (scheduledCheck != null) scheduledCheck.getKey().cancel(false);
+  }
+
+  public void shutdown() {
+    this.executor.shutdownNow();
+    this.scheduledCheckMap.clear();
+  }
+}
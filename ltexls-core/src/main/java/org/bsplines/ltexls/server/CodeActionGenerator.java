@@ -21,7 +21,7 @@ import java.util.regex.Pattern;
 import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
 import org.bsplines.ltexls.parsing.AnnotatedTextFragment;
 import org.bsplines.ltexls.parsing.CodeFragment;
-import org.bsplines.ltexls.settings.SettingsManager;
+import org.bsplines.ltexls.settings.Settings;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.lsp4j.CodeAction;
@@ -39,8 +39,6 @@ import org.eclipse.lsp4j.jsonrpc.messages.Either;
 import org.eclipse.xtext.xbase.lib.Pair;
 
 public class CodeActionGenerator {
-  private SettingsManager settingsManager;
-
   private static final String acceptSuggestionsCodeActionKind =
       CodeActionKind.QuickFix + ".ltex.acceptSuggestions";
   private static final String addToDictionaryCodeActionKind =
@@ -55,15 +53,20 @@ public class CodeActionGenerator {
   private static final String dummyPatternStr = "(?:Dummy|Ina|Jimmy-)[0-9]+";
   private static final Pattern dummyPattern = Pattern.compile(dummyPatternStr);
 
-  public CodeActionGenerator(SettingsManager settingsManager) {
-    this.settingsManager = settingsManager;
-  }
-
-  public Diagnostic createDiagnostic(LanguageToolRuleMatch match, LtexTextDocumentItem document) {
+  /**
+   * Create a diagnostic for a match.
+   *
+   * @param match match
+   * @param document document (or snapshot of the document) that has been checked
+   * @param settings settings that have been used for the check
+   * @return diagnostic
+   */
+  public Diagnostic createDiagnostic(LanguageToolRuleMatch match, LtexTextDocumentItem document,
+        Settings settings) {
     Diagnostic ret = new Diagnostic();
     ret.setRange(new Range(document.convertPosition(match.getFromPos()),
         document.convertPosition(match.getToPos())));
-    ret.setSeverity(this.settingsManager.getSettings().getDiagnosticSeverity());
+    ret.setSeverity(settings.getDiagnosticSeverity());
     ret.setSource("LTeX - " + match.getRuleId());
     ret.setMessage(match.getMessage().replaceAll("<suggestion>(.*?)</suggestion>", "'$1'"));
     return ret;
@@ -106,9 +109,15 @@ public class CodeActionGenerator {
   public List<Either<Command, CodeAction>> generate(
         CodeActionParams params, LtexTextDocumentItem document,
         Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> checkingResult) {
-    if (checkingResult.getValue() == null) return Collections.emptyList();
+    if ((checkingResult.getValue() == null) || checkingResult.getValue().isEmpty()) {
+      return Collections.emptyList();
+    }
 
     List<AnnotatedTextFragment> annotatedTextFragments = checkingResult.getValue();
+
+    // magic comments only change the language and whether checking is enabled, therefore, all
+    // fragments share the other settings of the check
+    Settings settings = annotatedTextFragments.get(0).getCodeFragment().getSettings();
     List<Either<Command, CodeAction>> result =
         new ArrayList<Either<Command, CodeAction>>();
 
@@ -131,23 +140,24 @@ public class CodeActionGenerator {
     }
 
     if (!addToDictionaryMatches.isEmpty()
-          && this.settingsManager.getSettings().getLanguageToolHttpServerUri().isEmpty()) {
+          && settings.getLanguageToolHttpServerUri().isEmpty()) {
       result.add(Either.forRight(getAddWordToDictionaryCodeAction(document,
-          addToDictionaryMatches, annotatedTextFragments)));
+          addToDictionaryMatches, annotatedTextFragments, settings)));
     }
 
     if (!hideFalsePositiveMatches.isEmpty()) {
       result.add(Either.forRight(getHideFalsePositiveCodeAction(document,
-          hideFalsePositiveMatches, annotatedTextFragments)));
+          hideFalsePositiveMatches, annotatedTextFragments, settings)));
     }
 
     if (!disableRuleMatches.isEmpty()) {
       result.add(Either.forRight(getDisableRuleCodeAction(document,
-          disableRuleMatches, annotatedTextFragments)));
+          disableRuleMatches, annotatedTextFragments, settings)));
     }
 
     for (Map.Entry<String, List<LanguageToolRuleMatch>> entry : useWordMatchesMap.entrySet()) {
-      result.add(Either.forRight(getUseWordCodeAction(document, entry.getKey(), entry.getValue())));
+      result.add(Either.forRight(getUseWordCodeAction(document, entry.getKey(), entry.getValue(),
+          settings)));
     }
 
     return result;
@@ -156,7 +166,7 @@ public class CodeActionGenerator {
   private CodeAction getAddWordToDictionaryCodeAction(
         LtexTextDocumentItem document,
         List<LanguageToolRuleMatch> addToDictionaryMatches,
-        List<AnnotatedTextFragment> annotatedTextFragments) {
+        List<AnnotatedTextFragment> annotatedTextFragments, Settings settings) {
     Map<String, List<String>> unknownWordsMap = new HashMap<>();
     JsonObject unknownWordsJsonObject = new JsonObject();
     List<Diagnostic> diagnostics = new ArrayList<>();
@@ -178,7 +188,7 @@ public class CodeActionGenerator {
           match.getFromPos() - offset, match.getToPos() - offset);
 
       addToMap(language, word, unknownWordsMap, unknownWordsJsonObject);
-      diagnostics.add(createDiagnostic(match, document));
+      diagnostics.add(createDiagnostic(match, document, settings));
     }
 
     JsonObject arguments = new JsonObject();
@@ -205,7 +215,7 @@ public class CodeActionGenerator {
   private CodeAction getHideFalsePositiveCodeAction(
         LtexTextDocumentItem document,
         List<LanguageToolRuleMatch> hideFalsePositiveMatches,
-        List<AnnotatedTextFragment> annotatedTextFragments) {
+        List<AnnotatedTextFragment> annotatedTextFragments, Settings settings) {
     List<Pair<String, String>> ruleIdSentencePairs = new ArrayList<>();
     Map<String, List<String>> hiddenFalsePositivesMap = new HashMap<>();
     JsonObject falsePositivesJsonObject = new JsonObject();
@@ -257,7 +267,7 @@ public class CodeActionGenerator {
             falsePositivesJsonObject);
       }
 
-      diagnostics.add(createDiagnostic(match, document));
+      diagnostics.add(createDiagnostic(match, document, settings));
     }
 
     JsonObject arguments = new JsonObject();
@@ -282,7 +292,7 @@ public class CodeActionGenerator {
   private CodeAction getDisableRuleCodeAction(
         LtexTextDocumentItem document,
         List<LanguageToolRuleMatch> disableRuleMatches,
-        List<AnnotatedTextFragment> annotatedTextFragments) {
+        List<AnnotatedTextFragment> annotatedTextFragments, Settings settings) {
     Map<String, List<String>> ruleIdsMap = new HashMap<>();
     JsonObject ruleIdsJsonObject = new JsonObject();
     List<Diagnostic> diagnostics = new ArrayList<>();
@@ -305,7 +315,7 @@ public class CodeActionGenerator {
         addToMap(language, ruleId, ruleIdsMap, ruleIdsJsonObject);
       }
 
-      diagnostics.add(createDiagnostic(match, document));
+      diagnostics.add(createDiagnostic(match, document, settings));
     }
 
     JsonObject arguments = new JsonObject();
@@ -328,14 +338,15 @@ public class CodeActionGenerator {
   }
 
   private CodeAction getUseWordCodeAction(
-        LtexTextDocumentItem document, String newWord, List<LanguageToolRuleMatch> useWordMatches) {
+        LtexTextDocumentItem document, String newWord, List<LanguageToolRuleMatch> useWordMatches,
+        Settings settings) {
     VersionedTextDocumentIdentifier textDocument = new VersionedTextDocumentIdentifier(
         document.getUri(), document.getVersion());
     List<Diagnostic> diagnostics = new ArrayList<>();
     List<Either<TextDocumentEdit, ResourceOperation>> documentChanges = new ArrayList<>();
 
     for (LanguageToolRuleMatch match : useWordMatches) {
-      Diagnostic diagnostic = createDiagnostic(match, document);
+      Diagnostic diagnostic = createDiagnostic(match, document, settings);
       Range range = diagnostic.getRange();
 
       diagnostics.add(diagnostic);
@@ -0,0 +1,104 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.services.LanguageClient;
+
+/**
+ * Publisher of diagnostics that have been withheld as they are at the caret. The diagnostics
+ * are published when the caret has not been moved for some time. All documents share one
+ * timer thread, and scheduling a publication for a URI replaces the pending publication for
+ * the same URI.
+ */
+public class DelayedDiagnosticsPublisher {
+  private static final Duration showCaretDiagnosticsDuration = Duration.ofSeconds(2);
+
+  private ScheduledExecutorService executor;
+  private Map<String, ScheduledFuture<?>> scheduledPublicationMap;
+
+  public DelayedDiagnosticsPublisher() {
+    this.executor = Executors.newSingleThreadScheduledExecutor(
+        DelayedDiagnosticsPublisher::createThread);
+    this.scheduledPublicationMap = new ConcurrentHashMap<>();
+  }
+
+  private static Thread createThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, "ltex-ls-diagnostics-publisher");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * Compute the delay after which withheld diagnostics should be published.
+   *
+   * @param lastCaretChangeInstant instant of the last change of the caret position
+   * @param now current instant
+   * @return delay after which the diagnostics should be published
+   */
+  public static Duration computeDelay(Instant lastCaretChangeInstant, Instant now) {
+    Duration delay = showCaretDiagnosticsDuration.minus(
+        Duration.between(lastCaretChangeInstant, now));
+    if (delay.isNegative()) delay = Duration.ZERO;
+    return delay.plusMillis(10);
+  }
+
+  /**
+   * Schedule the publication of the diagnostics of a document. If there is a pending
+   * publication for the same document, it is cancelled.
+   *
+   * @param languageClient language client to publish the diagnostics to
+   * @param document document whose diagnostics should be published
+   */
+  public void schedule(LanguageClient languageClient, LtexTextDocumentItem document) {
+    Duration delay = computeDelay(document.getLastCaretChangeInstant(), Instant.now());
+    ScheduledFuture<?> scheduledPublication = this.executor.schedule(
+        () -> publish(languageClient, document), delay.toMillis(), TimeUnit.MILLISECONDS);
+    @Nullable ScheduledFuture<?> previousScheduledPublication =
+        this.scheduledPublicationMap.put(document.getUri(), scheduledPublication);
+    if (previousScheduledPublication != null) previousScheduledPublication.cancel(false);
+  }
+
+  private static void publish(LanguageClient languageClient, LtexTextDocumentItem document) {
+    if (Duration.between(document.getLastCaretChangeInstant(),
+          Instant.now()).compareTo(showCaretDiagnosticsDuration) > 0) {
+      @Nullable List<Diagnostic> diagnostics = document.getDiagnosticsCache();
+
+      if (diagnostics != null) {
+        languageClient.publishDiagnostics(new PublishDiagnosticsParams(
+            document.getUri(), diagnostics));
+      }
+    }
+  }
+
+  /**
+   * Cancel the pending publication for a URI, if any.
+   *
+   * @param uri URI of the document
+   */
+  public void cancel(String uri) {
+    @Nullable ScheduledFuture<?> scheduledPublication = this.scheduledPublicationMap.remove(uri);
+    if (scheduledPublication != null) scheduledPublication.cancel(false);
+  }
+
+  public void shutdown() {
+    this.executor.shutdownNow();
+    this.scheduledPublicationMap.clear();
+  }
+}
@@ -13,6 +13,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import org.apache.commons.text.StringEscapeUtils;
 import org.bsplines.ltexls.languagetool.LanguageToolInterface;
@@ -21,37 +27,68 @@ import org.bsplines.ltexls.parsing.AnnotatedTextFragment;
 import org.bsplines.ltexls.parsing.CodeAnnotatedTextBuilder;
 import org.bsplines.ltexls.parsing.CodeFragment;
 import org.bsplines.ltexls.parsing.CodeFragmentizer;
+import org.bsplines.ltexls.parsing.IncrementalParseCache;
 import org.bsplines.ltexls.settings.HiddenFalsePositive;
+import org.bsplines.ltexls.settings.LanguageToolInterfacePool;
 import org.bsplines.ltexls.settings.Settings;
 import org.bsplines.ltexls.settings.SettingsManager;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.jsonrpc.CancelChecker;
 import org.eclipse.xtext.xbase.lib.Pair;
 import org.languagetool.markup.AnnotatedText;
+import org.languagetool.markup.AnnotatedTextBuilder;
 import org.languagetool.markup.TextPart;
 
 public class DocumentChecker {
+  /**
+   * Maximum length of the plain text that is sent to LanguageTool at once. Longer runs of
+   * changed paragraphs are split (at paragraph boundaries), such that checks can be cancelled
+   * between the parts. As with the context of changed paragraphs, rules that operate across
+   * more than one paragraph boundary might miss matches at the split points.
+   */
+  private static final int maxCheckedPlainTextLength = 5000;
+
   private SettingsManager settingsManager;
+  private ExecutorService fragmentExecutor;
 
+  /**
+   * Constructor.
+   *
+   * @param settingsManager settings manager
+   */
   public DocumentChecker(SettingsManager settingsManager) {
+    AtomicInteger threadNumber = new AtomicInteger();
     this.settingsManager = settingsManager;
+
+    // fragment checks block while waiting for a free LanguageTool instance, therefore, they
+    // must not run on the common fork-join pool; idle threads of the cached pool are
+    // terminated after a minute
+    this.fragmentExecutor = Executors.newCachedThreadPool((Runnable runnable) -> {
+      Thread thread = new Thread(runnable,
+          "ltex-ls-fragment-checker-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
-  private List<CodeFragment> fragmentizeDocument(TextDocumentItem document) {
+  private static List<CodeFragment> fragmentizeDocument(TextDocumentItem document,
+        Settings settings) {
     CodeFragmentizer codeFragmentizer = CodeFragmentizer.create(document.getLanguageId());
-    return codeFragmentizer.fragmentize(document.getText(), this.settingsManager.getSettings());
+    return codeFragmentizer.fragmentize(document.getText(), settings);
   }
 
   private List<AnnotatedTextFragment> buildAnnotatedTextFragments(
-        List<CodeFragment> codeFragments) {
+        List<CodeFragment> codeFragments, IncrementalParseCache parseCache) {
     List<AnnotatedTextFragment> annotatedTextFragments = new ArrayList<>();
 
-    for (CodeFragment codeFragment : codeFragments) {
+    for (int i = 0; i < codeFragments.size(); i++) {
+      CodeFragment codeFragment = codeFragments.get(i);
       CodeAnnotatedTextBuilder builder = CodeAnnotatedTextBuilder.create(
           codeFragment.getCodeLanguageId());
       builder.setSettings(codeFragment.getSettings());
-      builder.addCode(codeFragment.getCode());
+      builder.addCode(codeFragment, parseCache, i);
       AnnotatedText curAnnotatedText = builder.build();
       annotatedTextFragments.add(new AnnotatedTextFragment(curAnnotatedText, codeFragment));
     }
@@ -60,40 +97,99 @@ public class DocumentChecker {
   }
 
   private List<LanguageToolRuleMatch> checkAnnotatedTextFragments(
-        List<AnnotatedTextFragment> annotatedTextFragments) {
+        List<AnnotatedTextFragment> annotatedTextFragments,
+        ParagraphMatchCache paragraphMatchCache, CancelChecker cancelChecker) {
     List<LanguageToolRuleMatch> matches = new ArrayList<>();
+    if (annotatedTextFragments.isEmpty()) return matches;
+
+    // fragments are independent of each other and every thread leases its own LanguageTool
+    // instance, therefore, fragments can be checked in parallel; the last fragment is checked
+    // by the calling thread
+    List<CompletableFuture<List<LanguageToolRuleMatch>>> fragmentMatchesFutures =
+        new ArrayList<>();
+
+    for (int i = 0; i < annotatedTextFragments.size() - 1; i++) {
+      AnnotatedTextFragment annotatedTextFragment = annotatedTextFragments.get(i);
+      fragmentMatchesFutures.add(CompletableFuture.supplyAsync(
+          () -> checkAnnotatedTextFragment(
+            annotatedTextFragment, paragraphMatchCache, cancelChecker),
+          this.fragmentExecutor));
+    }
+
+    @Nullable RuntimeException exception = null;
+    List<LanguageToolRuleMatch> lastFragmentMatches = Collections.emptyList();
 
-    for (AnnotatedTextFragment annotatedTextFragment : annotatedTextFragments) {
-      matches.addAll(checkAnnotatedTextFragment(annotatedTextFragment));
+    try {
+      lastFragmentMatches = checkAnnotatedTextFragment(
+          annotatedTextFragments.get(annotatedTextFragments.size() - 1),
+          paragraphMatchCache, cancelChecker);
+    } catch (RuntimeException e) {
+      exception = e;
     }
 
+    // wait for all fragments (even if one of them failed or has been cancelled), such that the
+    // caches are not accessed anymore after the check has returned
+    for (CompletableFuture<List<LanguageToolRuleMatch>> fragmentMatchesFuture
+          : fragmentMatchesFutures) {
+      try {
+        matches.addAll(fragmentMatchesFuture.join());
+      } catch (CompletionException e) {
+        @Nullable Throwable cause = e.getCause();
+        if (exception == null) {
+          exception = ((cause instanceof RuntimeException) ? (RuntimeException)cause : e);
+        }
+      }
+    }
+
+    if (exception != null) throw exception;
+    matches.addAll(lastFragmentMatches);
     return matches;
   }
 
   private List<LanguageToolRuleMatch> checkAnnotatedTextFragment(
-        AnnotatedTextFragment annotatedTextFragment) {
+        AnnotatedTextFragment annotatedTextFragment, ParagraphMatchCache paragraphMatchCache,
+        CancelChecker cancelChecker) {
+    cancelChecker.checkCanceled();
     CodeFragment codeFragment = annotatedTextFragment.getCodeFragment();
     Settings settings = codeFragment.getSettings();
-    this.settingsManager.setSettings(settings);
+
+    if (!settings.getEnabled().contains(codeFragment.getCodeLanguageId())) {
+      Tools.logger.fine(Tools.i18n("skippingTextCheckAsLtexHasBeenDisabled",
+          codeFragment.getCodeLanguageId()));
+      return Collections.emptyList();
+    }
+
+    LanguageToolInterfacePool languageToolInterfacePool =
+        this.settingsManager.getLanguageToolInterfacePool();
     @Nullable LanguageToolInterface languageToolInterface =
-        this.settingsManager.getLanguageToolInterface();
+        languageToolInterfacePool.lease(settings);
 
     if (languageToolInterface == null) {
       Tools.logger.warning(Tools.i18n("skippingTextCheckAsLanguageToolHasNotBeenInitialized"));
       return Collections.emptyList();
-    } else if (!settings.getEnabled().contains(codeFragment.getCodeLanguageId())) {
-      Tools.logger.fine(Tools.i18n("skippingTextCheckAsLtexHasBeenDisabled",
-          codeFragment.getCodeLanguageId()));
-      return Collections.emptyList();
-    } else if (settings.getDictionary().contains("BsPlInEs")) {
-      languageToolInterface.enableEasterEgg();
     }
 
+    try {
+      return checkAnnotatedTextFragment(annotatedTextFragment, paragraphMatchCache,
+          languageToolInterface, cancelChecker);
+    } finally {
+      languageToolInterfacePool.release(languageToolInterface);
+    }
+  }
+
+  private List<LanguageToolRuleMatch> checkAnnotatedTextFragment(
+        AnnotatedTextFragment annotatedTextFragment, ParagraphMatchCache paragraphMatchCache,
+        LanguageToolInterface languageToolInterface, CancelChecker cancelChecker) {
+    CodeFragment codeFragment = annotatedTextFragment.getCodeFragment();
+    Settings settings = codeFragment.getSettings();
+    if (settings.getDictionary().contains("BsPlInEs")) languageToolInterface.enableEasterEgg();
+
     AnnotatedText annotatedText = annotatedTextFragment.getAnnotatedText();
+    String plainText = annotatedText.getPlainText();
 
     if (Tools.logger.isLoggable(Level.FINER)) {
       Tools.logger.finer(Tools.i18n("checkingText", settings.getLanguageShortCode(),
-          StringEscapeUtils.escapeJava(annotatedText.getPlainText()),
+          StringEscapeUtils.escapeJava(plainText),
           ""));
 
       if (Tools.logger.isLoggable(Level.FINEST)) {
@@ -112,7 +208,7 @@ public class DocumentChecker {
       }
     } else if (Tools.logger.isLoggable(Level.FINE)) {
       int logTextMaxLength = 100;
-      String logText = annotatedText.getPlainText();
+      String logText = plainText;
       String postfix = "";
 
       if (logText.length() > logTextMaxLength) {
@@ -124,14 +220,156 @@ public class DocumentChecker {
           settings.getLanguageShortCode(), StringEscapeUtils.escapeJava(logText), postfix));
     }
 
+    List<String> paragraphs = splitIntoParagraphs(plainText);
+    List<@Nullable List<LanguageToolRuleMatch>> paragraphMatchesList = new ArrayList<>();
+    boolean[] isParagraphChanged = new boolean[paragraphs.size()];
+    boolean[] isParagraphChecked = new boolean[paragraphs.size()];
+    int[] paragraphFromPositions = new int[paragraphs.size() + 1];
+    int numberOfChangedParagraphs = 0;
+
+    for (int i = 0; i < paragraphs.size(); i++) {
+      @Nullable List<LanguageToolRuleMatch> paragraphMatches =
+          paragraphMatchCache.get(settings, paragraphs.get(i));
+      paragraphMatchesList.add(paragraphMatches);
+      paragraphFromPositions[i + 1] = paragraphFromPositions[i] + paragraphs.get(i).length();
+
+      if (paragraphMatches == null) {
+        isParagraphChanged[i] = true;
+        numberOfChangedParagraphs++;
+      }
+    }
+
+    if (Tools.logger.isLoggable(Level.FINER)) {
+      Tools.logger.finer(Tools.i18n("reusingMatchesOfUnchangedParagraphs",
+          paragraphs.size() - numberOfChangedParagraphs, numberOfChangedParagraphs));
+    }
+
+    int paragraphIndex = 0;
+
+    while (paragraphIndex < paragraphs.size()) {
+      if (!isParagraphChanged[paragraphIndex]) {
+        paragraphIndex++;
+        continue;
+      }
+
+      // every run of changed paragraphs is checked together with the preceding and the
+      // following paragraph, such that rules that operate across paragraph boundaries see the
+      // same context as in a full check; runs whose context paragraphs touch are merged
+      // (unless the checked plain text would become too long)
+      int fromIndex = Math.max(paragraphIndex - 1, 0);
+      int lastChangedIndex = paragraphIndex;
+
+      for (int i = paragraphIndex + 1;
+            (i < paragraphs.size()) && (i <= lastChangedIndex + 3); i++) {
+        if (!isParagraphChanged[i]) continue;
+        if (paragraphFromPositions[i + 1] - paragraphFromPositions[fromIndex]
+            > maxCheckedPlainTextLength) break;
+        lastChangedIndex = i;
+      }
+
+      int toIndex = Math.min(lastChangedIndex + 1, paragraphs.size() - 1);
+      cancelChecker.checkCanceled();
+      @Nullable List<LanguageToolRuleMatch> rangeMatches = checkPlainTextRange(
+          annotatedTextFragment, languageToolInterface,
+          paragraphFromPositions[fromIndex], paragraphFromPositions[toIndex + 1]);
+      if (rangeMatches == null) return Collections.emptyList();
+
+      // the matches of the preceding paragraph are used for this check, as its stored matches
+      // have been obtained with the old following paragraph, but they are not stored, as its
+      // own preceding paragraph has not been checked (if the run has been split, the following
+      // paragraph might be changed; it's stored nevertheless and checked again with its
+      // following paragraph)
+      int firstStoredIndex = ((fromIndex == paragraphIndex) ? fromIndex : (fromIndex + 1));
+
+      for (int i = fromIndex; i <= toIndex; i++) {
+        // matches of a paragraph that has already been checked together with its preceding
+        // paragraph are more complete
+        if ((i < firstStoredIndex) && isParagraphChecked[i]) continue;
+
+        int paragraphFromPos = paragraphFromPositions[i] - paragraphFromPositions[fromIndex];
+        int paragraphToPos = paragraphFromPositions[i + 1] - paragraphFromPositions[fromIndex];
+        boolean isLastParagraph = (i == toIndex);
+        List<LanguageToolRuleMatch> paragraphMatches = new ArrayList<>();
+
+        for (LanguageToolRuleMatch rangeMatch : rangeMatches) {
+          if ((rangeMatch.getFromPos() >= paragraphFromPos)
+                && ((rangeMatch.getFromPos() < paragraphToPos) || isLastParagraph)) {
+            LanguageToolRuleMatch paragraphMatch = new LanguageToolRuleMatch(rangeMatch);
+            paragraphMatch.setFromPos(rangeMatch.getFromPos() - paragraphFromPos);
+            paragraphMatch.setToPos(rangeMatch.getToPos() - paragraphFromPos);
+            paragraphMatches.add(paragraphMatch);
+          }
+        }
+
+        if (i >= firstStoredIndex) {
+          paragraphMatchCache.put(settings, paragraphs.get(i), paragraphMatches);
+          isParagraphChecked[i] = true;
+        }
+
+        paragraphMatchesList.set(i, paragraphMatches);
+      }
+
+      paragraphIndex = lastChangedIndex + 1;
+    }
+
+    List<LanguageToolRuleMatch> matches = new ArrayList<>();
+    int paragraphFromPos = 0;
+
+    for (int i = 0; i < paragraphs.size(); i++) {
+      @Nullable List<LanguageToolRuleMatch> paragraphMatches = paragraphMatchesList.get(i);
+
+      if (paragraphMatches != null) {
+        for (LanguageToolRuleMatch paragraphMatch : paragraphMatches) {
+          // same conversion from plain text positions to original text positions as in
+          // JLanguageTool.adjustRuleMatchPos
+          LanguageToolRuleMatch match = new LanguageToolRuleMatch(paragraphMatch);
+          match.setFromPos(annotatedText.getOriginalTextPositionFor(
+              paragraphFromPos + paragraphMatch.getFromPos(), false));
+          match.setToPos(annotatedText.getOriginalTextPositionFor(
+              paragraphFromPos + paragraphMatch.getToPos() - 1, true) + 1);
+          matches.add(match);
+        }
+      }
+
+      paragraphFromPos += paragraphs.get(i).length();
+    }
+
+    Tools.logger.fine((matches.size() == 1) ? Tools.i18n("obtainedRuleMatch") :
+        Tools.i18n("obtainedRuleMatches", matches.size()));
+    removeIgnoredMatches(matches, settings);
+
+    for (LanguageToolRuleMatch match : matches) {
+      match.setFromPos(match.getFromPos() + annotatedTextFragment.getCodeFragment().getFromPos());
+      match.setToPos(match.getToPos() + annotatedTextFragment.getCodeFragment().getFromPos());
+    }
+
+    return matches;
+  }
+
+  /**
+   * Check a range of the plain text of an annotated text fragment.
+   *
+   * @param annotatedTextFragment annotated text fragment
+   * @param languageToolInterface LanguageTool instance to use
+   * @param fromPos start of the range in the plain text (inclusive)
+   * @param toPos end of the range in the plain text (exclusive)
+   * @return matches with plain text positions relative to the start of the range, or @c null
+   *     if LanguageTool failed
+   */
+  private static @Nullable List<LanguageToolRuleMatch> checkPlainTextRange(
+        AnnotatedTextFragment annotatedTextFragment,
+        LanguageToolInterface languageToolInterface, int fromPos, int toPos) {
+    AnnotatedText rangeAnnotatedText = extractPlainTextRange(
+        annotatedTextFragment.getAnnotatedText(), fromPos, toPos);
     Instant beforeCheckingInstant = Instant.now();
-    List<LanguageToolRuleMatch> matches = Collections.emptyList();
+    List<LanguageToolRuleMatch> rangeMatches;
 
     try {
-      matches = languageToolInterface.check(annotatedTextFragment);
+      rangeMatches = languageToolInterface.check(new AnnotatedTextFragment(
+          rangeAnnotatedText, annotatedTextFragment.getCodeFragment()));
     } catch (RuntimeException e) {
       Tools.logger.severe(Tools.i18n("languageToolFailed", e));
-      return matches;
+      return null;
     }
 
     if (Tools.logger.isLoggable(Level.FINER)) {
@@ -139,20 +377,171 @@ public class DocumentChecker {
           Duration.between(beforeCheckingInstant, Instant.now()).toMillis()));
     }
 
-    Tools.logger.fine((matches.size() == 1) ? Tools.i18n("obtainedRuleMatch") :
-        Tools.i18n("obtainedRuleMatches", matches.size()));
-    removeIgnoredMatches(matches);
+    for (LanguageToolRuleMatch rangeMatch : rangeMatches) {
+      int matchFromPos = getPlainTextPositionFor(
+          rangeAnnotatedText, rangeMatch.getFromPos(), false);
+      int matchToPos = getPlainTextPositionFor(rangeAnnotatedText, rangeMatch.getToPos(), true);
+      rangeMatch.setFromPos(matchFromPos);
+      rangeMatch.setToPos(Math.max(matchToPos, matchFromPos));
+    }
 
-    for (LanguageToolRuleMatch match : matches) {
-      match.setFromPos(match.getFromPos() + annotatedTextFragment.getCodeFragment().getFromPos());
-      match.setToPos(match.getToPos() + annotatedTextFragment.getCodeFragment().getFromPos());
+    return rangeMatches;
+  }
+
+  /**
+   * Extract a range of the plain text of an annotated text, including the markup within the
+   * range. The mapping of the extracted annotated text between plain text and original text
+   * positions equals the mapping of the given annotated text in the range, up to offsets.
+   * Markup that precedes the range is omitted; plain text and fake content that cross the
+   * boundaries of the range are cut.
+   *
+   * @param annotatedText annotated text
+   * @param fromPos start of the range in the plain text (inclusive)
+   * @param toPos end of the range in the plain text (exclusive)
+   * @return annotated text of the range
+   */
+  private static AnnotatedText extractPlainTextRange(AnnotatedText annotatedText,
+        int fromPos, int toPos) {
+    String plainText = annotatedText.getPlainText();
+    List<TextPart> parts = annotatedText.getParts();
+    AnnotatedTextBuilder builder = new AnnotatedTextBuilder();
+    int pos = 0;
+
+    for (int i = 0; (i < parts.size()) && (pos < toPos); i++) {
+      TextPart part = parts.get(i);
+
+      if (part.getType() == TextPart.Type.MARKUP) {
+        if (pos <= fromPos) continue;
+        @Nullable TextPart nextPart = ((i + 1 < parts.size()) ? parts.get(i + 1) : null);
+
+        if ((nextPart != null) && (nextPart.getType() == TextPart.Type.FAKE_CONTENT)
+              && (pos + nextPart.length() <= toPos)) {
+          builder.addMarkup(part.getPart(), nextPart.getPart());
+          pos += nextPart.length();
+          i++;
+        } else {
+          builder.addMarkup(part.getPart());
+        }
+
+        continue;
+      }
+
+      // the contents of plain text and fake content parts are contained in the plain text
+      int partFromPos = Math.max(pos, fromPos);
+      int partToPos = Math.min(pos + part.length(), toPos);
+      pos += part.length();
+      if (partFromPos >= partToPos) continue;
+
+      if (part.getType() == TextPart.Type.TEXT) {
+        builder.addText(plainText, partFromPos, partToPos);
+      } else {
+        builder.addMarkup("", plainText.substring(partFromPos, partToPos));
+      }
     }
 
-    return matches;
+    return builder.build();
   }
 
-  private void removeIgnoredMatches(List<LanguageToolRuleMatch> matches) {
-    Settings settings = this.settingsManager.getSettings();
+  /**
+   * Convert a position of a match in the original text of an annotated text to the plain text.
+   * In contrast to @c AnnotatedText.getPlainTextPositionFor(), this is the exact inverse of the
+   * conversion of LanguageTool (see @c JLanguageTool.adjustRuleMatchPos), i.e., converting the
+   * result back yields the given position.
+   *
+   * @param annotatedText annotated text
+   * @param originalTextPos position in the original text
+   * @param isToPos whether the position is the end of a match
+   * @return position in the plain text
+   */
+  private static int getPlainTextPositionFor(AnnotatedText annotatedText, int originalTextPos,
+        boolean isToPos) {
+    int plainTextLength = annotatedText.getPlainText().length();
+
+    if (isToPos) {
+      // largest position whose original text position is before the end of the match, plus 1
+      int low = 0;
+      int high = plainTextLength;
+
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+
+        if (annotatedText.getOriginalTextPositionFor(mid, true) <= originalTextPos - 1) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+
+      return low;
+    } else {
+      // smallest position whose original text position is not before the start of the match
+      int low = 0;
+      int high = plainTextLength;
+
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+
+        if (annotatedText.getOriginalTextPositionFor(mid, false) < originalTextPos) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+
+      return low;
+    }
+  }
+
+  /**
+   * Split plain text into paragraphs. A paragraph ends after a line break that is followed
+   * by a blank line; the blank lines are part of the preceding paragraph, such that the
+   * concatenation of all paragraphs equals the plain text.
+   *
+   * @param plainText plain text to split
+   * @return list of paragraphs
+   */
+  static List<String> splitIntoParagraphs(String plainText) {
+    List<String> paragraphs = new ArrayList<>();
+    int paragraphFromPos = 0;
+    int pos = 0;
+
+    while (pos < plainText.length()) {
+      if (plainText.charAt(pos) != '\n') {
+        pos++;
+        continue;
+      }
+
+      int paragraphToPos = pos + 1;
+      int numberOfLineBreaks = 1;
+
+      for (int i = pos + 1; i < plainText.length(); i++) {
+        char c = plainText.charAt(i);
+
+        if (c == '\n') {
+          numberOfLineBreaks++;
+          paragraphToPos = i + 1;
+        } else if ((c != ' ') && (c != '\t') && (c != '\r')) {
+          break;
+        }
+      }
+
+      if (numberOfLineBreaks >= 2) {
+        paragraphs.add(plainText.substring(paragraphFromPos, paragraphToPos));
+        paragraphFromPos = paragraphToPos;
+      }
+
+      pos = paragraphToPos;
+    }
+
+    if (paragraphFromPos < plainText.length()) {
+      paragraphs.add(plainText.substring(paragraphFromPos));
+    }
+
+    return paragraphs;
+  }
+
+  private static void removeIgnoredMatches(List<LanguageToolRuleMatch> matches,
+        Settings settings) {
     Set<HiddenFalsePositive> hiddenFalsePositives = settings.getHiddenFalsePositives();
 
     if (!matches.isEmpty() && !hiddenFalsePositives.isEmpty()) {
@@ -185,16 +574,56 @@ public class DocumentChecker {
 
   public Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> check(
         TextDocumentItem document) {
-    Settings originalSettings = this.settingsManager.getSettings();
+    return check(document, this.settingsManager.getSettings(), new ParagraphMatchCache(),
+        new IncrementalParseCache(), () -> { });
+  }
+
+  /**
+   * Check a document with specific settings. Only the changed parts of the code are parsed if
+   * supported by the code language, and only paragraphs whose matches are not contained in the
+   * paragraph match cache are sent to LanguageTool; the matches of the remaining paragraphs are
+   * reused. Every run of changed paragraphs is checked separately, together with the preceding
+   * and the following paragraph as context for rules that operate across paragraph boundaries.
+   * The check can be cancelled; the cancel checker is queried before each code fragment and
+   * before each part of the plain text is sent to LanguageTool. This method may be called by
+   * multiple threads concurrently.
+   *
+   * @param document document to check
+   * @param settings settings to use (might be overridden by magic comments in the document)
+   * @param paragraphMatchCache matches of the paragraphs of the previous check of the document;
+   *     will be updated to contain the matches of the paragraphs of this check
+   * @param parseCache parse states of the code fragments of the previous check of the
+   *     document; will be updated to contain the parse states of this check
+   * @param cancelChecker cancel checker that throws a @c CancellationException if the check
+   *     should be cancelled (e.g., because the document has changed)
+   * @return pair of matches and annotated text fragments
+   */
+  public Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> check(
+        TextDocumentItem document, Settings settings, ParagraphMatchCache paragraphMatchCache,
+        IncrementalParseCache parseCache, CancelChecker cancelChecker) {
+    cancelChecker.checkCanceled();
+    List<AnnotatedTextFragment> annotatedTextFragments;
+
+    try {
+      List<CodeFragment> codeFragments = fragmentizeDocument(document, settings);
+      annotatedTextFragments = buildAnnotatedTextFragments(codeFragments, parseCache);
+    } finally {
+      parseCache.finishCheck();
+    }
+
+    boolean isCancelled = false;
 
     try {
-      List<CodeFragment> codeFragments = fragmentizeDocument(document);
-      List<AnnotatedTextFragment> annotatedTextFragments =
-          buildAnnotatedTextFragments(codeFragments);
-      List<LanguageToolRuleMatch> matches = checkAnnotatedTextFragments(annotatedTextFragments);
+      List<LanguageToolRuleMatch> matches = checkAnnotatedTextFragments(
+          annotatedTextFragments, paragraphMatchCache, cancelChecker);
       return new Pair<>(matches, annotatedTextFragments);
+    } catch (CancellationException e) {
+      isCancelled = true;
+      throw e;
     } finally {
-      this.settingsManager.setSettings(originalSettings);
+      // a cancelled check has not visited all paragraphs, therefore, the paragraph match cache
+      // is not finished; the matches stored so far remain valid for the next check
+      if (!isCancelled) paragraphMatchCache.finishCheck();
     }
   }
 }
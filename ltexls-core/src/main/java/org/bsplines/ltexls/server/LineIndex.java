@@ -0,0 +1,218 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Sorted list of the start positions of all lines of a text, stored in a primitive gap buffer.
+ * Line starts before the gap are stored as absolute positions, line starts after the gap are
+ * stored relative to the end of the text. Therefore, replacing a range of the text only requires
+ * moving the gap to the replaced range (which is cheap for local edits) and rescanning the
+ * vicinity of the range; the line starts after the range are shifted implicitly.
+ * Lookups do not allocate.
+ */
+public class LineIndex {
+  private int[] data;
+  private int gapStart;
+  private int gapEnd;
+  private int textLength;
+
+  public LineIndex(CharSequence text) {
+    this.data = scanLineStartPositions(text);
+    this.gapStart = this.data.length;
+    this.gapEnd = this.data.length;
+    this.textLength = text.length();
+  }
+
+  /**
+   * Rescan the complete text.
+   *
+   * @param text new text
+   */
+  public void reset(CharSequence text) {
+    this.data = scanLineStartPositions(text);
+    this.gapStart = this.data.length;
+    this.gapEnd = this.data.length;
+    this.textLength = text.length();
+  }
+
+  private static int[] scanLineStartPositions(CharSequence text) {
+    int[] lineStartPositions = new int[16];
+    int lineCount = 1;
+
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+
+      if ((c == '\r') || (c == '\n')) {
+        if ((c == '\r') && (i + 1 < text.length()) && (text.charAt(i + 1) == '\n')) i++;
+
+        if (lineCount == lineStartPositions.length) {
+          lineStartPositions = Arrays.copyOf(lineStartPositions, 2 * lineCount);
+        }
+
+        lineStartPositions[lineCount] = i + 1;
+        lineCount++;
+      }
+    }
+
+    return Arrays.copyOf(lineStartPositions, lineCount);
+  }
+
+  /**
+   * Update the line starts after a range of the text has been replaced. Only the line starts
+   * in the vicinity of the replaced range are rescanned, as a line break that consists of
+   * '\r' and '\n' might be split or joined by the replacement.
+   *
+   * @param text new text (after the replacement)
+   * @param fromPos start of the replaced range
+   * @param toPos end of the replaced range in the old text
+   * @param replacementLength length of the replacement
+   */
+  public void update(CharSequence text, int fromPos, int toPos, int replacementLength) {
+    int oldRescanFromPos = Math.max(fromPos, 1);
+    int oldRescanToPos = toPos + 1;
+    final int newRescanToPos = Math.min(fromPos + replacementLength + 1, text.length());
+
+    int fromLine = findFirstLineStartingAtOrAfter(oldRescanFromPos);
+    int toLine = findFirstLineStartingAtOrAfter(oldRescanToPos + 1);
+
+    moveGap(fromLine);
+    this.gapEnd += toLine - fromLine;
+    this.textLength = text.length();
+
+    for (int pos = oldRescanFromPos; pos <= newRescanToPos; pos++) {
+      if (isLineStart(text, pos)) insertIntoGap(pos);
+    }
+  }
+
+  private static boolean isLineStart(CharSequence text, int pos) {
+    if (pos <= 0) return (pos == 0);
+    char c = text.charAt(pos - 1);
+    return ((c == '\n')
+        || ((c == '\r') && ((pos >= text.length()) || (text.charAt(pos) != '\n'))));
+  }
+
+  public int getLineCount() {
+    return this.data.length - (this.gapEnd - this.gapStart);
+  }
+
+  /**
+   * Get the start position of a line.
+   *
+   * @param line line index with <code>0 &lt;= line &lt; getLineCount()</code>
+   * @return start position of the line
+   */
+  public int getLineStartPos(int line) {
+    return ((line < this.gapStart) ? this.data[line]
+        : (this.textLength - this.data[line + this.gapEnd - this.gapStart]));
+  }
+
+  /**
+   * Get the line that contains a position.
+   *
+   * @param pos position
+   * @return index of the last line that starts at or before @p pos
+   */
+  public int getLine(int pos) {
+    return Math.max(findFirstLineStartingAtOrAfter(pos + 1) - 1, 0);
+  }
+
+  private int findFirstLineStartingAtOrAfter(int pos) {
+    int low = 0;
+    int high = getLineCount();
+
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+
+      if (getLineStartPos(mid) < pos) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    return low;
+  }
+
+  private void moveGap(int line) {
+    int gapLength = this.gapEnd - this.gapStart;
+
+    while (this.gapStart > line) {
+      this.gapStart--;
+      this.gapEnd--;
+      this.data[this.gapEnd] = this.textLength - this.data[this.gapStart];
+    }
+
+    while (this.gapStart < line) {
+      this.data[this.gapStart] = this.textLength - this.data[this.gapStart + gapLength];
+      this.gapStart++;
+      this.gapEnd++;
+    }
+  }
+
+  private void insertIntoGap(int lineStartPos) {
+    if (this.gapStart == this.gapEnd) {
+      int[] newData = new int[2 * this.data.length];
+      int tailLength = this.data.length - this.gapEnd;
+      System.arraycopy(this.data, 0, newData, 0, this.gapStart);
+      System.arraycopy(this.data, this.gapEnd, newData, newData.length - tailLength, tailLength);
+      this.gapEnd = newData.length - tailLength;
+      this.data = newData;
+    }
+
+    this.data[this.gapStart] = lineStartPos;
+    this.gapStart++;
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if ((obj == null) || !LineIndex.class.isAssignableFrom(obj.getClass())) return false;
+    LineIndex other = (LineIndex)obj;
+
+    if (getLineCount() != other.getLineCount()) return false;
+
+    for (int line = 0; line < getLineCount(); line++) {
+      if (getLineStartPos(line) != other.getLineStartPos(line)) return false;
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 3;
+
+    for (int line = 0; line < getLineCount(); line++) {
+      hash = 53 * hash + getLineStartPos(line);
+    }
+
+    return hash;
+  }
+
+  /**
+   * Copy the start positions of all lines.
+   *
+   * @return array of the start positions of all lines
+   */
+  public int[] getLineStartPositions() {
+    int[] lineStartPositions = new int[getLineCount()];
+
+    for (int line = 0; line < lineStartPositions.length; line++) {
+      lineStartPositions[line] = getLineStartPos(line);
+    }
+
+    return lineStartPositions;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(getLineStartPositions());
+  }
+}
@@ -17,6 +17,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import org.bsplines.ltexls.client.LtexLanguageClient;
+import org.bsplines.ltexls.settings.LanguageToolInterfacePool;
+import org.bsplines.ltexls.settings.Settings;
 import org.bsplines.ltexls.settings.SettingsManager;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.initialization.qual.NotOnlyInitialized;
@@ -26,6 +28,7 @@ import org.eclipse.lsp4j.CodeActionOptions;
 import org.eclipse.lsp4j.ExecuteCommandOptions;
 import org.eclipse.lsp4j.InitializeParams;
 import org.eclipse.lsp4j.InitializeResult;
+import org.eclipse.lsp4j.InitializedParams;
 import org.eclipse.lsp4j.ServerCapabilities;
 import org.eclipse.lsp4j.TextDocumentSyncKind;
 import org.eclipse.lsp4j.jsonrpc.services.JsonRequest;
@@ -40,6 +43,9 @@ public class LtexLanguageServer implements LanguageServer, LanguageClientAware {
   private SettingsManager settingsManager;
   private DocumentChecker documentChecker;
   private CodeActionGenerator codeActionGenerator;
+  private CheckScheduler checkScheduler;
+  private DelayedDiagnosticsPublisher delayedDiagnosticsPublisher;
+  private CheckExecutor checkExecutor;
   private @NotOnlyInitialized LtexTextDocumentService ltexTextDocumentService;
   private @NotOnlyInitialized LtexWorkspaceService ltexWorkspaceService;
   private Instant startupInstant;
@@ -49,9 +55,34 @@ public class LtexLanguageServer implements LanguageServer, LanguageClientAware {
    * Note: The object cannot be used before @c connect() has been called.
    */
   public LtexLanguageServer() {
-    this.settingsManager = new SettingsManager();
+    this(new CheckExecutor());
+  }
+
+  /**
+   * Constructor.
+   * Note: The object cannot be used before @c connect() has been called.
+   *
+   * @param checkExecutor executor that runs the checks of documents
+   */
+  public LtexLanguageServer(CheckExecutor checkExecutor) {
+    this(checkExecutor, new LanguageToolInterfacePool());
+  }
+
+  /**
+   * Constructor.
+   * Note: The object cannot be used before @c connect() has been called.
+   *
+   * @param checkExecutor executor that runs the checks of documents
+   * @param languageToolInterfacePool pool of LanguageTool instances
+   */
+  public LtexLanguageServer(CheckExecutor checkExecutor,
+        LanguageToolInterfacePool languageToolInterfacePool) {
+    this.settingsManager = new SettingsManager(new Settings(), languageToolInterfacePool);
     this.documentChecker = new DocumentChecker(this.settingsManager);
-    this.codeActionGenerator = new CodeActionGenerator(this.settingsManager);
+    this.codeActionGenerator = new CodeActionGenerator();
+    this.checkScheduler = new CheckScheduler();
+    this.delayedDiagnosticsPublisher = new DelayedDiagnosticsPublisher();
+    this.checkExecutor = checkExecutor;
     this.ltexTextDocumentService = new LtexTextDocumentService(this);
     this.ltexWorkspaceService = new LtexWorkspaceService(this);
     this.startupInstant = Instant.now();
@@ -66,7 +97,7 @@ public class LtexLanguageServer implements LanguageServer, LanguageClientAware {
         ((ltexLsVersion != null) ? ltexLsVersion : "null")));
 
     ServerCapabilities capabilities = new ServerCapabilities();
-    capabilities.setTextDocumentSync(TextDocumentSyncKind.Full);
+    capabilities.setTextDocumentSync(TextDocumentSyncKind.Incremental);
     capabilities.setCodeActionProvider(new CodeActionOptions(CodeActionGenerator.getCodeActions()));
 
     List<String> commandNames = new ArrayList<>();
@@ -88,9 +119,19 @@ public class LtexLanguageServer implements LanguageServer, LanguageClientAware {
     return CompletableFuture.completedFuture(new InitializeResult(capabilities));
   }
 
+  @Override
+  public void initialized(InitializedParams params) {
+    // the client only sends the configuration when it changes, therefore, the settings that are
+    // not specific to a document have to be requested once
+    this.ltexWorkspaceService.requestSettings();
+  }
+
   @Override
   public CompletableFuture<Object> shutdown() {
     Tools.logger.info(Tools.i18n("shuttingDownLtexLs"));
+    this.checkScheduler.shutdown();
+    this.delayedDiagnosticsPublisher.shutdown();
+    this.checkExecutor.shutdown();
 
     // Per https://github.com/eclipse/lsp4j/issues/18
     return CompletableFuture.completedFuture(new Object());
@@ -128,8 +169,13 @@ public class LtexLanguageServer implements LanguageServer, LanguageClientAware {
       // do nothing
     }
 
+    LanguageToolInterfacePool languageToolInterfacePool =
+        this.settingsManager.getLanguageToolInterfacePool();
+
     return CompletableFuture.completedFuture(new LtexServerStatusParams(
-        processId, wallClockDuration, cpuUsage, cpuDuration, usedMemory, totalMemory));
+        processId, wallClockDuration, cpuUsage, cpuDuration, usedMemory, totalMemory,
+        languageToolInterfacePool.getInstanceCount(), languageToolInterfacePool.getHitCount(),
+        languageToolInterfacePool.getMissCount(), languageToolInterfacePool.getEvictionCount()));
   }
 
   @Override
@@ -158,6 +204,18 @@ public class LtexLanguageServer implements LanguageServer, LanguageClientAware {
     return this.codeActionGenerator;
   }
 
+  public CheckScheduler getCheckScheduler() {
+    return this.checkScheduler;
+  }
+
+  public DelayedDiagnosticsPublisher getDelayedDiagnosticsPublisher() {
+    return this.delayedDiagnosticsPublisher;
+  }
+
+  public CheckExecutor getCheckExecutor() {
+    return this.checkExecutor;
+  }
+
   public LtexTextDocumentService getLtexTextDocumentService() {
     return this.ltexTextDocumentService;
   }
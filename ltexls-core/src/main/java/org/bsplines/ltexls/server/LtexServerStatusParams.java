@@ -17,15 +17,39 @@ public class LtexServerStatusParams {
   private @Nullable Double cpuDuration;
   private double usedMemory;
   private double totalMemory;
+  private int languageToolInstanceCount;
+  private long languageToolInstanceHitCount;
+  private long languageToolInstanceMissCount;
+  private long languageToolInstanceEvictionCount;
 
+  /**
+   * Constructor.
+   *
+   * @param processId ID of the process of ltex-ls
+   * @param wallClockDuration duration since startup in seconds
+   * @param cpuUsage CPU usage of ltex-ls (between 0 and 1), if available
+   * @param cpuDuration CPU time of ltex-ls in seconds, if available
+   * @param usedMemory used memory in bytes
+   * @param totalMemory total memory of the JVM in bytes
+   * @param languageToolInstanceCount number of existing LanguageTool instances
+   * @param languageToolInstanceHitCount number of leases of existing LanguageTool instances
+   * @param languageToolInstanceMissCount number of created LanguageTool instances
+   * @param languageToolInstanceEvictionCount number of evicted LanguageTool instances
+   */
   public LtexServerStatusParams(long processId, double wallClockDuration, @Nullable Double cpuUsage,
-        @Nullable Double cpuDuration, double usedMemory, double totalMemory) {
+        @Nullable Double cpuDuration, double usedMemory, double totalMemory,
+        int languageToolInstanceCount, long languageToolInstanceHitCount,
+        long languageToolInstanceMissCount, long languageToolInstanceEvictionCount) {
     this.processId = processId;
     this.wallClockDuration = wallClockDuration;
     this.cpuUsage = cpuUsage;
     this.cpuDuration = cpuDuration;
     this.usedMemory = usedMemory;
     this.totalMemory = totalMemory;
+    this.languageToolInstanceCount = languageToolInstanceCount;
+    this.languageToolInstanceHitCount = languageToolInstanceHitCount;
+    this.languageToolInstanceMissCount = languageToolInstanceMissCount;
+    this.languageToolInstanceEvictionCount = languageToolInstanceEvictionCount;
   }
 
   @Override
@@ -37,6 +61,10 @@ public class LtexServerStatusParams {
     if (this.cpuDuration != null) builder.add("cpuDuration", this.cpuDuration);
     builder.add("usedMemory", this.usedMemory);
     builder.add("totalMemory", this.totalMemory);
+    builder.add("languageToolInstanceCount", this.languageToolInstanceCount);
+    builder.add("languageToolInstanceHitCount", this.languageToolInstanceHitCount);
+    builder.add("languageToolInstanceMissCount", this.languageToolInstanceMissCount);
+    builder.add("languageToolInstanceEvictionCount", this.languageToolInstanceEvictionCount);
     return builder.toString();
   }
 }
@@ -8,15 +8,21 @@
 package org.bsplines.ltexls.server;
 
 import com.google.gson.JsonElement;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import org.bsplines.ltexls.client.LtexLanguageClient;
 import org.bsplines.ltexls.client.LtexProgressParams;
 import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
 import org.bsplines.ltexls.parsing.AnnotatedTextFragment;
+import org.bsplines.ltexls.parsing.IncrementalParseCache;
+import org.bsplines.ltexls.settings.Settings;
+import org.bsplines.ltexls.settings.SettingsManager;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.lsp4j.ConfigurationItem;
@@ -31,22 +37,32 @@ import org.eclipse.xtext.xbase.lib.Pair;
 
 public class LtexTextDocumentItem extends TextDocumentItem {
   private LtexLanguageServer languageServer;
-  private List<Integer> lineStartPosList;
-  private @Nullable Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> checkingResult;
-  private @Nullable List<Diagnostic> diagnostics;
+  private PieceTable textBuffer;
+  private boolean isTextBufferMaterialized;
+  private LineIndex lineIndex;
+  private volatile @Nullable Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>>
+      checkingResult;
+  private volatile @Nullable List<Diagnostic> diagnostics;
+  private ParagraphMatchCache paragraphMatchCache;
+  private IncrementalParseCache parseCache;
   private @Nullable Position caretPosition;
   private Instant lastCaretChangeInstant;
+  private volatile Duration lastCheckDuration;
 
   public LtexTextDocumentItem(LtexLanguageServer languageServer,
         String uri, String codeLanguageId, int version, String text) {
     super(uri, codeLanguageId, version, text);
     this.languageServer = languageServer;
-    this.lineStartPosList = new ArrayList<>();
+    this.textBuffer = new PieceTable(text);
+    this.isTextBufferMaterialized = true;
+    this.lineIndex = new LineIndex(text);
     this.checkingResult = null;
     this.diagnostics = null;
+    this.paragraphMatchCache = new ParagraphMatchCache();
+    this.parseCache = new IncrementalParseCache();
     this.caretPosition = null;
     this.lastCaretChangeInstant = Instant.now();
-    reinitializeLineStartPosList(text, this.lineStartPosList);
+    this.lastCheckDuration = Duration.ZERO;
   }
 
   public LtexTextDocumentItem(LtexLanguageServer languageServer, TextDocumentItem document) {
@@ -54,33 +70,18 @@ public class LtexTextDocumentItem extends TextDocumentItem {
         document.getVersion(), document.getText());
   }
 
-  private void reinitializeLineStartPosList() {
-    reinitializeLineStartPosList(getText(), this.lineStartPosList);
-  }
-
-  private static void reinitializeLineStartPosList(String text, List<Integer> lineStartPosList) {
-    lineStartPosList.clear();
-    lineStartPosList.add(0);
-
-    for (int i = 0; i < text.length(); i++) {
-      char c = text.charAt(i);
-
-      if (c == '\r') {
-        if ((i + 1 < text.length()) && (text.charAt(i + 1) == '\n')) i++;
-        lineStartPosList.add(i + 1);
-      } else if (c == '\n') {
-        lineStartPosList.add(i + 1);
-      }
-    }
-  }
-
   @Override
   public boolean equals(@Nullable Object obj) {
     if ((obj == null) || !LtexTextDocumentItem.class.isAssignableFrom(obj.getClass())) return false;
     LtexTextDocumentItem other = (LtexTextDocumentItem)obj;
 
-    if (!super.equals(other)) return false;
-    if (!this.lineStartPosList.equals(other.lineStartPosList)) return false;
+    // the text and the line index are compared via synchronized getters, as the text of the
+    // superclass is only updated when the text buffer is materialized
+    if (!getUri().equals(other.getUri())) return false;
+    if (!getLanguageId().equals(other.getLanguageId())) return false;
+    if (getVersion() != other.getVersion()) return false;
+    if (!getText().equals(other.getText())) return false;
+    if (!Arrays.equals(getLineStartPositions(), other.getLineStartPositions())) return false;
 
     if ((this.checkingResult == null) ? (other.checkingResult != null) :
           ((other.checkingResult == null) || !this.checkingResult.equals(other.checkingResult))) {
@@ -106,8 +107,11 @@ public class LtexTextDocumentItem extends TextDocumentItem {
   public int hashCode() {
     int hash = 3;
 
-    hash = 53 * hash + super.hashCode();
-    hash = 53 * hash + this.lineStartPosList.hashCode();
+    hash = 53 * hash + getUri().hashCode();
+    hash = 53 * hash + getLanguageId().hashCode();
+    hash = 53 * hash + getVersion();
+    hash = 53 * hash + getText().hashCode();
+    hash = 53 * hash + Arrays.hashCode(getLineStartPositions());
     if (this.checkingResult != null) hash = 53 * hash + this.checkingResult.hashCode();
     if (this.diagnostics != null) hash = 53 * hash + this.diagnostics.hashCode();
     if (this.caretPosition != null) hash = 53 * hash + this.caretPosition.hashCode();
@@ -116,6 +120,10 @@ public class LtexTextDocumentItem extends TextDocumentItem {
     return hash;
   }
 
+  private synchronized int[] getLineStartPositions() {
+    return this.lineIndex.getLineStartPositions();
+  }
+
   public LtexLanguageServer getLanguageServer() {
     return this.languageServer;
   }
@@ -126,19 +134,19 @@ public class LtexTextDocumentItem extends TextDocumentItem {
    * @param position line/column Position object
    * @return integer position
    */
-  public int convertPosition(Position position) {
+  public synchronized int convertPosition(Position position) {
     int line = position.getLine();
     int character = position.getCharacter();
-    String text = getText();
+    CharSequence text = this.textBuffer;
 
     if (line < 0) {
       return 0;
-    } else if (line >= this.lineStartPosList.size()) {
+    } else if (line >= this.lineIndex.getLineCount()) {
       return text.length();
     } else {
-      int lineStart = this.lineStartPosList.get(line);
-      int nextLineStart = ((line < this.lineStartPosList.size() - 1)
-          ? this.lineStartPosList.get(line + 1) : text.length());
+      int lineStart = this.lineIndex.getLineStartPos(line);
+      int nextLineStart = ((line < this.lineIndex.getLineCount() - 1)
+          ? this.lineIndex.getLineStartPos(line + 1) : text.length());
       int lineLength = nextLineStart - lineStart;
 
       if (character < 0) {
@@ -168,15 +176,9 @@ public class LtexTextDocumentItem extends TextDocumentItem {
    * @param pos integer position
    * @return line/column Position object
    */
-  public Position convertPosition(int pos) {
-    int line = Collections.binarySearch(this.lineStartPosList, pos);
-
-    if (line < 0) {
-      int insertionPoint = -line - 1;
-      line = insertionPoint - 1;
-    }
-
-    return new Position(line, pos - this.lineStartPosList.get(line));
+  public synchronized Position convertPosition(int pos) {
+    int line = this.lineIndex.getLine(pos);
+    return new Position(line, pos - this.lineIndex.getLineStartPos(line));
   }
 
   public @Nullable Position getCaretPosition() {
@@ -197,6 +199,20 @@ public class LtexTextDocumentItem extends TextDocumentItem {
     }
   }
 
+  @Override
+  public synchronized int getVersion() {
+    return super.getVersion();
+  }
+
+  @Override
+  public synchronized void setVersion(int version) {
+    super.setVersion(version);
+  }
+
+  public Duration getLastCheckDuration() {
+    return this.lastCheckDuration;
+  }
+
   public Instant getLastCaretChangeInstant() {
     return this.lastCaretChangeInstant;
   }
@@ -205,11 +221,29 @@ public class LtexTextDocumentItem extends TextDocumentItem {
     this.lastCaretChangeInstant = lastCaretChangeInstant;
   }
 
+  /**
+   * Get the text of the document. If the document has been changed incrementally since the
+   * last call, the text is materialized from the text buffer.
+   *
+   * @return text of the document
+   */
   @Override
-  public void setText(String text) {
+  public synchronized String getText() {
+    if (!this.isTextBufferMaterialized) {
+      super.setText(this.textBuffer.toString());
+      this.isTextBufferMaterialized = true;
+    }
+
+    return super.getText();
+  }
+
+  @Override
+  public synchronized void setText(String text) {
     final String oldText = getText();
     super.setText(text);
-    reinitializeLineStartPosList();
+    this.textBuffer = new PieceTable(text);
+    this.isTextBufferMaterialized = true;
+    this.lineIndex.reset(text);
     this.checkingResult = null;
     this.diagnostics = null;
     this.caretPosition = guessCaretPositionInFullUpdate(oldText);
@@ -221,7 +255,8 @@ public class LtexTextDocumentItem extends TextDocumentItem {
    *
    * @param textChangeEvents list of text change events to apply
    */
-  public void applyTextChangeEvents(List<TextDocumentContentChangeEvent> textChangeEvents) {
+  public synchronized void applyTextChangeEvents(
+        List<TextDocumentContentChangeEvent> textChangeEvents) {
     Instant oldLastCaretChangeInstant = this.lastCaretChangeInstant;
 
     for (TextDocumentContentChangeEvent textChangeEvent : textChangeEvents) {
@@ -239,35 +274,33 @@ public class LtexTextDocumentItem extends TextDocumentItem {
    *
    * @param textChangeEvent text change event to apply
    */
-  public void applyTextChangeEvent(TextDocumentContentChangeEvent textChangeEvent) {
+  public synchronized void applyTextChangeEvent(TextDocumentContentChangeEvent textChangeEvent) {
     Range changeRange = textChangeEvent.getRange();
     String changeText = textChangeEvent.getText();
     int fromPos = -1;
     int toPos = -1;
-    String oldText = getText();
-    String newText;
 
     if (changeRange != null) {
       fromPos = convertPosition(changeRange.getStart());
       toPos = ((changeRange.getEnd() != changeRange.getStart())
           ? convertPosition(changeRange.getEnd()) : fromPos);
-      newText = oldText.substring(0, fromPos) + changeText + oldText.substring(toPos);
-    } else {
-      newText = changeText;
-    }
-
-    super.setText(newText);
-    reinitializeLineStartPosList();
-    this.checkingResult = null;
-    this.diagnostics = null;
-
-    if (changeRange != null) {
+      this.textBuffer.replace(fromPos, toPos, changeText);
+      this.isTextBufferMaterialized = false;
+      this.lineIndex.update(this.textBuffer, fromPos, toPos, changeText.length());
       this.caretPosition = guessCaretPositionInIncrementalUpdate(
           changeRange, changeText, fromPos, toPos);
     } else {
+      final String oldText = getText();
+      super.setText(changeText);
+      this.textBuffer = new PieceTable(changeText);
+      this.isTextBufferMaterialized = true;
+      this.lineIndex.reset(changeText);
       this.caretPosition = guessCaretPositionInFullUpdate(oldText);
     }
 
+    this.checkingResult = null;
+    this.diagnostics = null;
+
     if (this.caretPosition != null) this.lastCaretChangeInstant = Instant.now();
   }
 
@@ -319,43 +352,54 @@ public class LtexTextDocumentItem extends TextDocumentItem {
     return checkAndPublishDiagnostics(true);
   }
 
+  /**
+   * Check the document and publish the diagnostics. If the document is changed before the
+   * check is started or before the diagnostics are published, the check is cancelled and no
+   * diagnostics are published, as the diagnostics would refer to an outdated version.
+   *
+   * @param useCache whether to use cached diagnostics if available
+   * @return future that is completed with whether diagnostics have been published
+   */
   public CompletableFuture<Boolean> checkAndPublishDiagnostics(boolean useCache) {
     @Nullable LtexLanguageClient languageClient = this.languageServer.getLanguageClient();
+    final int version = getVersion();
 
-    return checkAndGetDiagnostics(useCache).thenApply((List<Diagnostic> diagnostics) -> {
-      if (languageClient == null) return false;
+    return checkAndGetDiagnostics(useCache, version).thenApply((List<Diagnostic> diagnostics) -> {
+      if ((languageClient == null) || (getVersion() != version)) return false;
       @Nullable List<Diagnostic> diagnosticsNotAtCaret = extractDiagnosticsNotAtCaret();
       if (diagnosticsNotAtCaret == null) return false;
       languageClient.publishDiagnostics(new PublishDiagnosticsParams(
           getUri(), diagnosticsNotAtCaret));
 
+      DelayedDiagnosticsPublisher delayedDiagnosticsPublisher =
+          this.languageServer.getDelayedDiagnosticsPublisher();
+
       if (diagnosticsNotAtCaret.size() < diagnostics.size()) {
-        Thread thread = new Thread(new DelayedDiagnosticsPublisherRunnable(
-            languageClient, this));
-        thread.start();
+        delayedDiagnosticsPublisher.schedule(languageClient, this);
+      } else {
+        // all diagnostics have just been published
+        delayedDiagnosticsPublisher.cancel(getUri());
       }
 
       return true;
     });
   }
 
-  private CompletableFuture<List<Diagnostic>> checkAndGetDiagnostics(boolean useCache) {
+  private CompletableFuture<List<Diagnostic>> checkAndGetDiagnostics(
+        boolean useCache, int version) {
     if (useCache && (this.diagnostics != null)) {
       return CompletableFuture.completedFuture(this.diagnostics);
     }
 
-    return check(useCache).thenApply(
+    return check(useCache, version).thenApply(
         (Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> checkingResult) -> {
-          List<LanguageToolRuleMatch> matches = checkingResult.getKey();
-          List<Diagnostic> diagnostics = new ArrayList<>();
-
-          for (LanguageToolRuleMatch match : matches) {
-            diagnostics.add(this.languageServer.getCodeActionGenerator().createDiagnostic(
-                match, this));
+          // the diagnostics have been stored together with the checking result, unless the
+          // document has been changed in the meantime
+          synchronized (this) {
+            @Nullable List<Diagnostic> diagnostics = this.diagnostics;
+            return (((diagnostics != null) && (getVersion() == version))
+                ? diagnostics : Collections.emptyList());
           }
-
-          this.diagnostics = diagnostics;
-          return diagnostics;
         });
   }
 
@@ -388,6 +432,11 @@ public class LtexTextDocumentItem extends TextDocumentItem {
 
   public CompletableFuture<Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>>> check(
         boolean useCache) {
+    return check(useCache, null);
+  }
+
+  private CompletableFuture<Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>>> check(
+        boolean useCache, @Nullable Integer version) {
     if (useCache && (this.checkingResult != null)) {
       return CompletableFuture.completedFuture(this.checkingResult);
     }
@@ -400,32 +449,98 @@ public class LtexTextDocumentItem extends TextDocumentItem {
     }
 
     String uri = getUri();
-    ConfigurationItem configurationItem = new ConfigurationItem();
-    configurationItem.setScopeUri(uri);
-    configurationItem.setSection("ltex");
-    ConfigurationParams configurationParams = new ConfigurationParams(
-        Collections.singletonList(configurationItem));
+    SettingsManager settingsManager = this.languageServer.getSettingsManager();
+    @Nullable Settings scopeSettings = settingsManager.getScopeSettings(uri);
+    CompletableFuture<Settings> settingsFuture;
 
-    CompletableFuture<List<Object>> configurationFuture =
-        languageClient.configuration(configurationParams);
-    CompletableFuture<List<Object>> workspaceSpecificConfigurationFuture =
-        languageClient.ltexWorkspaceSpecificConfiguration(configurationParams);
+    if (scopeSettings != null) {
+      // the configuration has not changed since it has been requested the last time
+      settingsFuture = CompletableFuture.completedFuture(scopeSettings);
+    } else {
+      final int scopeSettingsGeneration = settingsManager.getScopeSettingsGeneration();
+      ConfigurationItem configurationItem = new ConfigurationItem();
+      configurationItem.setScopeUri(uri);
+      configurationItem.setSection("ltex");
+      ConfigurationParams configurationParams = new ConfigurationParams(
+          Collections.singletonList(configurationItem));
+
+      CompletableFuture<List<Object>> configurationFuture =
+          languageClient.configuration(configurationParams);
+      CompletableFuture<List<Object>> workspaceSpecificConfigurationFuture =
+          languageClient.ltexWorkspaceSpecificConfiguration(configurationParams);
+      settingsFuture = configurationFuture.thenCombine(workspaceSpecificConfigurationFuture,
+          (List<Object> configuration, List<Object> workspaceSpecificConfiguration) ->
+            settingsManager.resolveScopeSettings(uri, scopeSettingsGeneration,
+              (JsonElement)configuration.get(0),
+              (JsonElement)workspaceSpecificConfiguration.get(0)));
+    }
 
     languageClient.ltexProgress(new LtexProgressParams(uri, "checkDocument", 0));
 
-    return configurationFuture.thenCombine(workspaceSpecificConfigurationFuture,
-      (List<Object> configuration, List<Object> workspaceSpecificConfiguration) -> {
-          try {
-            this.languageServer.getSettingsManager().setSettings(
-                (JsonElement)configuration.get(0),
-                (JsonElement)workspaceSpecificConfiguration.get(0));
-            this.checkingResult = this.languageServer.getDocumentChecker().check(this);
-            return this.checkingResult;
-          } finally {
-            if (languageClient != null) {
-              languageClient.ltexProgress(new LtexProgressParams(uri, "checkDocument", 1));
-            }
+    return settingsFuture.thenCompose((Settings settings) ->
+          this.languageServer.getCheckExecutor().submit(uri, () -> checkWithSettings(
+            settings, version)))
+        .whenComplete((@Nullable Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>>
+            checkingResult, @Nullable Throwable throwable) -> {
+          if (languageClient != null) {
+            languageClient.ltexProgress(new LtexProgressParams(uri, "checkDocument", 1));
           }
         });
   }
+
+  /**
+   * Check the document. This is run by the check executor and not by the thread that processes
+   * the JSON-RPC messages; therefore, the check operates on a snapshot of the document, and the
+   * positions of the diagnostics are converted with respect to the snapshot. The checking
+   * result and the diagnostics are only stored if the document has not been changed since the
+   * snapshot has been taken.
+   */
+  private Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> checkWithSettings(
+        Settings settings, @Nullable Integer version) {
+    LtexTextDocumentItem snapshot;
+
+    synchronized (this) {
+      cancelIfOutdated(version);
+      snapshot = new LtexTextDocumentItem(this.languageServer, getUri(), getLanguageId(),
+          getVersion(), getText());
+    }
+
+    Instant beforeCheckingInstant = Instant.now();
+    Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> checkingResult =
+        this.languageServer.getDocumentChecker().check(
+          snapshot, settings, this.paragraphMatchCache, this.parseCache,
+          () -> cancelIfOutdated(version));
+    this.lastCheckDuration = Duration.between(beforeCheckingInstant, Instant.now());
+
+    List<Diagnostic> diagnostics = new ArrayList<>();
+
+    for (LanguageToolRuleMatch match : checkingResult.getKey()) {
+      diagnostics.add(this.languageServer.getCodeActionGenerator().createDiagnostic(
+          match, snapshot, settings));
+    }
+
+    synchronized (this) {
+      if (getVersion() == snapshot.getVersion()) {
+        this.checkingResult = checkingResult;
+        this.diagnostics = diagnostics;
+      }
+    }
+
+    return checkingResult;
+  }
+
+  /**
+   * Throw a @c CancellationException if the document has been changed since the given version
+   * has been requested to be checked. This is also queried by the document checker while
+   * checking, such that checks of outdated versions are stopped early.
+   *
+   * @param version version of the document to check (@c null if any version should be checked)
+   */
+  private void cancelIfOutdated(@Nullable Integer version) {
+    if ((version != null) && (getVersion() != version)) {
+      String message = Tools.i18n("cancellingCheckOfOutdatedDocumentVersion", getUri(), version);
+      Tools.logger.fine(message);
+      throw new CancellationException(message);
+    }
+  }
 }
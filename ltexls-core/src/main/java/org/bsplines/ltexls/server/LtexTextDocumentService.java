@@ -7,6 +7,7 @@
 
 package org.bsplines.ltexls.server;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +17,7 @@ import java.util.function.Consumer;
 import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
 import org.bsplines.ltexls.parsing.AnnotatedTextFragment;
 import org.bsplines.ltexls.settings.CheckFrequency;
+import org.bsplines.ltexls.settings.Settings;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.initialization.qual.NotOnlyInitialized;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
@@ -159,6 +161,9 @@ public class LtexTextDocumentService implements TextDocumentService {
   public void didClose(DidCloseTextDocumentParams params) {
     String uri = params.getTextDocument().getUri();
     this.documents.remove(uri);
+    this.languageServer.getCheckScheduler().cancel(uri);
+    this.languageServer.getDelayedDiagnosticsPublisher().cancel(uri);
+    this.languageServer.getSettingsManager().removeScopeSettings(uri);
 
     if (this.languageServer.getSettingsManager().getSettings()
           .getClearDiagnosticsWhenClosingFile()) {
@@ -199,10 +204,13 @@ public class LtexTextDocumentService implements TextDocumentService {
 
     document.applyTextChangeEvents(params.getContentChanges());
     document.setVersion(params.getTextDocument().getVersion());
+    Settings settings = this.languageServer.getSettingsManager().getSettings();
 
-    if (this.languageServer.getSettingsManager().getSettings().getCheckFrequency()
-          == CheckFrequency.EDIT) {
-      document.checkAndPublishDiagnostics(false);
+    if (settings.getCheckFrequency() == CheckFrequency.EDIT) {
+      Duration delay = CheckScheduler.computeDelay(
+          Duration.ofMillis(settings.getCheckDelay()), document.getLastCheckDuration());
+      this.languageServer.getCheckScheduler().schedule(uri, delay,
+          () -> document.checkAndPublishDiagnostics(false));
     }
   }
 
@@ -221,6 +229,8 @@ public class LtexTextDocumentService implements TextDocumentService {
       return CompletableFuture.completedFuture(Collections.emptyList());
     }
 
+    this.languageServer.getCheckScheduler().flush(uri);
+
     return document.check().thenApply(
         (Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> checkingResult) -> {
           return this.languageServer.getCodeActionGenerator().generate(
@@ -7,6 +7,7 @@
 
 package org.bsplines.ltexls.server;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -15,10 +16,14 @@ import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import org.bsplines.ltexls.client.LtexLanguageClient;
+import org.bsplines.ltexls.settings.SettingsManager;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.initialization.qual.NotOnlyInitialized;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.lsp4j.ConfigurationItem;
+import org.eclipse.lsp4j.ConfigurationParams;
 import org.eclipse.lsp4j.DidChangeConfigurationParams;
 import org.eclipse.lsp4j.DidChangeWatchedFilesParams;
 import org.eclipse.lsp4j.ExecuteCommandParams;
@@ -40,12 +45,48 @@ class LtexWorkspaceService implements WorkspaceService {
     return CompletableFuture.completedFuture(Collections.emptyList());
   }
 
+  /**
+   * Handle a change of the configuration. The settings that are not specific to a document
+   * (e.g., the log level and the check frequency) are updated with the configuration sent by the
+   * client; if the client doesn't send the configuration, it is requested. The settings of the
+   * documents are requested again when the documents are re-checked.
+   *
+   * @param params parameters of the notification
+   */
   @Override
   public void didChangeConfiguration(DidChangeConfigurationParams params) {
+    SettingsManager settingsManager = this.languageServer.getSettingsManager();
+    settingsManager.invalidateScopeSettings();
+    @Nullable Object jsonSettings = params.getSettings();
+
+    if ((jsonSettings instanceof JsonObject) && ((JsonObject)jsonSettings).has("ltex")) {
+      settingsManager.setSettings(((JsonObject)jsonSettings).get("ltex"), new JsonObject());
+    } else {
+      requestSettings();
+    }
+
     this.languageServer.getLtexTextDocumentService().executeFunction(
         (LtexTextDocumentItem document) -> document.checkAndPublishDiagnostics(false));
   }
 
+  /**
+   * Request the configuration that is not specific to a document from the client and update
+   * the settings that are not specific to a document with it (e.g., after the initialization,
+   * as the client doesn't send the configuration until it changes).
+   */
+  public void requestSettings() {
+    @Nullable LtexLanguageClient languageClient = this.languageServer.getLanguageClient();
+    if (languageClient == null) return;
+
+    SettingsManager settingsManager = this.languageServer.getSettingsManager();
+    ConfigurationItem configurationItem = new ConfigurationItem();
+    configurationItem.setSection("ltex");
+    languageClient.configuration(new ConfigurationParams(
+        Collections.singletonList(configurationItem))).thenAccept(
+          (List<Object> configuration) -> settingsManager.setSettings(
+            (JsonElement)configuration.get(0), new JsonObject()));
+  }
+
   @Override
   public void didChangeWatchedFiles(DidChangeWatchedFilesParams params) {
   }
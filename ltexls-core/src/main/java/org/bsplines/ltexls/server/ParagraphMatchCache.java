@@ -0,0 +1,165 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
+import org.bsplines.ltexls.settings.Settings;
+import org.bsplines.ltexls.settings.SettingsFingerprint;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Matches of the paragraphs of the plain text of a document, as obtained by the previous check.
+ * The positions of the stored matches are relative to the start of the plain text of the
+ * respective paragraph, which makes them independent of edits in other paragraphs.
+ * Paragraphs are identified by their plain text and the fingerprint of the settings used for
+ * checking them. Only paragraphs that were part of the last check are retained. As the
+ * fragments of a document are checked in parallel, all methods are thread-safe.
+ *
+ * <p>The dictionary is not part of the identification of paragraphs. If the dictionary changed,
+ * the matches of a paragraph are only reused if none of them is a spelling match and the
+ * paragraph doesn't contain one of the words that have been removed from or added to the
+ * dictionary (ignoring case). Spelling matches have to be checked again, as their suggestions
+ * are also taken from the dictionary.
+ */
+public class ParagraphMatchCache {
+  private Map<SettingsFingerprint, Map<String, Entry>> previousMap;
+  private Map<SettingsFingerprint, Map<String, Entry>> currentMap;
+  private @Nullable SettingsFingerprint changedWordsOldFingerprint;
+  private @Nullable SettingsFingerprint changedWordsNewFingerprint;
+  private List<String> changedWords;
+
+  public ParagraphMatchCache() {
+    this.previousMap = new HashMap<>();
+    this.currentMap = new HashMap<>();
+    this.changedWordsOldFingerprint = null;
+    this.changedWordsNewFingerprint = null;
+    this.changedWords = new ArrayList<>();
+  }
+
+  private static class Entry {
+    private SettingsFingerprint fingerprint;
+    private Set<String> dictionary;
+    private List<LanguageToolRuleMatch> matches;
+    private boolean hasUnknownWordMatch;
+
+    public Entry(Settings settings, List<LanguageToolRuleMatch> matches) {
+      this.fingerprint = settings.getLanguageToolFingerprint();
+      this.dictionary = settings.getDictionary();
+      this.matches = matches;
+      this.hasUnknownWordMatch = false;
+
+      for (LanguageToolRuleMatch match : matches) {
+        if (match.isUnknownWordRule()) {
+          this.hasUnknownWordMatch = true;
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the matches of a paragraph found by the previous or the current check.
+   *
+   * @param settings settings used for checking the paragraph
+   * @param paragraph plain text of the paragraph
+   * @return matches with positions relative to the start of the paragraph, or @c null if
+   *     the paragraph has not been checked with the same settings (or with settings that only
+   *     differ in dictionary words that don't occur in the paragraph, if the paragraph doesn't
+   *     contain spelling errors)
+   */
+  public synchronized @Nullable List<LanguageToolRuleMatch> get(
+        Settings settings, String paragraph) {
+    SettingsFingerprint ruleFingerprint = settings.getLanguageToolRuleFingerprint();
+    @Nullable Entry entry = getEntry(this.currentMap, ruleFingerprint, paragraph);
+    boolean isCurrent = (entry != null);
+    if (entry == null) entry = getEntry(this.previousMap, ruleFingerprint, paragraph);
+    if (entry == null) return null;
+
+    if (!entry.fingerprint.equals(settings.getLanguageToolFingerprint())) {
+      if (entry.hasUnknownWordMatch || containsChangedWord(paragraph, entry, settings)) {
+        return null;
+      }
+    } else if (isCurrent) {
+      return entry.matches;
+    }
+
+    put(settings, paragraph, entry.matches);
+    return entry.matches;
+  }
+
+  private static @Nullable Entry getEntry(Map<SettingsFingerprint, Map<String, Entry>> map,
+        SettingsFingerprint ruleFingerprint, String paragraph) {
+    @Nullable Map<String, Entry> paragraphEntryMap = map.get(ruleFingerprint);
+    return ((paragraphEntryMap != null) ? paragraphEntryMap.get(paragraph) : null);
+  }
+
+  private boolean containsChangedWord(String paragraph, Entry entry, Settings settings) {
+    SettingsFingerprint fingerprint = settings.getLanguageToolFingerprint();
+
+    // all entries of the previous check usually have the same dictionary, therefore, the
+    // changed words are only computed once
+    if (!entry.fingerprint.equals(this.changedWordsOldFingerprint)
+          || !fingerprint.equals(this.changedWordsNewFingerprint)) {
+      Set<String> dictionary = settings.getDictionary();
+      this.changedWords = new ArrayList<>();
+
+      for (String word : entry.dictionary) {
+        if (!dictionary.contains(word)) this.changedWords.add(word.toLowerCase(Locale.ROOT));
+      }
+
+      for (String word : dictionary) {
+        if (!entry.dictionary.contains(word)) this.changedWords.add(word.toLowerCase(Locale.ROOT));
+      }
+
+      this.changedWordsOldFingerprint = entry.fingerprint;
+      this.changedWordsNewFingerprint = fingerprint;
+    }
+
+    String lowerCaseParagraph = paragraph.toLowerCase(Locale.ROOT);
+
+    for (String word : this.changedWords) {
+      if (lowerCaseParagraph.contains(word)) return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Store the matches of a paragraph found by the current check.
+   *
+   * @param settings settings used for checking the paragraph
+   * @param paragraph plain text of the paragraph
+   * @param matches matches with positions relative to the start of the paragraph
+   */
+  public synchronized void put(Settings settings, String paragraph,
+        List<LanguageToolRuleMatch> matches) {
+    this.currentMap.computeIfAbsent(settings.getLanguageToolRuleFingerprint(),
+        (SettingsFingerprint fingerprint) -> new HashMap<>()).put(
+          paragraph, new Entry(settings, matches));
+  }
+
+  /**
+   * Finish the current check. Paragraphs that have not been part of the current check are
+   * discarded.
+   */
+  public synchronized void finishCheck() {
+    this.previousMap = this.currentMap;
+    this.currentMap = new HashMap<>();
+  }
+
+  public synchronized void clear() {
+    this.previousMap.clear();
+    this.currentMap.clear();
+  }
+}
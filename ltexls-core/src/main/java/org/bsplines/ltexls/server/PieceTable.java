@@ -0,0 +1,192 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Text buffer that applies replacements in time proportional to the size of the replacement
+ * instead of the size of the text. The text is stored as a list of pieces, each of which refers
+ * either to the original text or to an append-only buffer containing all inserted text.
+ * The complete text is only materialized when @c toString is called; the result is cached and
+ * becomes the new original text, collapsing all pieces into one.
+ */
+public class PieceTable implements CharSequence {
+  private static final int maxPieceCount = 1024;
+
+  private String originalText;
+  private StringBuilder addedText;
+  private List<Piece> pieces;
+  private int length;
+  private @Nullable String text;
+
+  private int lastPieceIndex;
+  private int lastPieceStartPos;
+
+  private static class Piece {
+    public final boolean isAdded;
+    public final int start;
+    public final int length;
+
+    public Piece(boolean isAdded, int start, int length) {
+      this.isAdded = isAdded;
+      this.start = start;
+      this.length = length;
+    }
+  }
+
+  public PieceTable(String text) {
+    this.originalText = text;
+    this.addedText = new StringBuilder();
+    this.pieces = new ArrayList<>();
+    this.length = text.length();
+    this.text = text;
+    this.lastPieceIndex = 0;
+    this.lastPieceStartPos = 0;
+    if (!text.isEmpty()) this.pieces.add(new Piece(false, 0, text.length()));
+  }
+
+  @Override
+  public int length() {
+    return this.length;
+  }
+
+  @Override
+  public char charAt(int pos) {
+    if (this.text != null) return this.text.charAt(pos);
+
+    if ((pos < 0) || (pos >= this.length)) {
+      throw new IndexOutOfBoundsException("index " + pos + " out of bounds for length "
+          + this.length);
+    }
+
+    int pieceIndex = findPiece(pos);
+    Piece piece = this.pieces.get(pieceIndex);
+    int offset = piece.start + pos - this.lastPieceStartPos;
+    return (piece.isAdded ? this.addedText.charAt(offset) : this.originalText.charAt(offset));
+  }
+
+  @Override
+  public CharSequence subSequence(int fromPos, int toPos) {
+    return toString().substring(fromPos, toPos);
+  }
+
+  @Override
+  public String toString() {
+    if (this.text != null) return this.text;
+    StringBuilder builder = new StringBuilder(this.length);
+
+    for (Piece piece : this.pieces) {
+      if (piece.isAdded) {
+        builder.append(this.addedText, piece.start, piece.start + piece.length);
+      } else {
+        builder.append(this.originalText, piece.start, piece.start + piece.length);
+      }
+    }
+
+    String text = builder.toString();
+    reset(text);
+    return text;
+  }
+
+  private void reset(String text) {
+    this.originalText = text;
+    this.addedText.setLength(0);
+    this.pieces.clear();
+    if (!text.isEmpty()) this.pieces.add(new Piece(false, 0, text.length()));
+    this.length = text.length();
+    this.text = text;
+    this.lastPieceIndex = 0;
+    this.lastPieceStartPos = 0;
+  }
+
+  /**
+   * Find the index of the piece that contains a position. Searches starting from the
+   * piece that was found last, as accesses are usually local. After the call,
+   * @c lastPieceIndex and @c lastPieceStartPos refer to the found piece.
+   *
+   * @param pos position with <code>0 &lt;= pos &lt; length()</code>
+   * @return index of the piece containing @p pos
+   */
+  private int findPiece(int pos) {
+    int pieceIndex = this.lastPieceIndex;
+    int pieceStartPos = this.lastPieceStartPos;
+
+    while ((pieceIndex >= this.pieces.size()) || (pos < pieceStartPos)) {
+      pieceIndex--;
+      pieceStartPos -= this.pieces.get(pieceIndex).length;
+    }
+
+    while (pos >= pieceStartPos + this.pieces.get(pieceIndex).length) {
+      pieceStartPos += this.pieces.get(pieceIndex).length;
+      pieceIndex++;
+    }
+
+    this.lastPieceIndex = pieceIndex;
+    this.lastPieceStartPos = pieceStartPos;
+    return pieceIndex;
+  }
+
+  /**
+   * Split the piece containing a position such that a piece starts at the position.
+   *
+   * @param pos position with <code>0 &lt;= pos &lt;= length()</code>
+   * @return index of the piece starting at @p pos (equal to the number of pieces if
+   *     @p pos is equal to @c length())
+   */
+  private int splitAt(int pos) {
+    if (pos >= this.length) return this.pieces.size();
+    int pieceIndex = findPiece(pos);
+    int offset = pos - this.lastPieceStartPos;
+    if (offset == 0) return pieceIndex;
+
+    Piece piece = this.pieces.get(pieceIndex);
+    this.pieces.set(pieceIndex, new Piece(piece.isAdded, piece.start, offset));
+    this.pieces.add(pieceIndex + 1,
+        new Piece(piece.isAdded, piece.start + offset, piece.length - offset));
+    this.lastPieceIndex = pieceIndex + 1;
+    this.lastPieceStartPos = pos;
+
+    return pieceIndex + 1;
+  }
+
+  /**
+   * Replace a range of the text.
+   *
+   * @param fromPos start of the range (inclusive)
+   * @param toPos end of the range (exclusive)
+   * @param replacement text to insert in place of the range
+   */
+  public void replace(int fromPos, int toPos, String replacement) {
+    if ((fromPos < 0) || (toPos > this.length) || (fromPos > toPos)) {
+      throw new IndexOutOfBoundsException("range [" + fromPos + ", " + toPos
+          + ") out of bounds for length " + this.length);
+    }
+
+    if ((fromPos == toPos) && replacement.isEmpty()) return;
+
+    int fromPieceIndex = splitAt(fromPos);
+    int toPieceIndex = splitAt(toPos);
+    this.pieces.subList(fromPieceIndex, toPieceIndex).clear();
+
+    if (!replacement.isEmpty()) {
+      this.pieces.add(fromPieceIndex,
+          new Piece(true, this.addedText.length(), replacement.length()));
+      this.addedText.append(replacement);
+    }
+
+    this.length += replacement.length() - (toPos - fromPos);
+    this.text = null;
+    this.lastPieceIndex = fromPieceIndex;
+    this.lastPieceStartPos = fromPos;
+
+    if (this.pieces.size() > maxPieceCount) toString();
+  }
+}
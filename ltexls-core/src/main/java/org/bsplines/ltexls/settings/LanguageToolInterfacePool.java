@@ -0,0 +1,389 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.settings;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import org.bsplines.ltexls.languagetool.LanguageToolHttpInterface;
+import org.bsplines.ltexls.languagetool.LanguageToolInterface;
+import org.bsplines.ltexls.languagetool.LanguageToolJavaInterface;
+import org.bsplines.ltexls.tools.Tools;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.languagetool.ResultCache;
+
+/**
+ * Pool of LanguageTool instances. As LanguageTool instances are not thread-safe, every thread
+ * that checks text leases its own instance. Instances are shared between settings with the
+ * same fingerprint (i.e., settings that only differ in settings that are not relevant for
+ * LanguageTool). The pool is a concurrent registry that maps fingerprints to instances; leasing
+ * an instance only locks the entry of the fingerprint.
+ *
+ * <p>As every instance needs a considerable amount of memory, the total number of instances is
+ * bounded. If the bound is exceeded, idle instances of the least recently used fingerprints are
+ * evicted. In addition, for every language, only the instances for the most recently used
+ * fingerprint are retained.
+ *
+ * <p>The result caches of LanguageTool (analyzed sentences and matches) are shared by all
+ * instances with the same fingerprint without dictionary, such that they outlive evicted
+ * instances. For example, if the dictionary changes, the new instances reuse the analyzed
+ * sentences, and if a previous dictionary is restored, its matches are still cached. The caches
+ * cannot be shared more widely, as LanguageTool doesn't distinguish between cached matches of
+ * instances with different rules added after construction (e.g., language model rules). The
+ * caches are reference-counted by the entries of the pool, and a cache is dropped when the last
+ * entry using it is removed, such that there is at most one cache per language.
+ */
+public class LanguageToolInterfacePool {
+  public static final int defaultMaxInstanceCount =
+      Math.max(Math.min(Runtime.getRuntime().availableProcessors(), 4), 1);
+  public static final int defaultMaxTotalInstanceCount = 2 * defaultMaxInstanceCount;
+
+  private int maxInstanceCount;
+  private int maxTotalInstanceCount;
+  private ConcurrentHashMap<SettingsFingerprint, Entry> entryMap;
+  private ConcurrentHashMap<String, Settings> languageSettingsMap;
+  private ConcurrentHashMap<LanguageToolInterface, Entry> leasedInstanceMap;
+  private ConcurrentHashMap<SettingsFingerprint, ResultCacheReference> resultCacheMap;
+  private AtomicInteger totalInstanceCount;
+  private AtomicLong hitCount;
+  private AtomicLong missCount;
+  private AtomicLong evictionCount;
+  private Object evictionLock;
+
+  public LanguageToolInterfacePool() {
+    this(defaultMaxInstanceCount, defaultMaxTotalInstanceCount);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxInstanceCount maximum number of LanguageTool instances per fingerprint
+   * @param maxTotalInstanceCount maximum number of LanguageTool instances in total; if
+   *     exceeded, idle instances are evicted (instances that are currently leased are never
+   *     evicted, so the bound may be exceeded temporarily)
+   */
+  public LanguageToolInterfacePool(int maxInstanceCount, int maxTotalInstanceCount) {
+    this.maxInstanceCount = maxInstanceCount;
+    this.maxTotalInstanceCount = maxTotalInstanceCount;
+    this.entryMap = new ConcurrentHashMap<>();
+    this.languageSettingsMap = new ConcurrentHashMap<>();
+    this.leasedInstanceMap = new ConcurrentHashMap<>();
+    this.resultCacheMap = new ConcurrentHashMap<>();
+    this.totalInstanceCount = new AtomicInteger();
+    this.hitCount = new AtomicLong();
+    this.missCount = new AtomicLong();
+    this.evictionCount = new AtomicLong();
+    this.evictionLock = new Object();
+  }
+
+  private static class Entry {
+    private SettingsFingerprint fingerprint;
+    private SettingsFingerprint ruleFingerprint;
+    private Deque<LanguageToolInterface> idleInstances;
+    private int instanceCount;
+    private long lastLeaseTime;
+    private boolean isReady;
+    private boolean isRemoved;
+
+    public Entry(SettingsFingerprint fingerprint, SettingsFingerprint ruleFingerprint) {
+      this.fingerprint = fingerprint;
+      this.ruleFingerprint = ruleFingerprint;
+      this.idleInstances = new ArrayDeque<>();
+      this.instanceCount = 0;
+      this.lastLeaseTime = System.nanoTime();
+      this.isReady = true;
+      this.isRemoved = false;
+    }
+  }
+
+  private static class ResultCacheReference {
+    private ResultCache resultCache;
+    private int referenceCount;
+
+    public ResultCacheReference(int sentenceCacheSize) {
+      this.resultCache = new ResultCache(sentenceCacheSize,
+          LanguageToolJavaInterface.resultCacheExpireAfterMinutes, TimeUnit.MINUTES);
+      this.referenceCount = 1;
+    }
+  }
+
+  private @Nullable LanguageToolInterface createLanguageToolInterface(Settings settings) {
+    LanguageToolInterface languageToolInterface;
+
+    if (settings.getLanguageToolHttpServerUri().isEmpty()) {
+      @Nullable ResultCacheReference resultCacheReference =
+          this.resultCacheMap.get(settings.getLanguageToolRuleFingerprint());
+      // the entry may have been removed in the meantime, then the cache is not shared
+      ResultCache resultCache = ((resultCacheReference != null)
+          ? resultCacheReference.resultCache
+          : new ResultCacheReference(settings.getSentenceCacheSize()).resultCache);
+      languageToolInterface = new LanguageToolJavaInterface(
+          settings.getLanguageShortCode(), settings.getMotherTongueShortCode(), resultCache,
+          settings.getDictionary());
+    } else {
+      languageToolInterface = new LanguageToolHttpInterface(
+          settings.getLanguageToolHttpServerUri(), settings.getLanguageShortCode(),
+          settings.getMotherTongueShortCode());
+    }
+
+    if (!languageToolInterface.isReady()) return null;
+
+    if (!settings.getLanguageModelRulesDirectory().isEmpty()) {
+      languageToolInterface.activateLanguageModelRules(
+          settings.getLanguageModelRulesDirectory());
+    } else {
+      if (!settings.getMotherTongueShortCode().isEmpty()) {
+        languageToolInterface.activateDefaultFalseFriendRules();
+      }
+    }
+
+    if (!settings.getNeuralNetworkModelRulesDirectory().isEmpty()) {
+      languageToolInterface.activateNeuralNetworkRules(
+          settings.getNeuralNetworkModelRulesDirectory());
+    }
+
+    if (!settings.getWord2VecModelRulesDirectory().isEmpty()) {
+      languageToolInterface.activateWord2VecModelRules(
+          settings.getWord2VecModelRulesDirectory());
+    }
+
+    languageToolInterface.enableRules(settings.getEnabledRules());
+    languageToolInterface.disableRules(settings.getDisabledRules());
+
+    return languageToolInterface;
+  }
+
+  private Entry getEntry(Settings settings) {
+    SettingsFingerprint fingerprint = settings.getLanguageToolFingerprint();
+    @Nullable Entry entry = this.entryMap.get(fingerprint);
+    if (entry != null) return entry;
+
+    Entry newEntry = new Entry(fingerprint, settings.getLanguageToolRuleFingerprint());
+    entry = this.entryMap.putIfAbsent(fingerprint, newEntry);
+    if (entry != null) return entry;
+
+    this.resultCacheMap.compute(newEntry.ruleFingerprint,
+        (SettingsFingerprint ruleFingerprint, @Nullable ResultCacheReference reference) -> {
+          if (reference == null) return new ResultCacheReference(settings.getSentenceCacheSize());
+          reference.referenceCount++;
+          return reference;
+        });
+
+    String language = fingerprint.getLanguageShortCode();
+    @Nullable Settings oldSettings = this.languageSettingsMap.put(language, settings);
+
+    if (Tools.logger.isLoggable(Level.FINE)) {
+      logDifferentSettings(language, settings.getDifferencesRelevantForLanguageTool(oldSettings));
+    }
+
+    if (oldSettings != null) {
+      SettingsFingerprint oldFingerprint = oldSettings.getLanguageToolFingerprint();
+
+      if (!oldFingerprint.equals(fingerprint)) {
+        @Nullable Entry oldEntry = this.entryMap.remove(oldFingerprint);
+        if (oldEntry != null) removeEntry(oldEntry);
+      }
+    }
+
+    return newEntry;
+  }
+
+  // returning null from the remapping function removes the cache from the map
+  @SuppressWarnings("return.type.incompatible")
+  private void releaseResultCache(SettingsFingerprint ruleFingerprint) {
+    this.resultCacheMap.computeIfPresent(ruleFingerprint,
+        (SettingsFingerprint fingerprint, ResultCacheReference reference) -> {
+          reference.referenceCount--;
+          return ((reference.referenceCount > 0) ? reference : null);
+        });
+  }
+
+  private void removeEntry(Entry entry) {
+    releaseResultCache(entry.ruleFingerprint);
+
+    synchronized (entry) {
+      entry.isRemoved = true;
+      int idleInstanceCount = entry.idleInstances.size();
+      entry.idleInstances.clear();
+      entry.instanceCount -= idleInstanceCount;
+      this.totalInstanceCount.addAndGet(-idleInstanceCount);
+      this.evictionCount.addAndGet(idleInstanceCount);
+      // threads waiting for instances of the removed entry have to re-evaluate
+      entry.notifyAll();
+    }
+  }
+
+  /**
+   * Lease a LanguageTool instance. If all instances for the fingerprint of the settings are
+   * leased and the maximum number of instances has been reached, wait until an instance is
+   * released. The instance has to be released with @c release() after use.
+   *
+   * @param settings settings for the LanguageTool instance
+   * @return LanguageTool instance, or @c null if LanguageTool could not be initialized
+   */
+  public @Nullable LanguageToolInterface lease(Settings settings) {
+    while (true) {
+      Entry entry = getEntry(settings);
+
+      synchronized (entry) {
+        while (!entry.isRemoved && entry.isReady && entry.idleInstances.isEmpty()
+              && (entry.instanceCount >= this.maxInstanceCount)) {
+          try {
+            entry.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+          }
+        }
+
+        if (entry.isRemoved) continue;
+        if (!entry.isReady) return null;
+        entry.lastLeaseTime = System.nanoTime();
+        @Nullable LanguageToolInterface languageToolInterface = entry.idleInstances.pollFirst();
+
+        if (languageToolInterface != null) {
+          this.hitCount.incrementAndGet();
+          this.leasedInstanceMap.put(languageToolInterface, entry);
+          return languageToolInterface;
+        }
+
+        entry.instanceCount++;
+      }
+
+      this.missCount.incrementAndGet();
+      this.totalInstanceCount.incrementAndGet();
+      evictIdleInstances();
+
+      // creating an instance takes a while, therefore, this is not done while holding the lock
+      @Nullable LanguageToolInterface languageToolInterface =
+          createLanguageToolInterface(settings);
+
+      if (languageToolInterface == null) {
+        synchronized (entry) {
+          entry.isReady = false;
+          entry.instanceCount--;
+          this.totalInstanceCount.decrementAndGet();
+          entry.notifyAll();
+        }
+      } else {
+        this.leasedInstanceMap.put(languageToolInterface, entry);
+      }
+
+      return languageToolInterface;
+    }
+  }
+
+  /**
+   * Release a LanguageTool instance that has been leased with @c lease(). If the fingerprint of
+   * the settings used for leasing is not used anymore, the instance is discarded.
+   *
+   * @param languageToolInterface LanguageTool instance to release
+   */
+  public void release(LanguageToolInterface languageToolInterface) {
+    @Nullable Entry entry = this.leasedInstanceMap.remove(languageToolInterface);
+    if (entry == null) return;
+
+    synchronized (entry) {
+      if (entry.isRemoved) {
+        entry.instanceCount--;
+        this.totalInstanceCount.decrementAndGet();
+        this.evictionCount.incrementAndGet();
+      } else {
+        entry.idleInstances.addFirst(languageToolInterface);
+      }
+
+      entry.notifyAll();
+    }
+
+    evictIdleInstances();
+  }
+
+  private void evictIdleInstances() {
+    synchronized (this.evictionLock) {
+      while (this.totalInstanceCount.get() > this.maxTotalInstanceCount) {
+        @Nullable Entry leastRecentlyUsedEntry = null;
+
+        for (Entry entry : this.entryMap.values()) {
+          synchronized (entry) {
+            if (!entry.idleInstances.isEmpty() && ((leastRecentlyUsedEntry == null)
+                  || (entry.lastLeaseTime - leastRecentlyUsedEntry.lastLeaseTime < 0))) {
+              leastRecentlyUsedEntry = entry;
+            }
+          }
+        }
+
+        // all instances are leased, they will be evicted when they are released
+        if (leastRecentlyUsedEntry == null) return;
+
+        synchronized (leastRecentlyUsedEntry) {
+          if (leastRecentlyUsedEntry.idleInstances.pollLast() == null) continue;
+          leastRecentlyUsedEntry.instanceCount--;
+          this.totalInstanceCount.decrementAndGet();
+          this.evictionCount.incrementAndGet();
+          leastRecentlyUsedEntry.notifyAll();
+        }
+
+        Tools.logger.fine(Tools.i18n("evictingIdleLanguageToolInstance",
+            leastRecentlyUsedEntry.fingerprint.getLanguageShortCode(), this.hitCount.get(),
+            this.missCount.get(), this.evictionCount.get()));
+      }
+    }
+  }
+
+  public int getInstanceCount() {
+    return this.totalInstanceCount.get();
+  }
+
+  public long getHitCount() {
+    return this.hitCount.get();
+  }
+
+  public long getMissCount() {
+    return this.missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return this.evictionCount.get();
+  }
+
+  public int getResultCacheCount() {
+    return this.resultCacheMap.size();
+  }
+
+  @Nullable ResultCache getResultCache(Settings settings) {
+    @Nullable ResultCacheReference resultCacheReference =
+        this.resultCacheMap.get(settings.getLanguageToolRuleFingerprint());
+    return ((resultCacheReference != null) ? resultCacheReference.resultCache : null);
+  }
+
+  private static void logDifferentSettings(String newLanguage,
+        Set<SettingsDifference> settingsDifferencesRelevantForLanguageTool) {
+    Set<SettingsDifference> differences = new HashSet<>(settingsDifferencesRelevantForLanguageTool);
+    StringBuilder differencesStringBuilder = new StringBuilder();
+
+    for (SettingsDifference difference : differences) {
+      if (differencesStringBuilder.length() > 0) differencesStringBuilder.append("; ");
+      differencesStringBuilder.append("setting '");
+      differencesStringBuilder.append(difference.getName());
+      differencesStringBuilder.append("', old '");
+      differencesStringBuilder.append(difference.getOtherValue());
+      differencesStringBuilder.append("', new '");
+      differencesStringBuilder.append(difference.getValue());
+      differencesStringBuilder.append("'");
+    }
+
+    Tools.logger.fine(Tools.i18n("reinitializingLanguageToolDueToDifferentSettings",
+        newLanguage, differencesStringBuilder.toString()));
+  }
+}
@@ -19,9 +19,14 @@ import java.util.Set;
 import java.util.logging.Level;
 import org.bsplines.ltexls.tools.Tools;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.lsp4j.DiagnosticSeverity;
 
+/**
+ * Settings of LTeX. Settings are immutable; the @c with... methods return modified copies.
+ * Therefore, a settings object can be used as a snapshot that is shared between threads.
+ */
 public class Settings {
   private static final Set<String> defaultEnabled =
       new HashSet<>(Arrays.asList("markdown", "latex", "rsweave"));
@@ -45,6 +50,11 @@ public class Settings {
   private @Nullable DiagnosticSeverity diagnosticSeverity = null;
   private @Nullable CheckFrequency checkFrequency = null;
   private @Nullable Boolean clearDiagnosticsWhenClosingFile = null;
+  private @Nullable Integer checkDelay = null;
+
+  private @MonotonicNonNull SettingsFingerprint languageToolFingerprint = null;
+  private @MonotonicNonNull SettingsFingerprint languageToolRuleFingerprint = null;
+  private @Nullable Set<String> ignoredLatexCommandPrototypes = null;
 
   public Settings() {
   }
@@ -55,7 +65,7 @@ public class Settings {
    * @param obj object to copy
    */
   public Settings(Settings obj) {
-    this.enabled = obj.enabled;
+    this.enabled = ((obj.enabled == null) ? null : new HashSet<>(obj.enabled));
     this.languageShortCode = obj.languageShortCode;
     this.dictionary = ((obj.dictionary == null) ? null : copyMapOfSets(obj.dictionary));
     this.disabledRules = ((obj.disabledRules == null) ? null : copyMapOfSets(obj.disabledRules));
@@ -79,6 +89,8 @@ public class Settings {
     this.checkFrequency = ((obj.checkFrequency == null) ? null : obj.checkFrequency);
     this.clearDiagnosticsWhenClosingFile = ((obj.clearDiagnosticsWhenClosingFile == null) ? null
         : obj.clearDiagnosticsWhenClosingFile);
+    this.checkDelay = obj.checkDelay;
+    this.ignoredLatexCommandPrototypes = obj.ignoredLatexCommandPrototypes;
   }
 
   public Settings(JsonElement jsonSettings, JsonElement jsonWorkspaceSpecificSettings) {
@@ -428,6 +440,12 @@ public class Settings {
     } catch (NullPointerException | UnsupportedOperationException | IllegalStateException e) {
       this.clearDiagnosticsWhenClosingFile = null;
     }
+
+    try {
+      this.checkDelay = getSettingFromJson(jsonSettings, "checkDelay").getAsInt();
+    } catch (NullPointerException | UnsupportedOperationException | IllegalStateException e) {
+      this.checkDelay = null;
+    }
   }
 
   @Override
@@ -529,9 +547,49 @@ public class Settings {
       return false;
     }
 
+    if ((this.checkDelay == null) ? (other.checkDelay != null) :
+          !this.checkDelay.equals(other.checkDelay)) {
+      return false;
+    }
+
     return true;
   }
 
+  /**
+   * Get the fingerprint of the settings that are relevant for LanguageTool. As settings are
+   * immutable, the fingerprint is only computed once.
+   *
+   * @return fingerprint
+   */
+  public SettingsFingerprint getLanguageToolFingerprint() {
+    @Nullable SettingsFingerprint languageToolFingerprint = this.languageToolFingerprint;
+
+    if (languageToolFingerprint == null) {
+      languageToolFingerprint = new SettingsFingerprint(this, true);
+      this.languageToolFingerprint = languageToolFingerprint;
+    }
+
+    return languageToolFingerprint;
+  }
+
+  /**
+   * Get the fingerprint of the settings that are relevant for LanguageTool, excluding the
+   * dictionary. Settings with equal fingerprints of this kind only differ in the matches of
+   * spelling rules.
+   *
+   * @return fingerprint without dictionary
+   */
+  public SettingsFingerprint getLanguageToolRuleFingerprint() {
+    @Nullable SettingsFingerprint languageToolRuleFingerprint = this.languageToolRuleFingerprint;
+
+    if (languageToolRuleFingerprint == null) {
+      languageToolRuleFingerprint = new SettingsFingerprint(this, false);
+      this.languageToolRuleFingerprint = languageToolRuleFingerprint;
+    }
+
+    return languageToolRuleFingerprint;
+  }
+
   public Set<SettingsDifference> getDifferencesRelevantForLanguageTool(@Nullable Settings other) {
     Set<SettingsDifference> differences = new HashSet<>();
 
@@ -624,6 +682,7 @@ public class Settings {
     hash = 53 * hash + ((this.checkFrequency != null) ? this.checkFrequency.hashCode() : 0);
     hash = 53 * hash + ((this.clearDiagnosticsWhenClosingFile != null)
         ? this.clearDiagnosticsWhenClosingFile.hashCode() : 0);
+    hash = 53 * hash + ((this.checkDelay != null) ? this.checkDelay.hashCode() : 0);
 
     return hash;
   }
@@ -638,7 +697,7 @@ public class Settings {
   }
 
   public Set<String> getEnabled() {
-    return getDefault(this.enabled, defaultEnabled);
+    return Collections.unmodifiableSet(getDefault(this.enabled, defaultEnabled));
   }
 
   public String getLanguageShortCode() {
@@ -670,6 +729,30 @@ public class Settings {
         getDefault(this.latexCommands, Collections.emptyMap()));
   }
 
+  /**
+   * Get the prototypes of the LaTeX commands whose action is "ignore". As settings are
+   * immutable, the set is only computed once, and it is shared with copies of the settings
+   * that have the same LaTeX commands.
+   *
+   * @return unmodifiable set of command prototypes
+   */
+  public Set<String> getIgnoredLatexCommandPrototypes() {
+    @Nullable Set<String> ignoredLatexCommandPrototypes = this.ignoredLatexCommandPrototypes;
+
+    if (ignoredLatexCommandPrototypes == null) {
+      Set<String> set = new HashSet<>();
+
+      for (Map.Entry<String, String> entry : getLatexCommands().entrySet()) {
+        if (entry.getValue().equals("ignore")) set.add(entry.getKey());
+      }
+
+      ignoredLatexCommandPrototypes = Collections.unmodifiableSet(set);
+      this.ignoredLatexCommandPrototypes = ignoredLatexCommandPrototypes;
+    }
+
+    return ignoredLatexCommandPrototypes;
+  }
+
   public Map<String, String> getLatexEnvironments() {
     return Collections.unmodifiableMap(
         getDefault(this.latexEnvironments, Collections.emptyMap()));
@@ -720,9 +803,13 @@ public class Settings {
     return getDefault(this.clearDiagnosticsWhenClosingFile, true);
   }
 
+  public Integer getCheckDelay() {
+    return getDefault(this.checkDelay, 250);
+  }
+
   public Settings withEnabled(Set<String> enabled) {
     Settings obj = new Settings(this);
-    obj.enabled = enabled;
+    obj.enabled = new HashSet<>(enabled);
     return obj;
   }
 
@@ -767,6 +854,7 @@ public class Settings {
   public Settings withLatexCommands(Map<String, String> latexCommands) {
     Settings obj = new Settings(this);
     obj.latexCommands = new HashMap<>(latexCommands);
+    obj.ignoredLatexCommandPrototypes = null;
     return obj;
   }
 
@@ -841,4 +929,10 @@ public class Settings {
     obj.clearDiagnosticsWhenClosingFile = clearDiagnosticsWhenClosingFile;
     return obj;
   }
+
+  public Settings withCheckDelay(Integer checkDelay) {
+    Settings obj = new Settings(this);
+    obj.checkDelay = checkDelay;
+    return obj;
+  }
 }
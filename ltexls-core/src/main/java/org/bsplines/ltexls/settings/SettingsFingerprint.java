@@ -0,0 +1,66 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.settings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Fingerprint of the settings that are relevant for LanguageTool. Two settings with equal
+ * fingerprints can use the same LanguageTool instance and yield the same matches for the same
+ * plain text. The hash code is precomputed, such that fingerprints can be used as keys of hash
+ * maps at low cost.
+ *
+ * <p>Fingerprints can also exclude the dictionary. Settings with equal fingerprints of this kind
+ * yield the same matches except for matches of spelling rules.
+ */
+public final class SettingsFingerprint {
+  private final List<Object> components;
+  private final int hashCode;
+
+  SettingsFingerprint(Settings settings, boolean includeDictionary) {
+    this.components = Collections.unmodifiableList(Arrays.asList(
+        settings.getLanguageShortCode(),
+        // the dictionary entry "BsPlInEs" enables additional rules
+        (includeDictionary ? settings.getDictionary()
+          : settings.getDictionary().contains("BsPlInEs")),
+        settings.getDisabledRules(),
+        settings.getEnabledRules(),
+        settings.getMotherTongueShortCode(),
+        settings.getLanguageModelRulesDirectory(),
+        settings.getNeuralNetworkModelRulesDirectory(),
+        settings.getWord2VecModelRulesDirectory(),
+        settings.getLanguageToolHttpServerUri(),
+        settings.getSentenceCacheSize()));
+    this.hashCode = this.components.hashCode();
+  }
+
+  public String getLanguageShortCode() {
+    return (String)this.components.get(0);
+  }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) return true;
+    if ((obj == null) || !SettingsFingerprint.class.isAssignableFrom(obj.getClass())) return false;
+    SettingsFingerprint other = (SettingsFingerprint)obj;
+    return ((this.hashCode == other.hashCode) && this.components.equals(other.components));
+  }
+
+  @Override
+  public int hashCode() {
+    return this.hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return this.components.toString();
+  }
+}
@@ -8,91 +8,52 @@
 package org.bsplines.ltexls.settings;
 
 import com.google.gson.JsonElement;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.logging.Level;
-import org.bsplines.ltexls.languagetool.LanguageToolHttpInterface;
-import org.bsplines.ltexls.languagetool.LanguageToolInterface;
-import org.bsplines.ltexls.languagetool.LanguageToolJavaInterface;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.bsplines.ltexls.tools.Tools;
-import org.checkerframework.checker.initialization.qual.UnknownInitialization;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.checkerframework.checker.nullness.qual.RequiresNonNull;
+import org.eclipse.xtext.xbase.lib.Pair;
 
 public class SettingsManager {
-  private HashMap<String, Settings> settingsMap;
-  private HashMap<String, @Nullable LanguageToolInterface> languageToolInterfaceMap;
+  private static final int maxJsonSettingsCacheSize = 16;
 
-  private Settings settings;
-  private @Nullable LanguageToolInterface languageToolInterface;
+  private volatile Settings settings;
+  private LanguageToolInterfacePool languageToolInterfacePool;
+  private ConcurrentHashMap<String, Settings> scopeSettingsMap;
+  private AtomicInteger scopeSettingsGeneration;
+  private Map<Pair<JsonElement, JsonElement>, Settings> jsonSettingsMap;
 
   public SettingsManager() {
     this(new Settings());
   }
 
   public SettingsManager(Settings settings) {
-    this.settings = settings;
-    reinitializeLanguageToolInterface();
-    String language = this.settings.getLanguageShortCode();
-    this.settingsMap = new HashMap<>();
-    this.settingsMap.put(language, this.settings);
-    this.languageToolInterfaceMap = new HashMap<>();
-    this.languageToolInterfaceMap.put(language, this.languageToolInterface);
-    Tools.setLogLevel(settings.getLogLevel());
+    this(settings, new LanguageToolInterfacePool());
   }
 
-  @RequiresNonNull({"settings"})
-  private void reinitializeLanguageToolInterface(
-        @UnknownInitialization(Object.class) SettingsManager this) {
-    if (this.settings.getLanguageToolHttpServerUri().isEmpty()) {
-      this.languageToolInterface = new LanguageToolJavaInterface(
-          this.settings.getLanguageShortCode(),
-          this.settings.getMotherTongueShortCode(), this.settings.getSentenceCacheSize(),
-          this.settings.getDictionary());
-    } else {
-      this.languageToolInterface = new LanguageToolHttpInterface(
-          this.settings.getLanguageToolHttpServerUri(), this.settings.getLanguageShortCode(),
-          this.settings.getMotherTongueShortCode());
-    }
-
-    if (!this.languageToolInterface.isReady()) {
-      this.languageToolInterface = null;
-      return;
-    }
-
-    // fixes false-positive dereference.of.nullable warnings
-    LanguageToolInterface languageToolInterface = this.languageToolInterface;
-
-    if (!this.settings.getLanguageModelRulesDirectory().isEmpty()) {
-      languageToolInterface.activateLanguageModelRules(
-          this.settings.getLanguageModelRulesDirectory());
-    } else {
-      if (!this.settings.getMotherTongueShortCode().isEmpty()) {
-        languageToolInterface.activateDefaultFalseFriendRules();
-      }
-    }
-
-    if (!this.settings.getNeuralNetworkModelRulesDirectory().isEmpty()) {
-      languageToolInterface.activateNeuralNetworkRules(
-          this.settings.getNeuralNetworkModelRulesDirectory());
-    }
-
-    if (!this.settings.getWord2VecModelRulesDirectory().isEmpty()) {
-      languageToolInterface.activateWord2VecModelRules(
-          this.settings.getWord2VecModelRulesDirectory());
-    }
-
-    languageToolInterface.enableRules(this.settings.getEnabledRules());
-    languageToolInterface.disableRules(this.settings.getDisabledRules());
+  /**
+   * Constructor.
+   *
+   * @param settings initial settings
+   * @param languageToolInterfacePool pool of LanguageTool instances
+   */
+  public SettingsManager(Settings settings, LanguageToolInterfacePool languageToolInterfacePool) {
+    this.settings = settings;
+    this.languageToolInterfacePool = languageToolInterfacePool;
+    this.scopeSettingsMap = new ConcurrentHashMap<>();
+    this.scopeSettingsGeneration = new AtomicInteger();
+    this.jsonSettingsMap = new LinkedHashMap<>(maxJsonSettingsCacheSize, 0.75f, true);
+    Tools.setLogLevel(settings.getLogLevel());
   }
 
   public Settings getSettings() {
     return this.settings;
   }
 
-  public @Nullable LanguageToolInterface getLanguageToolInterface() {
-    return this.languageToolInterface;
+  public LanguageToolInterfacePool getLanguageToolInterfacePool() {
+    return this.languageToolInterfacePool;
   }
 
   public void setSettings(JsonElement newJsonSettings,
@@ -102,55 +63,99 @@ public class SettingsManager {
   }
 
   /**
-   * Set settings with a @c Settings object. Reinitialize the LanguageTool interface if necessary.
+   * Set settings with a @c Settings object. LanguageTool instances for the new settings are
+   * created by the pool of LanguageTool instances when needed.
    *
    * @param newSettings new settings to use
    */
   public void setSettings(Settings newSettings) {
-    String newLanguage = newSettings.getLanguageShortCode();
+    this.settings = newSettings;
+    Tools.setLogLevel(newSettings.getLogLevel());
+  }
+
+  /**
+   * Get the settings that have been resolved for a scope URI with @c resolveScopeSettings().
+   *
+   * @param scopeUri scope URI (usually the URI of a document)
+   * @return cached settings, or @c null if the settings for the scope URI have not been resolved
+   *     since the last invalidation
+   */
+  public @Nullable Settings getScopeSettings(String scopeUri) {
+    return this.scopeSettingsMap.get(scopeUri);
+  }
+
+  /**
+   * Get the current generation of the cache of scope settings. The generation has to be
+   * obtained before requesting the configuration from the client and passed to
+   * <code>resolveScopeSettings()</code>, such that configurations that have been requested
+   * before an invalidation are not cached.
+   *
+   * @return current generation
+   */
+  public int getScopeSettingsGeneration() {
+    return this.scopeSettingsGeneration.get();
+  }
 
-    final @Nullable Settings oldSettings = this.settingsMap.get(newLanguage);
+  /**
+   * Convert the configuration sent by the client to a @c Settings object and cache it for the
+   * scope URI. The conversion is memoized, as the client usually sends the same configuration
+   * for all documents.
+   *
+   * @param scopeUri scope URI (usually the URI of a document)
+   * @param generation generation of the cache of scope settings when the configuration has
+   *     been requested
+   * @param jsonSettings JSON settings sent by the client
+   * @param jsonWorkspaceSpecificSettings JSON workspace-specific settings sent by the client
+   * @return settings for the scope URI
+   */
+  public Settings resolveScopeSettings(String scopeUri, int generation, JsonElement jsonSettings,
+        JsonElement jsonWorkspaceSpecificSettings) {
+    Pair<JsonElement, JsonElement> key = Pair.of(jsonSettings, jsonWorkspaceSpecificSettings);
+    @Nullable Settings scopeSettings;
 
-    setSettings(newLanguage, newSettings);
+    synchronized (this.jsonSettingsMap) {
+      scopeSettings = this.jsonSettingsMap.get(key);
 
-    Set<SettingsDifference> settingsDifferencesRelevantForLanguageTool =
-        newSettings.getDifferencesRelevantForLanguageTool(oldSettings);
+      if (scopeSettings == null) {
+        scopeSettings = new Settings(jsonSettings, jsonWorkspaceSpecificSettings);
+        this.jsonSettingsMap.put(key, scopeSettings);
 
-    if (settingsDifferencesRelevantForLanguageTool.isEmpty()) {
-      this.languageToolInterface = this.languageToolInterfaceMap.get(newLanguage);
-    } else {
-      if (Tools.logger.isLoggable(Level.FINE)) {
-        logDifferentSettings(newLanguage, settingsDifferencesRelevantForLanguageTool);
+        if (this.jsonSettingsMap.size() > maxJsonSettingsCacheSize) {
+          this.jsonSettingsMap.remove(this.jsonSettingsMap.keySet().iterator().next());
+        }
       }
+    }
 
-      reinitializeLanguageToolInterface();
-      this.languageToolInterfaceMap.put(newLanguage, this.languageToolInterface);
+    if (generation == this.scopeSettingsGeneration.get()) {
+      this.scopeSettingsMap.put(scopeUri, scopeSettings);
+
+      // the cache might have been invalidated in the meantime
+      if (generation != this.scopeSettingsGeneration.get()) {
+        this.scopeSettingsMap.remove(scopeUri, scopeSettings);
+      }
     }
-  }
 
-  private void setSettings(String newLanguage, Settings newSettings) {
-    this.settings = newSettings;
-    this.settingsMap.put(newLanguage, this.settings);
-    Tools.setLogLevel(this.settings.getLogLevel());
+    return scopeSettings;
   }
 
-  private static void logDifferentSettings(String newLanguage,
-        Set<SettingsDifference> settingsDifferencesRelevantForLanguageTool) {
-    Set<SettingsDifference> differences = new HashSet<>(settingsDifferencesRelevantForLanguageTool);
-    StringBuilder differencesStringBuilder = new StringBuilder();
-
-    for (SettingsDifference difference : differences) {
-      if (differencesStringBuilder.length() > 0) differencesStringBuilder.append("; ");
-      differencesStringBuilder.append("setting '");
-      differencesStringBuilder.append(difference.getName());
-      differencesStringBuilder.append("', old '");
-      differencesStringBuilder.append(difference.getOtherValue());
-      differencesStringBuilder.append("', new '");
-      differencesStringBuilder.append(difference.getValue());
-      differencesStringBuilder.append("'");
-    }
+  /**
+   * Remove the settings of a scope URI, e.g., because the document has been closed. The
+   * generation is incremented as well, such that configurations that are still being requested
+   * for the scope URI are not cached anymore.
+   *
+   * @param scopeUri scope URI (usually the URI of a document)
+   */
+  public void removeScopeSettings(String scopeUri) {
+    this.scopeSettingsGeneration.incrementAndGet();
+    this.scopeSettingsMap.remove(scopeUri);
+  }
 
-    Tools.logger.fine(Tools.i18n("reinitializingLanguageToolDueToDifferentSettings",
-        newLanguage, differencesStringBuilder.toString()));
+  /**
+   * Invalidate the settings of all scope URIs, e.g., because the configuration of the client
+   * has changed.
+   */
+  public void invalidateScopeSettings() {
+    this.scopeSettingsGeneration.incrementAndGet();
+    this.scopeSettingsMap.clear();
   }
 }
@@ -65,7 +65,8 @@ public class LanguageToolHttpInterfaceTest {
   @Test
   public void testOtherMethods() {
     SettingsManager settingsManager = new SettingsManager(this.defaultSettings);
-    LanguageToolInterface ltInterface = settingsManager.getLanguageToolInterface();
+    LanguageToolInterface ltInterface = settingsManager.getLanguageToolInterfacePool().lease(
+        settingsManager.getSettings());
     Assertions.assertNotNull(NullnessUtil.castNonNull(ltInterface));
     Assertions.assertDoesNotThrow(() -> ltInterface.activateDefaultFalseFriendRules());
     Assertions.assertDoesNotThrow(() -> ltInterface.activateLanguageModelRules("foobar"));
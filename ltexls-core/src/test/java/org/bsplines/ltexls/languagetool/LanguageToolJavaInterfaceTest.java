@@ -81,7 +81,8 @@ public class LanguageToolJavaInterfaceTest {
   @Test
   public void testOtherMethods() {
     SettingsManager settingsManager = new SettingsManager();
-    LanguageToolInterface ltInterface = settingsManager.getLanguageToolInterface();
+    LanguageToolInterface ltInterface = settingsManager.getLanguageToolInterfacePool().lease(
+        settingsManager.getSettings());
     Assertions.assertNotNull(NullnessUtil.castNonNull(ltInterface));
     Assertions.assertDoesNotThrow(() -> ltInterface.activateDefaultFalseFriendRules());
     Assertions.assertDoesNotThrow(() -> ltInterface.activateLanguageModelRules("foobar"));
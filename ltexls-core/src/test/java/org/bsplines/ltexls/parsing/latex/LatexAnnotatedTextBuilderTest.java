@@ -238,6 +238,10 @@ public class LatexAnnotatedTextBuilderTest {
         "This is a test: $a, b, \\dots, c$.\n"
         + "Second sentence: a, b, $\\dots$, c.\n",
         "This is a test: Ina0. Second sentence: a, b, Dummy1, c. ");
+    assertPlainText(
+        "This is a test: $a$ and $b$.\n\n"
+        + "This is another paragraph: $c$.\n",
+        "This is a test: Ina0 and Dummy1.\n\nThis is another paragraph: Dummy0. ");
     assertPlainText(
         "C'est un test: $E = mc^2$.\n",
         "C'est un test: Jimmy-0. ",
@@ -0,0 +1,95 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LatexBraceMatchingTableTest {
+  private static List<String> createCodes() {
+    List<String> codes = new ArrayList<>(Arrays.asList(
+        "\\textbf{a {b} [c] (d)} \\cite[p.~42]{knuth} \\frac{n(n+1)}{2}",
+        "{a]} [a}] {[}] [{]} {unclosed [unclosed (unclosed",
+        "(a (b) c) (a {b) c} d) (a [b] c) (a } b) (a ] b) ((a)",
+        "\\{a} {\\}} [\\]] (\\)) \\\\{a} {a\\\\} {a\\",
+        "{a % comment }\n} [a % comment ]\n]"));
+    Random random = new Random(42);
+    String alphabet = "{}[]()\\ a";
+
+    for (int i = 0; i < 1000; i++) {
+      StringBuilder builder = new StringBuilder();
+
+      for (int j = random.nextInt(20); j > 0; j--) {
+        builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+
+      codes.add(builder.toString());
+    }
+
+    return codes;
+  }
+
+  @Test
+  public void testGetClosingPosition() {
+    for (String code : createCodes()) {
+      LatexBraceMatchingTable table = new LatexBraceMatchingTable(code);
+
+      for (int pos = 0; pos < code.length(); pos++) {
+        char ch = code.charAt(pos);
+        if ((ch != '{') && (ch != '[') && (ch != '(')) continue;
+        Assertions.assertEquals(LatexBraceMatchingTable.findClosingPosition(code, pos),
+            table.getClosingPosition(code, pos), "code = \"" + code + "\", pos = " + pos);
+      }
+    }
+  }
+
+  @Test
+  public void testMatchArgumentFromPosition() {
+    String code = "\\foo{a{b}c}[d](e(f)g";
+    Assertions.assertEquals("{a{b}c}", LatexCommandSignature.matchArgumentFromPosition(
+        code, 4, LatexCommandSignature.ArgumentType.BRACE));
+    Assertions.assertEquals("", LatexCommandSignature.matchArgumentFromPosition(
+        code, 4, LatexCommandSignature.ArgumentType.BRACKET));
+    Assertions.assertEquals("[d]", LatexCommandSignature.matchArgumentFromPosition(
+        code, 11, LatexCommandSignature.ArgumentType.BRACKET));
+    Assertions.assertEquals("(e(f)", LatexCommandSignature.matchArgumentFromPosition(
+        code, 14, LatexCommandSignature.ArgumentType.PARENTHESIS));
+    Assertions.assertEquals("", LatexCommandSignature.matchArgumentFromPosition(
+        code, code.length(), LatexCommandSignature.ArgumentType.BRACE));
+  }
+
+  @Test
+  public void testGetSubtable() {
+    for (String code : createCodes()) {
+      LatexBraceMatchingTable table = new LatexBraceMatchingTable(code);
+
+      for (int fromPos = 0; fromPos <= code.length(); fromPos++) {
+        for (int toPos = fromPos; toPos <= code.length(); toPos++) {
+          String subcode = code.substring(fromPos, toPos);
+          LatexBraceMatchingTable subtable = table.getSubtable(fromPos, toPos);
+
+          for (int pos = 0; pos < subcode.length(); pos++) {
+            char ch = subcode.charAt(pos);
+            if ((ch != '{') && (ch != '[') && (ch != '(')) continue;
+            Assertions.assertEquals(LatexBraceMatchingTable.findClosingPosition(subcode, pos),
+                subtable.getClosingPosition(subcode, pos), "code = \"" + code
+                + "\", fromPos = " + fromPos + ", toPos = " + toPos + ", pos = " + pos);
+          }
+        }
+      }
+    }
+
+    LatexBraceMatchingTable table = new LatexBraceMatchingTable("\\foo{a}\\footnote{b{c}d}");
+    Assertions.assertEquals(3, table.getSubtable(17, 23).getClosingPosition("b{c}d}", 1));
+    Assertions.assertEquals(-1, table.getSubtable(12, 20).getClosingPosition("note{b{c", 4));
+  }
+}
@@ -0,0 +1,78 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LatexCommandSignatureMatcherTest {
+  private static List<String> findMatches(LatexCommandSignatureMatcher matcher, String code,
+        Set<String> ignoreCommandPrototypes) {
+    List<String> matches = new ArrayList<>();
+    LatexCommandSignatureMatcher.Cursor cursor =
+        matcher.startMatching(code, ignoreCommandPrototypes);
+    @Nullable LatexCommandSignatureMatch match;
+
+    while ((match = cursor.findNextMatch()) != null) {
+      matches.add(match.getCommandSignature().getCommandPrototype() + " "
+          + code.substring(match.getFromPos(), match.getToPos()));
+    }
+
+    return matches;
+  }
+
+  @Test
+  public void testFindNextMatch() {
+    LatexCommandSignatureMatcher matcher = new LatexCommandSignatureMatcher(Arrays.asList(
+        new LatexCommandSignature("\\text{}"),
+        new LatexCommandSignature("\\textbf{}"),
+        new LatexCommandSignature("\\textbf[]{}"),
+        new LatexCommandSignature("\\begin{foo}"),
+        new LatexCommandSignature("invalid")));
+    String code = "\\textbf{a \\text{b}} \\textbf[c]{d} \\texts{e} \\begin{foo}{f} \\bar{g}";
+
+    Assertions.assertEquals(Arrays.asList(
+        "\\textbf{} \\textbf{a \\text{b}}", "\\text{} \\text{b}",
+        "\\textbf[]{} \\textbf[c]{d}", "\\begin{foo} \\begin{foo}"),
+        findMatches(matcher, code, Collections.emptySet()));
+    Assertions.assertEquals(Arrays.asList(
+        "\\textbf{} \\textbf{a \\text{b}}", "\\text{} \\text{b}",
+        "\\begin{foo} \\begin{foo}"),
+        findMatches(matcher, code, Collections.singleton("\\textbf[]{}")));
+    Assertions.assertTrue(findMatches(matcher, "", Collections.emptySet()).isEmpty());
+  }
+
+  @Test
+  public void testInterleavedCursors() {
+    LatexCommandSignatureMatcher matcher = new LatexCommandSignatureMatcher(
+        new LatexCommandSignature("\\foo{}"));
+    String code1 = "\\foo{a} \\foo{b}";
+    String code2 = "\\foo{c} \\foo{d}";
+    LatexCommandSignatureMatcher.Cursor cursor1 =
+        matcher.startMatching(code1, Collections.emptySet());
+    LatexCommandSignatureMatcher.Cursor cursor2 =
+        matcher.startMatching(code2, Collections.emptySet());
+    List<String> matches = new ArrayList<>();
+
+    for (int i = 0; i < 3; i++) {
+      @Nullable LatexCommandSignatureMatch match1 = cursor1.findNextMatch();
+      @Nullable LatexCommandSignatureMatch match2 = cursor2.findNextMatch();
+      if (match1 != null) matches.add(code1.substring(match1.getFromPos(), match1.getToPos()));
+      if (match2 != null) matches.add(code2.substring(match2.getFromPos(), match2.getToPos()));
+    }
+
+    Assertions.assertEquals(Arrays.asList("\\foo{a}", "\\foo{c}", "\\foo{b}", "\\foo{d}"),
+        matches);
+  }
+}
@@ -0,0 +1,92 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LatexCommandSignatureTest {
+  private static final Pattern genericCommandPattern = Pattern.compile(
+      "^(\\\\.+?)(\\{\\}|\\[\\]|\\(\\))*$");
+  private static final Pattern argumentPattern = Pattern.compile("^((\\{\\})|(\\[\\])|(\\(\\)))");
+
+  private static List<String> createCommandPrototypes() {
+    List<String> commandPrototypes = new ArrayList<>(Arrays.asList(
+        "\\foo", "\\foo{}", "\\foo[]{}()", "\\foo*[]{}", "\\{}", "\\{}{}", "\\[]", "\\",
+        "foo{}", "", "\\foo{", "\\foo{}x", "\\foo{}\n", "\\foo{}\r\n", "\\foo\r", "\\foo{}\n\n",
+        "\\fo\no{}", "\\foo\u2028", "\\\u0085", "\\begin{foo}", "\\begin{foo}[]{}"));
+    Random random = new Random(42);
+    String alphabet = "\\{}[]()a\n\r\u2029";
+
+    for (int i = 0; i < 1000; i++) {
+      StringBuilder builder = new StringBuilder((random.nextInt(4) > 0) ? "\\" : "");
+
+      for (int j = random.nextInt(8); j > 0; j--) {
+        builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      }
+
+      commandPrototypes.add(builder.toString());
+    }
+
+    return commandPrototypes;
+  }
+
+  private static String parseWithRegularExpressions(String commandPrototype) {
+    Matcher commandMatcher = genericCommandPattern.matcher(commandPrototype);
+    if (!commandMatcher.find()) return "";
+    int pos = commandMatcher.end(1);
+    StringBuilder builder = new StringBuilder(commandPrototype.substring(0, pos));
+
+    while (true) {
+      Matcher argumentMatcher = argumentPattern.matcher(commandPrototype.substring(pos));
+      if (!argumentMatcher.find()) break;
+      builder.append(" ").append(argumentMatcher.group());
+      pos += argumentMatcher.group().length();
+    }
+
+    return builder.toString();
+  }
+
+  private static String parse(String commandPrototype) {
+    LatexCommandSignature commandSignature = new LatexCommandSignature(commandPrototype);
+    if (commandSignature.getName().isEmpty()) return "";
+    StringBuilder builder = new StringBuilder(commandSignature.getName());
+
+    for (LatexCommandSignature.ArgumentType argumentType : commandSignature.getArgumentTypes()) {
+      builder.append(" ").append((argumentType == LatexCommandSignature.ArgumentType.BRACE) ? "{}"
+          : ((argumentType == LatexCommandSignature.ArgumentType.BRACKET) ? "[]" : "()"));
+    }
+
+    return builder.toString();
+  }
+
+  @Test
+  public void testCommandPrototypeParsing() {
+    for (String commandPrototype : createCommandPrototypes()) {
+      Assertions.assertEquals(parseWithRegularExpressions(commandPrototype),
+          parse(commandPrototype), "commandPrototype = \"" + commandPrototype + "\"");
+    }
+  }
+
+  @Test
+  public void testMatchFromPosition() {
+    LatexCommandSignature commandSignature = new LatexCommandSignature("\\foo[]{}");
+    Assertions.assertEquals("\\foo[a]% comment\n  {b}",
+        commandSignature.matchFromPosition("x\\foo[a]% comment\n  {b}c", 1));
+    Assertions.assertEquals("", commandSignature.matchFromPosition("x\\foo{b}", 1));
+    Assertions.assertEquals("", commandSignature.matchFromPosition("x\\bar[a]{b}", 1));
+    Assertions.assertEquals("",
+        new LatexCommandSignature("invalid{}").matchFromPosition("invalid{}", 0));
+  }
+}
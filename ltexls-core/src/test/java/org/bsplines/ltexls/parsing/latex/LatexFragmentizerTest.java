@@ -7,6 +7,8 @@
 
 package org.bsplines.ltexls.parsing.latex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.bsplines.ltexls.parsing.CodeFragment;
@@ -175,5 +177,89 @@ public class LatexFragmentizerTest {
         "This is a Beispiel\\end{de-DE}.\n", new Settings());
     Assertions.assertEquals(1, codeFragments.size());
     Assertions.assertEquals(31, codeFragments.get(0).getCode().length());
+
+    codeFragments = fragmentizer.fragmentize(
+        "This is a \\begin{otherlanguage*}{\\end{otherlanguage*}}Beispiel.\n", new Settings());
+    Assertions.assertEquals(2, codeFragments.size());
+    Assertions.assertEquals("Beispiel.\n", codeFragments.get(0).getCode());
+    Assertions.assertEquals(54, codeFragments.get(0).getFromPos());
+  }
+
+  private static void assertFragmentsEqual(List<String> expectedFragments, String code,
+        Settings settings) {
+    CodeFragmentizer fragmentizer = CodeFragmentizer.create("latex");
+    List<String> fragments = new ArrayList<>();
+
+    for (CodeFragment codeFragment : fragmentizer.fragmentize(code, settings)) {
+      fragments.add(codeFragment.getFromPos() + " "
+          + codeFragment.getSettings().getLanguageShortCode() + " " + codeFragment.getCode());
+    }
+
+    Assertions.assertEquals(expectedFragments, fragments);
+  }
+
+  @Test
+  public void testSplitPoints() {
+    // magic comments reset the language of babel switch commands
+    assertFragmentsEqual(Arrays.asList(
+          "0 en-US ",
+          "0 de-DE \\usepackage[ngerman]{babel}\nText\n",
+          "33 fr \\selectlanguage{french}\nTexte\n",
+          "63 es % ltex: language=es\nTexto\n",
+          "89 en-US \\selectlanguage{english}\nText\n"),
+        "\\usepackage[ngerman]{babel}\nText\n\\selectlanguage{french}\nTexte\n"
+        + "% ltex: language=es\nTexto\n\\selectlanguage{english}\nText\n", new Settings());
+
+    // babel packages reset the language of babel switch commands, unknown languages are ignored
+    assertFragmentsEqual(Arrays.asList(
+          "0 en-US ",
+          "0 fr \\selectlanguage{french}\nTexte\n",
+          "30 de-DE \\usepackage[ngerman]{babel}\nText\n\\selectlanguage{foo}\nText\n"),
+        "\\selectlanguage{french}\nTexte\n\\usepackage[ngerman]{babel}\nText\n"
+        + "\\selectlanguage{foo}\nText\n", new Settings());
+
+    // only babel packages with a known language split the code
+    assertFragmentsEqual(Arrays.asList(
+          "0 en-US \\usepackage{x}\\usepackage[ngerman]{foo}",
+          "39 en-US \\usepackage[american]{babel}A\n"),
+        "\\usepackage{x}\\usepackage[ngerman]{foo}\\usepackage[american]{babel}A\n",
+        new Settings());
+
+    // commands that are split by a magic comment are not taken into account
+    assertFragmentsEqual(Arrays.asList(
+          "0 en-US A\\footnote{B\n",
+          "13 de-DE % ltex: language=de-DE\nC} D\n"),
+        "A\\footnote{B\n% ltex: language=de-DE\nC} D\n", new Settings());
+  }
+
+  @Test
+  public void testNestedCommands() {
+    // a footnote in nested babel environments is a fragment for every enclosing fragment
+    assertFragmentsEqual(Arrays.asList(
+          "0 en-US ",
+          "83 en-US C",
+          "72 en-US B\\footnote{C}",
+          "83 de-DE C",
+          "55 de-DE A \\begin{english}B\\footnote{C}\\end{english} D",
+          "83 fr C",
+          "0 fr \\selectlanguage{french}\n\\begin{otherlanguage*}{ngerman}A "
+          + "\\begin{english}B\\footnote{C}\\end{english} D\\end{otherlanguage*}\n"),
+        "\\selectlanguage{french}\n\\begin{otherlanguage*}{ngerman}A "
+        + "\\begin{english}B\\footnote{C}\\end{english} D\\end{otherlanguage*}\n",
+        new Settings());
+
+    // babel inline commands in footnotes are handled before the footnotes
+    assertFragmentsEqual(Arrays.asList(
+          "18 de Beispiel",
+          "10 en-US \\textde{Beispiel} note",
+          "0 en-US \\footnote{\\textde{Beispiel} note}\n"),
+        "\\footnote{\\textde{Beispiel} note}\n", new Settings());
+
+    // footnotes inherit the settings of magic comments
+    List<CodeFragment> codeFragments = CodeFragmentizer.create("latex").fragmentize(
+        "% ltex: enabled=false\nA\\todo{B}\n", new Settings());
+    Assertions.assertEquals(3, codeFragments.size());
+    Assertions.assertEquals("B", codeFragments.get(1).getCode());
+    Assertions.assertTrue(codeFragments.get(1).getSettings().getEnabled().isEmpty());
   }
 }
@@ -0,0 +1,58 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LatexScannerTest {
+  private static final List<String> codes = Arrays.asList(
+      "This is \\textbf{a} \\test* of \\\\ and \\@ and \\ \\", "\\\ud83d\ude00*",
+      "Text % comment\n  \n\tNext % comment\r\n  line\r% end\r\n",
+      "% comment\u2028 line\u2028", "  % comment\n", "  % comment\r", "%\r\n", "% comment\u0085",
+      "{1.5em} {-2pt} {.5in} {1.em} {pt} {12} [3cm] [3cm} {3cm",
+      "--- -- - \\verb|a| \\verb*|b| \\verb*c* \\verb|\n| \\verb \\verb\ud83d\ude00x\ud83d\ude00",
+      "<<chunk, echo=TRUE>>= code @ <<no\n>>= <<>>=", "$$x$$ $y$ {arg} {unclosed");
+
+  private static void assertScanner(Pattern pattern, BiFunction<String, Integer, Integer> scanner) {
+    for (String code : codes) {
+      for (int pos = 0; pos < code.length(); pos++) {
+        Matcher matcher = pattern.matcher(code.substring(pos));
+        int expectedEndPos = (matcher.find() ? (pos + matcher.end()) : pos);
+        Assertions.assertEquals(expectedEndPos, scanner.apply(code, pos),
+            "code = \"" + code + "\", pos = " + pos);
+      }
+    }
+  }
+
+  @Test
+  public void testScanner() {
+    final String lengthPattern = "-?[0-9]*(\\.[0-9]+)?(pt|mm|cm|ex|em|bp|dd|pc|in)";
+
+    assertScanner(Pattern.compile("^\\\\(([^A-Za-z@]|([A-Za-z@]+))\\*?)"),
+        LatexScanner::scanCommand);
+    assertScanner(Pattern.compile("^\\{[^\\}]*?\\}"), LatexScanner::scanSimpleArgument);
+    assertScanner(Pattern.compile("^%.*?($|((\n|\r|\r\n)[ \n\r\t]*))"),
+        LatexScanner::scanComment);
+    assertScanner(Pattern.compile("^[ \n\r\t]+(%.*?($|((\n|\r|\r\n)[ \n\r\t]*)))?"),
+        LatexScanner::scanWhitespace);
+    assertScanner(Pattern.compile("^\\{" + lengthPattern + "\\}"),
+        (String code, Integer pos) -> LatexScanner.scanDelimitedLength(code, pos, '{', '}'));
+    assertScanner(Pattern.compile("^\\[" + lengthPattern + "\\]"),
+        (String code, Integer pos) -> LatexScanner.scanDelimitedLength(code, pos, '[', ']'));
+    assertScanner(Pattern.compile("^---"),
+        (String code, Integer pos) -> LatexScanner.scanString(code, pos, "---"));
+    assertScanner(Pattern.compile("^\\\\verb\\*?(.).*?\\1"), LatexScanner::scanVerbCommand);
+    assertScanner(Pattern.compile("^<<.*?>>="), LatexScanner::scanRsweaveBegin);
+  }
+}
@@ -0,0 +1,53 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.parsing.latex;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LatexSignatureTablesTest {
+  @Test
+  public void testGet() {
+    Map<String, String> latexCommands = new HashMap<>();
+    latexCommands.put("\\foo{}", "ignore");
+    latexCommands.put("\\textbf{}", "dummy");
+    latexCommands.put("\\bar{}", "invalidAction");
+    Map<String, String> latexEnvironments = Collections.singletonMap("itemize", "ignore");
+
+    LatexSignatureTables tables = LatexSignatureTables.get(latexCommands, latexEnvironments);
+    Assertions.assertSame(tables, LatexSignatureTables.get(
+        new HashMap<>(latexCommands), new HashMap<>(latexEnvironments)));
+    Assertions.assertSame(LatexSignatureTables.getDefault(),
+        LatexSignatureTables.get(Collections.emptyMap(), Collections.emptyMap()));
+
+    List<LatexCommandSignature> commandSignatures = tables.getCommandSignatures("\\foo");
+    Assertions.assertEquals(1, commandSignatures.size());
+    Assertions.assertEquals(LatexCommandSignature.Action.IGNORE,
+        commandSignatures.get(0).getAction());
+    Assertions.assertTrue(tables.getCommandSignatures("\\bar").isEmpty());
+
+    commandSignatures = tables.getCommandSignatures("\\textbf");
+    Assertions.assertEquals(
+        LatexSignatureTables.getDefault().getCommandSignatures("\\textbf").size() + 1,
+        commandSignatures.size());
+    Assertions.assertEquals(LatexCommandSignature.Action.DUMMY,
+        commandSignatures.get(commandSignatures.size() - 1).getAction());
+
+    @Nullable LatexEnvironmentSignature environmentSignature =
+        tables.getEnvironmentSignature("itemize");
+    Assertions.assertTrue((environmentSignature != null) && (environmentSignature.getAction()
+        == LatexEnvironmentSignature.Action.IGNORE));
+    Assertions.assertTrue(
+        LatexSignatureTables.getDefault().getEnvironmentSignature("itemize") == null);
+  }
+}
@@ -11,11 +11,14 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import org.bsplines.ltexls.parsing.CodeAnnotatedTextBuilder;
+import org.bsplines.ltexls.parsing.IncrementalParseCache;
 import org.bsplines.ltexls.settings.Settings;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.languagetool.markup.AnnotatedText;
+import org.languagetool.markup.TextPart;
 
 public class MarkdownAnnotatedTextBuilderTest {
   private static void assertPlainText(String code, String expectedPlainText) {
@@ -58,6 +61,20 @@ public class MarkdownAnnotatedTextBuilderTest {
         "This is a test: inline code.\n\n\ncode block\n\n\nThis is another sentence.\n",
         markdownNodes);
 
+    markdownNodes.clear();
+    markdownNodes.put("BlockQuote", "ignore");
+    markdownNodes.put("Emphasis", "dummy");
+    markdownNodes.put("Link", "default");
+    assertPlainText(
+        "> Quoted *emphasis* and [link](example.com).\n\n"
+        + "A *sentence* with a [link](example.com).\n",
+        "\n\nA Dummy0 with a link.\n",
+        markdownNodes);
+    assertPlainText(
+        "A *sentence* with *emphasis*.\n\nAnother *paragraph*.\n",
+        "A Dummy0 with Dummy1.\n\nAnother Dummy0.\n",
+        markdownNodes);
+
     assertPlainText(
         "---\n"
         + "# This is YAML front matter\n"
@@ -74,4 +91,52 @@ public class MarkdownAnnotatedTextBuilderTest {
         + "Test sentence\n",
         "\nHeading\nTest sentence\n");
   }
+
+  private static String buildAnnotatedTextParts(String code, Settings settings,
+        IncrementalParseCache parseCache) {
+    CodeAnnotatedTextBuilder builder = CodeAnnotatedTextBuilder.create("markdown");
+    builder.setSettings(settings);
+    AnnotatedText annotatedText = builder.addCode(code, parseCache, 0).build();
+    StringBuilder partsBuilder = new StringBuilder();
+
+    for (TextPart textPart : annotatedText.getParts()) {
+      partsBuilder.append(textPart.getType()).append("(\"").append(textPart.getPart())
+          .append("\") ");
+    }
+
+    return partsBuilder.toString();
+  }
+
+  @Test
+  public void testIncrementalParsing() {
+    String code = "---\ntitle: Test\n---\n\n"
+        + "# Heading\n\nParagraph with *emphasis*, `code`, and [a link](example.com).\n"
+        + "Lazy continuation\nline.\n\nSetext heading\n--------------\n\n"
+        + "- List item\n- Another *item*\n\n  Continued item.\n\n"
+        + "> Block quote with `code`\ncontinued.\n\n```\nfenced code\n```\n\n"
+        + "    indented code\n\n<div>\nHTML block\n</div>\n\nLast paragraph &copy;\n";
+    String[] insertions = {"\n", "\n\n", "```\n", "---\n", "- ", "> ", "    ", "*", "`", "#",
+        "<div>\n", "[ref]: example.com\n", "[ref]", "text ", "1. ", "===\n"};
+    Map<String, String> markdownNodes = Collections.singletonMap("Emphasis", "dummy");
+    Settings settings = (new Settings()).withMarkdownNodes(markdownNodes);
+    IncrementalParseCache parseCache = new IncrementalParseCache();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 1000; i++) {
+      int fromPos = random.nextInt(code.length() + 1);
+
+      if (random.nextBoolean()) {
+        code = code.substring(0, fromPos) + insertions[random.nextInt(insertions.length)]
+            + code.substring(fromPos);
+      } else {
+        int toPos = Math.min(fromPos + random.nextInt(8), code.length());
+        code = code.substring(0, fromPos) + code.substring(toPos);
+      }
+
+      Assertions.assertEquals(
+          buildAnnotatedTextParts(code, settings, new IncrementalParseCache()),
+          buildAnnotatedTextParts(code, settings, parseCache), "code = \"" + code + "\"");
+      parseCache.finishCheck();
+    }
+  }
 }
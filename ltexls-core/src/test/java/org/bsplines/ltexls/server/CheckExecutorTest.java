@@ -0,0 +1,120 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CheckExecutorTest {
+  private static CompletableFuture<String> submitBlockingCheck(CheckExecutor checkExecutor,
+        CountDownLatch startedLatch, CountDownLatch releaseLatch) {
+    return checkExecutor.submit(() -> {
+      startedLatch.countDown();
+
+      try {
+        releaseLatch.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+
+      return "blocking";
+    });
+  }
+
+  @Test
+  public void testSubmit() throws InterruptedException, ExecutionException {
+    CheckExecutor checkExecutor = new CheckExecutor();
+    String callingThreadName = Thread.currentThread().getName();
+    CompletableFuture<String> future = checkExecutor.submit(
+        () -> Thread.currentThread().getName());
+    String checkingThreadName = future.get();
+    Assertions.assertNotEquals(callingThreadName, checkingThreadName);
+    Assertions.assertTrue(checkingThreadName.startsWith("ltex-ls-checker-"));
+
+    CompletableFuture<String> failingFuture = checkExecutor.submit(() -> {
+      throw new IllegalStateException("failing check");
+    });
+    ExecutionException exception = Assertions.assertThrows(
+        ExecutionException.class, () -> failingFuture.get());
+    Assertions.assertTrue(exception.getCause() instanceof IllegalStateException);
+
+    checkExecutor.shutdown();
+    Assertions.assertTrue(checkExecutor.submit(() -> "").isCompletedExceptionally());
+  }
+
+  @Test
+  public void testCoalesce() throws InterruptedException, ExecutionException {
+    CheckExecutor checkExecutor = new CheckExecutor();
+    CountDownLatch startedLatch = new CountDownLatch(1);
+    CountDownLatch releaseLatch = new CountDownLatch(1);
+    final CompletableFuture<String> blockingFuture =
+        submitBlockingCheck(checkExecutor, startedLatch, releaseLatch);
+    startedLatch.await();
+
+    final CompletableFuture<String> firstFuture = checkExecutor.submit("a", () -> "first a");
+    final CompletableFuture<String> secondFuture = checkExecutor.submit("b", () -> "first b");
+    final CompletableFuture<String> thirdFuture = checkExecutor.submit("a", () -> "second a");
+    final CompletableFuture<String> fourthFuture = checkExecutor.submit(() -> "other");
+    Assertions.assertTrue(firstFuture.isCompletedExceptionally());
+    Assertions.assertFalse(secondFuture.isDone());
+
+    releaseLatch.countDown();
+    Assertions.assertEquals("blocking", blockingFuture.get());
+    Assertions.assertEquals("first b", secondFuture.get());
+    Assertions.assertEquals("second a", thirdFuture.get());
+    Assertions.assertEquals("other", fourthFuture.get());
+
+    // checks that have already been started are not replaced
+    Assertions.assertEquals("third a", checkExecutor.submit("a", () -> "third a").get());
+    checkExecutor.shutdown();
+  }
+
+  @Test
+  public void testDiscardOldest() throws InterruptedException, ExecutionException {
+    CheckExecutor checkExecutor = new CheckExecutor(
+        1, 2, CheckExecutor.QueuePolicy.DISCARD_OLDEST);
+    CountDownLatch startedLatch = new CountDownLatch(1);
+    CountDownLatch releaseLatch = new CountDownLatch(1);
+    final CompletableFuture<String> blockingFuture =
+        submitBlockingCheck(checkExecutor, startedLatch, releaseLatch);
+    startedLatch.await();
+
+    final CompletableFuture<String> firstFuture = checkExecutor.submit(() -> "first");
+    final CompletableFuture<String> secondFuture = checkExecutor.submit(() -> "second");
+    final CompletableFuture<String> thirdFuture = checkExecutor.submit(() -> "third");
+    Assertions.assertTrue(firstFuture.isCompletedExceptionally());
+
+    releaseLatch.countDown();
+    Assertions.assertEquals("blocking", blockingFuture.get());
+    Assertions.assertEquals("second", secondFuture.get());
+    Assertions.assertEquals("third", thirdFuture.get());
+    checkExecutor.shutdown();
+  }
+
+  @Test
+  public void testReject() throws InterruptedException, ExecutionException {
+    CheckExecutor checkExecutor = new CheckExecutor(1, 1, CheckExecutor.QueuePolicy.REJECT);
+    CountDownLatch startedLatch = new CountDownLatch(1);
+    CountDownLatch releaseLatch = new CountDownLatch(1);
+    final CompletableFuture<String> blockingFuture =
+        submitBlockingCheck(checkExecutor, startedLatch, releaseLatch);
+    startedLatch.await();
+
+    final CompletableFuture<String> firstFuture = checkExecutor.submit(() -> "first");
+    final CompletableFuture<String> secondFuture = checkExecutor.submit(() -> "second");
+    Assertions.assertTrue(secondFuture.isCompletedExceptionally());
+
+    releaseLatch.countDown();
+    Assertions.assertEquals("blocking", blockingFuture.get());
+    Assertions.assertEquals("first", firstFuture.get());
+    checkExecutor.shutdown();
+  }
+}
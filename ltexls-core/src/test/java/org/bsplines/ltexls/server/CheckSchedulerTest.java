@@ -0,0 +1,69 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CheckSchedulerTest {
+  @Test
+  public void testComputeDelay() {
+    Assertions.assertEquals(Duration.ofMillis(250),
+        CheckScheduler.computeDelay(Duration.ofMillis(250), Duration.ofMillis(100)));
+    Assertions.assertEquals(Duration.ofMillis(800),
+        CheckScheduler.computeDelay(Duration.ofMillis(250), Duration.ofMillis(800)));
+    Assertions.assertEquals(Duration.ofSeconds(2),
+        CheckScheduler.computeDelay(Duration.ofMillis(250), Duration.ofSeconds(10)));
+    Assertions.assertEquals(Duration.ofSeconds(5),
+        CheckScheduler.computeDelay(Duration.ofSeconds(5), Duration.ofSeconds(10)));
+  }
+
+  @Test
+  public void testSchedule() throws InterruptedException {
+    CheckScheduler checkScheduler = new CheckScheduler();
+    AtomicInteger firstCounter = new AtomicInteger();
+    AtomicInteger secondCounter = new AtomicInteger();
+    AtomicInteger lastValue = new AtomicInteger();
+
+    for (int i = 1; i <= 10; i++) {
+      final int value = i;
+      checkScheduler.schedule("untitled:first.md", Duration.ofMillis(200), () -> {
+        firstCounter.incrementAndGet();
+        lastValue.set(value);
+      });
+    }
+
+    checkScheduler.schedule("untitled:second.md", Duration.ofMillis(200),
+        () -> secondCounter.incrementAndGet());
+    checkScheduler.schedule("untitled:third.md", Duration.ofMillis(200),
+        () -> secondCounter.incrementAndGet());
+    checkScheduler.cancel("untitled:third.md");
+
+    Thread.sleep(1000);
+    Assertions.assertEquals(1, firstCounter.get());
+    Assertions.assertEquals(10, lastValue.get());
+    Assertions.assertEquals(1, secondCounter.get());
+    checkScheduler.shutdown();
+  }
+
+  @Test
+  public void testFlush() {
+    CheckScheduler checkScheduler = new CheckScheduler();
+    AtomicInteger counter = new AtomicInteger();
+    checkScheduler.schedule("untitled:first.md", Duration.ofSeconds(60),
+        () -> counter.incrementAndGet());
+    Assertions.assertTrue(checkScheduler.flush("untitled:first.md"));
+    Assertions.assertEquals(1, counter.get());
+    Assertions.assertFalse(checkScheduler.flush("untitled:first.md"));
+    Assertions.assertFalse(checkScheduler.flush("untitled:second.md"));
+    Assertions.assertEquals(1, counter.get());
+    checkScheduler.shutdown();
+  }
+}
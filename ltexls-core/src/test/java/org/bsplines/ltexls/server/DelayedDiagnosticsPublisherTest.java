@@ -0,0 +1,26 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DelayedDiagnosticsPublisherTest {
+  @Test
+  public void testComputeDelay() {
+    Instant now = Instant.now();
+    Assertions.assertEquals(Duration.ofMillis(2010),
+        DelayedDiagnosticsPublisher.computeDelay(now, now));
+    Assertions.assertEquals(Duration.ofMillis(510),
+        DelayedDiagnosticsPublisher.computeDelay(now.minusMillis(1500), now));
+    Assertions.assertEquals(Duration.ofMillis(10),
+        DelayedDiagnosticsPublisher.computeDelay(now.minusSeconds(10), now));
+  }
+}
@@ -9,11 +9,15 @@ package org.bsplines.ltexls.server;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
 import org.bsplines.ltexls.parsing.AnnotatedTextFragment;
+import org.bsplines.ltexls.parsing.IncrementalParseCache;
 import org.bsplines.ltexls.settings.HiddenFalsePositive;
 import org.bsplines.ltexls.settings.Settings;
 import org.bsplines.ltexls.settings.SettingsManager;
@@ -24,6 +28,7 @@ import org.eclipse.lsp4j.CodeActionParams;
 import org.eclipse.lsp4j.Command;
 import org.eclipse.lsp4j.Position;
 import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
 import org.eclipse.lsp4j.TextDocumentIdentifier;
 import org.eclipse.lsp4j.TextDocumentItem;
 import org.eclipse.lsp4j.jsonrpc.messages.Either;
@@ -47,6 +52,13 @@ public class DocumentCheckerTest {
     return documentChecker.check(document);
   }
 
+  static Pair<List<LanguageToolRuleMatch>, List<AnnotatedTextFragment>> checkDocument(
+        DocumentChecker documentChecker, TextDocumentItem document, Settings settings,
+        ParagraphMatchCache paragraphMatchCache) {
+    return documentChecker.check(document, settings, paragraphMatchCache,
+        new IncrementalParseCache(), () -> { });
+  }
+
   public static LtexTextDocumentItem createDocument(String codeLanguageId, String code) {
     LtexLanguageServer languageServer = new LtexLanguageServer();
     return new LtexTextDocumentItem(languageServer, "untitled:test.txt", codeLanguageId, 1, code);
@@ -189,6 +201,162 @@ public class DocumentCheckerTest {
     assertMatches(checkingResult.getKey(), 8, 10, 69, 80);
   }
 
+  @Test
+  public void testSplitIntoParagraphs() {
+    Assertions.assertEquals(Arrays.asList("First\nparagraph.\n \n\n", "Second.\n\n", "Third."),
+        DocumentChecker.splitIntoParagraphs("First\nparagraph.\n \n\nSecond.\n\nThird."));
+    Assertions.assertEquals(Arrays.asList("Single\nparagraph.\n"),
+        DocumentChecker.splitIntoParagraphs("Single\nparagraph.\n"));
+    Assertions.assertTrue(DocumentChecker.splitIntoParagraphs("").isEmpty());
+  }
+
+  @Test
+  public void testIncrementalCheck() {
+    LtexTextDocumentItem document = createDocument("latex",
+        "This is an \\textbf{test.}\n\nHere is a qwertyzuiopa.\n\nThat is an \\emph{test.}\n");
+    SettingsManager settingsManager = new SettingsManager(
+        (new Settings()).withLogLevel(Level.FINEST));
+    DocumentChecker documentChecker = new DocumentChecker(settingsManager);
+    ParagraphMatchCache paragraphMatchCache = new ParagraphMatchCache();
+    List<LanguageToolRuleMatch> matches =
+        checkDocument(documentChecker, document, settingsManager.getSettings(),
+          paragraphMatchCache).getKey();
+    Assertions.assertEquals(3, matches.size());
+    Assertions.assertEquals(8, matches.get(0).getFromPos());
+    Assertions.assertEquals(37, matches.get(1).getFromPos());
+
+    document.applyTextChangeEvent(new TextDocumentContentChangeEvent(
+        new Range(new Position(2, 10), new Position(2, 10)), 0, "second "));
+    List<LanguageToolRuleMatch> incrementalMatches =
+        checkDocument(documentChecker, document, settingsManager.getSettings(),
+          paragraphMatchCache).getKey();
+    List<LanguageToolRuleMatch> fullMatches = documentChecker.check(document).getKey();
+    Assertions.assertEquals(3, incrementalMatches.size());
+    Assertions.assertEquals(fullMatches.size(), incrementalMatches.size());
+
+    for (int i = 0; i < fullMatches.size(); i++) {
+      LanguageToolRuleMatch fullMatch = fullMatches.get(i);
+      LanguageToolRuleMatch incrementalMatch = incrementalMatches.get(i);
+      Assertions.assertEquals(NullnessUtil.castNonNull(fullMatch.getRuleId()),
+          NullnessUtil.castNonNull(incrementalMatch.getRuleId()));
+      Assertions.assertEquals(fullMatch.getFromPos(), incrementalMatch.getFromPos());
+      Assertions.assertEquals(fullMatch.getToPos(), incrementalMatch.getToPos());
+      Assertions.assertEquals(fullMatch.getMessage(), incrementalMatch.getMessage());
+    }
+
+    Assertions.assertEquals(44, incrementalMatches.get(1).getFromPos());
+    Assertions.assertEquals(56, incrementalMatches.get(1).getToPos());
+  }
+
+  @Test
+  public void testIncrementalCheckOfSeparatedParagraphs() {
+    LtexTextDocumentItem document = createDocument("latex",
+        "This is an \\textbf{test.}\n\n"
+        + "This paragraph opens a bracket (which is\n\n"
+        + "closed in this paragraph) and continues.\n\n"
+        + "Here is a qwertyzuiopa.\n\n"
+        + "This paragraph contains $x$ and a \\emph{formula}.\n\n"
+        + "That is an \\emph{test.}\n");
+    SettingsManager settingsManager = new SettingsManager();
+    DocumentChecker documentChecker = new DocumentChecker(settingsManager);
+    ParagraphMatchCache paragraphMatchCache = new ParagraphMatchCache();
+    checkDocument(documentChecker, document, settingsManager.getSettings(), paragraphMatchCache);
+
+    document.applyTextChangeEvents(Arrays.asList(
+        new TextDocumentContentChangeEvent(
+          new Range(new Position(4, 10), new Position(4, 10)), 0, "really "),
+        new TextDocumentContentChangeEvent(
+          new Range(new Position(10, 11), new Position(10, 11)), 0, "$y$ and an ")));
+    List<LanguageToolRuleMatch> incrementalMatches =
+        checkDocument(documentChecker, document, settingsManager.getSettings(),
+          paragraphMatchCache).getKey();
+    List<LanguageToolRuleMatch> fullMatches = documentChecker.check(document).getKey();
+    Assertions.assertEquals(fullMatches.size(), incrementalMatches.size());
+
+    for (int i = 0; i < fullMatches.size(); i++) {
+      LanguageToolRuleMatch fullMatch = fullMatches.get(i);
+      LanguageToolRuleMatch incrementalMatch = incrementalMatches.get(i);
+      Assertions.assertEquals(NullnessUtil.castNonNull(fullMatch.getRuleId()),
+          NullnessUtil.castNonNull(incrementalMatch.getRuleId()));
+      Assertions.assertEquals(fullMatch.getFromPos(), incrementalMatch.getFromPos());
+      Assertions.assertEquals(fullMatch.getToPos(), incrementalMatch.getToPos());
+      Assertions.assertEquals(fullMatch.getMessage(), incrementalMatch.getMessage());
+    }
+  }
+
+  @Test
+  public void testIncrementalCheckOfPrecedingParagraph() {
+    LtexTextDocumentItem document = createDocument("markdown",
+        "This is a test.\n\n"
+        + "This paragraph opens a bracket (which is\n\n"
+        + "closed in this paragraph) and continues.\n\n"
+        + "That is a test.\n");
+    SettingsManager settingsManager = new SettingsManager();
+    DocumentChecker documentChecker = new DocumentChecker(settingsManager);
+    ParagraphMatchCache paragraphMatchCache = new ParagraphMatchCache();
+    checkDocument(documentChecker, document, settingsManager.getSettings(), paragraphMatchCache);
+
+    // removing the closing bracket adds a match to the unchanged preceding paragraph
+    document.applyTextChangeEvent(new TextDocumentContentChangeEvent(
+        new Range(new Position(4, 24), new Position(4, 25)), 1, ""));
+    List<LanguageToolRuleMatch> incrementalMatches =
+        checkDocument(documentChecker, document, settingsManager.getSettings(),
+          paragraphMatchCache).getKey();
+    List<LanguageToolRuleMatch> fullMatches = documentChecker.check(document).getKey();
+    Assertions.assertTrue(fullMatches.stream().anyMatch((LanguageToolRuleMatch match) ->
+        "EN_UNPAIRED_BRACKETS".equals(match.getRuleId()) && (match.getFromPos() == 48)));
+    Assertions.assertEquals(fullMatches.size(), incrementalMatches.size());
+
+    for (int i = 0; i < fullMatches.size(); i++) {
+      Assertions.assertEquals(NullnessUtil.castNonNull(fullMatches.get(i).getRuleId()),
+          NullnessUtil.castNonNull(incrementalMatches.get(i).getRuleId()));
+      Assertions.assertEquals(fullMatches.get(i).getFromPos(),
+          incrementalMatches.get(i).getFromPos());
+    }
+  }
+
+  @Test
+  public void testCancellation() {
+    StringBuilder code = new StringBuilder();
+
+    List<String> sentenceBeginnings = Arrays.asList("This", "That", "Here");
+
+    for (int i = 0; i < 150; i++) {
+      code.append(sentenceBeginnings.get(i % 3) + " is an test in paragraph number " + i
+          + ".\n\n");
+    }
+
+    LtexTextDocumentItem document = createDocument("markdown", code.toString());
+    SettingsManager settingsManager = new SettingsManager();
+    DocumentChecker documentChecker = new DocumentChecker(settingsManager);
+    ParagraphMatchCache paragraphMatchCache = new ParagraphMatchCache();
+    IncrementalParseCache parseCache = new IncrementalParseCache();
+    AtomicInteger numberOfCancelCheckerCalls = new AtomicInteger();
+
+    // the plain text is too long to be checked at once, therefore, the check is cancelled
+    // after the first part has been checked
+    Assertions.assertThrows(CancellationException.class, () -> documentChecker.check(
+        document, settingsManager.getSettings(), paragraphMatchCache, parseCache, () -> {
+          if (numberOfCancelCheckerCalls.incrementAndGet() > 3) {
+            throw new CancellationException();
+          }
+        }));
+    Assertions.assertEquals(4, numberOfCancelCheckerCalls.get());
+
+    List<LanguageToolRuleMatch> matches = documentChecker.check(
+        document, settingsManager.getSettings(), paragraphMatchCache, parseCache,
+        () -> { }).getKey();
+    List<LanguageToolRuleMatch> fullMatches = documentChecker.check(document).getKey();
+    Assertions.assertEquals(fullMatches.size(), matches.size());
+
+    for (int i = 0; i < fullMatches.size(); i++) {
+      Assertions.assertEquals(NullnessUtil.castNonNull(fullMatches.get(i).getRuleId()),
+          NullnessUtil.castNonNull(matches.get(i).getRuleId()));
+      Assertions.assertEquals(fullMatches.get(i).getFromPos(), matches.get(i).getFromPos());
+      Assertions.assertEquals(fullMatches.get(i).getToPos(), matches.get(i).getToPos());
+    }
+  }
+
   @Test
   public void testCodeActionGenerator() {
     LtexTextDocumentItem document = createDocument("markdown",
@@ -198,8 +366,7 @@ public class DocumentCheckerTest {
     CodeActionParams params = new CodeActionParams(new TextDocumentIdentifier(document.getUri()),
         new Range(new Position(0, 0), new Position(100, 0)),
         new CodeActionContext(Collections.emptyList()));
-    SettingsManager settingsManager = new SettingsManager();
-    CodeActionGenerator codeActionGenerator = new CodeActionGenerator(settingsManager);
+    CodeActionGenerator codeActionGenerator = new CodeActionGenerator();
     List<Either<Command, CodeAction>> result = codeActionGenerator.generate(
         params, document, checkingResult);
     Assertions.assertEquals(4, result.size());
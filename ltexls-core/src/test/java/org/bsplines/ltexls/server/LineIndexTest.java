@@ -0,0 +1,48 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LineIndexTest {
+  @Test
+  public void testLookup() {
+    LineIndex lineIndex = new LineIndex("Hello\nEnthusiastic\r\nReader!\r");
+    Assertions.assertEquals(4, lineIndex.getLineCount());
+    Assertions.assertEquals(0, lineIndex.getLineStartPos(0));
+    Assertions.assertEquals(6, lineIndex.getLineStartPos(1));
+    Assertions.assertEquals(20, lineIndex.getLineStartPos(2));
+    Assertions.assertEquals(28, lineIndex.getLineStartPos(3));
+    Assertions.assertEquals(0, lineIndex.getLine(0));
+    Assertions.assertEquals(0, lineIndex.getLine(5));
+    Assertions.assertEquals(1, lineIndex.getLine(6));
+    Assertions.assertEquals(1, lineIndex.getLine(19));
+    Assertions.assertEquals(2, lineIndex.getLine(20));
+    Assertions.assertEquals(3, lineIndex.getLine(28));
+    Assertions.assertEquals("[0, 6, 20, 28]", lineIndex.toString());
+  }
+
+  @Test
+  public void testRandomUpdates() {
+    Random random = new Random(42);
+    String[] replacements = {"", "a", "\n", "\r", "\r\n", "b\nc", "\n\r", "de\r"};
+    StringBuilder text = new StringBuilder("First line\nSecond line\r\nThird line\rFourth line");
+    LineIndex lineIndex = new LineIndex(text);
+
+    for (int i = 0; i < 3000; i++) {
+      int fromPos = random.nextInt(text.length() + 1);
+      int toPos = fromPos + random.nextInt(Math.min(text.length() - fromPos, 4) + 1);
+      String replacement = replacements[random.nextInt(replacements.length)];
+      text.replace(fromPos, toPos, replacement);
+      lineIndex.update(text, fromPos, toPos, replacement.length());
+      Assertions.assertEquals(new LineIndex(text), lineIndex);
+    }
+  }
+}
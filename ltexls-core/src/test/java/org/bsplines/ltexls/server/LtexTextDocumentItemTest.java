@@ -103,6 +103,43 @@ public class LtexTextDocumentItemTest {
     assertNull(document.getCaretPosition());
   }
 
+  @Test
+  public void testApplyIncrementalTextChangeEventsWithLineBreaks() {
+    LtexLanguageServer languageServer = new LtexLanguageServer();
+    LtexTextDocumentItem document = new LtexTextDocumentItem(
+        languageServer,"untitled:text.md", "markdown", 1, "ab\rcd\nef");
+
+    document.applyTextChangeEvent(new TextDocumentContentChangeEvent(
+        new Range(new Position(1, 0), new Position(1, 0)), 0, "\n"));
+    Assertions.assertEquals("ab\r\ncd\nef", document.getText());
+    assertPosition(document, 4, new Position(1, 0));
+    assertPosition(document, 7, new Position(2, 0));
+
+    document.applyTextChangeEvent(new TextDocumentContentChangeEvent(
+        new Range(new Position(0, 2), new Position(1, 1)), 4, "X\r"));
+    Assertions.assertEquals("abX\rd\nef", document.getText());
+    assertPosition(document, 4, new Position(1, 0));
+    assertPosition(document, 6, new Position(2, 0));
+
+    document.applyTextChangeEvent(new TextDocumentContentChangeEvent(
+        new Range(new Position(1, 0), new Position(1, 1)), 1, ""));
+    Assertions.assertEquals("abX\r\nef", document.getText());
+    assertPosition(document, 5, new Position(1, 0));
+    Assertions.assertEquals(7, document.convertPosition(new Position(2, 0)));
+
+    document.applyTextChangeEvent(new TextDocumentContentChangeEvent(
+        new Range(new Position(1, 2), new Position(1, 2)), 0, "\r"));
+    Assertions.assertEquals("abX\r\nef\r", document.getText());
+    Assertions.assertEquals(new Position(2, 0), document.convertPosition(8));
+
+    LtexTextDocumentItem expectedDocument = new LtexTextDocumentItem(
+        languageServer,"untitled:text.md", "markdown", 1, "abX\r\nef\r");
+
+    for (int pos = 0; pos <= 8; pos++) {
+      Assertions.assertEquals(expectedDocument.convertPosition(pos), document.convertPosition(pos));
+    }
+  }
+
   @Test
   public void testApplyFullTextChangeEvents() {
     LtexLanguageServer languageServer = new LtexLanguageServer();
@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.concurrent.ExecutionException;
+import org.bsplines.ltexls.settings.CheckFrequency;
 import org.bsplines.ltexls.tools.Tools;
 import org.eclipse.lsp4j.DidChangeConfigurationParams;
 import org.eclipse.lsp4j.DidChangeWatchedFilesParams;
@@ -37,6 +38,22 @@ public class LtexWorkspaceServiceTest {
         new DidChangeWatchedFilesParams()));
   }
 
+  @Test
+  public void testDidChangeConfiguration() {
+    LtexLanguageServer server = new LtexLanguageServer();
+    final LtexWorkspaceService service = new LtexWorkspaceService(server);
+    Assertions.assertEquals(CheckFrequency.EDIT,
+        server.getSettingsManager().getSettings().getCheckFrequency());
+
+    JsonObject jsonSettings = new JsonObject();
+    jsonSettings.addProperty("checkFrequency", "manual");
+    JsonObject settings = new JsonObject();
+    settings.add("ltex", jsonSettings);
+    service.didChangeConfiguration(new DidChangeConfigurationParams(settings));
+    Assertions.assertEquals(CheckFrequency.MANUAL,
+        server.getSettingsManager().getSettings().getCheckFrequency());
+  }
+
   private static void assertCheckDocumentResult(String uri, boolean expected)
         throws InterruptedException, ExecutionException {
     LtexLanguageServer server = new LtexLanguageServer();
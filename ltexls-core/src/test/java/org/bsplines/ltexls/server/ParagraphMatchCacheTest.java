@@ -0,0 +1,102 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
+import org.bsplines.ltexls.parsing.AnnotatedTextFragment;
+import org.bsplines.ltexls.parsing.CodeFragment;
+import org.bsplines.ltexls.settings.Settings;
+import org.bsplines.ltexls.settings.SettingsManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.languagetool.markup.AnnotatedTextBuilder;
+
+public class ParagraphMatchCacheTest {
+  @Test
+  public void testDictionaryChange() {
+    String paragraph = "This is a Qwertyzuiopa.\n";
+    List<LanguageToolRuleMatch> matches = new ArrayList<>();
+    Settings settings = (new Settings()).withDictionary(
+        new HashSet<>(Arrays.asList("foo", "bar")));
+    ParagraphMatchCache paragraphMatchCache = new ParagraphMatchCache();
+    paragraphMatchCache.put(settings, paragraph, matches);
+    paragraphMatchCache.finishCheck();
+
+    Assertions.assertTrue(paragraphMatchCache.get(settings, paragraph) == matches);
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withDictionary(new HashSet<>(Arrays.asList("foo"))), paragraph) == matches);
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withDictionary(new HashSet<>(Arrays.asList("foo", "bar", "baz"))), paragraph)
+        == matches);
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withDictionary(new HashSet<>(Arrays.asList("foo", "bar", "qwertyzuiopa"))),
+        paragraph) == null);
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withDictionary(new HashSet<>(Arrays.asList("foo", "bar", "BsPlInEs"))),
+        paragraph) == null);
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withLanguageShortCode("de-DE"), paragraph) == null);
+
+    paragraphMatchCache.finishCheck();
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withDictionary(Collections.emptySet()), paragraph) == matches);
+  }
+
+  @Test
+  public void testDictionaryChangeWithSpellingMatch() {
+    String paragraph = "This is a Qwertyzuiopa.\n";
+    Settings settings = (new Settings()).withDictionary(
+        new HashSet<>(Arrays.asList("foo", "bar")));
+    AnnotatedTextFragment annotatedTextFragment = new AnnotatedTextFragment(
+        (new AnnotatedTextBuilder()).addText(paragraph).build(),
+        new CodeFragment("plaintext", paragraph, 0, settings));
+    List<LanguageToolRuleMatch> matches = Collections.singletonList(new LanguageToolRuleMatch(
+        "MORFOLOGIK_RULE_EN_US", paragraph, 10, 22, "Possible spelling mistake found.",
+        Collections.singletonList("Qwerty"), annotatedTextFragment));
+    ParagraphMatchCache paragraphMatchCache = new ParagraphMatchCache();
+    paragraphMatchCache.put(settings, paragraph, matches);
+    paragraphMatchCache.finishCheck();
+
+    // the suggestions of spelling matches depend on the dictionary
+    Assertions.assertTrue(paragraphMatchCache.get(settings, paragraph) == matches);
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withDictionary(new HashSet<>(Arrays.asList("foo", "bar", "qwerty"))),
+        paragraph) == null);
+    Assertions.assertTrue(paragraphMatchCache.get(
+        settings.withDictionary(new HashSet<>(Arrays.asList("foo"))), paragraph) == null);
+  }
+
+  @Test
+  public void testDictionaryChangeInDocumentChecker() {
+    LtexTextDocumentItem document = DocumentCheckerTest.createDocument("markdown",
+        "This is a qwertyzuiopa.\n\nThis is an asdfghjklo.\n");
+    Settings settings = new Settings();
+    DocumentChecker documentChecker = new DocumentChecker(new SettingsManager(settings));
+    ParagraphMatchCache paragraphMatchCache = new ParagraphMatchCache();
+    Assertions.assertEquals(2,
+        DocumentCheckerTest.checkDocument(documentChecker, document, settings,
+            paragraphMatchCache).getKey().size());
+
+    Settings otherSettings = settings.withDictionary(
+        new HashSet<>(Arrays.asList("qwertyzuiopa")));
+    List<LanguageToolRuleMatch> matches =
+        DocumentCheckerTest.checkDocument(
+            documentChecker, document, otherSettings, paragraphMatchCache).getKey();
+    Assertions.assertEquals(1, matches.size());
+    Assertions.assertEquals(36, matches.get(0).getFromPos());
+
+    Assertions.assertEquals(2,
+        DocumentCheckerTest.checkDocument(documentChecker, document, settings,
+            paragraphMatchCache).getKey().size());
+  }
+}
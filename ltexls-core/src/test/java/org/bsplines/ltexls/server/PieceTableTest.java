@@ -0,0 +1,67 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PieceTableTest {
+  private static void assertText(String expected, PieceTable pieceTable) {
+    Assertions.assertEquals(expected.length(), pieceTable.length());
+
+    for (int i = 0; i < expected.length(); i++) {
+      Assertions.assertEquals(expected.charAt(i), pieceTable.charAt(i));
+    }
+
+    Assertions.assertEquals(expected, pieceTable.toString());
+  }
+
+  @Test
+  public void testReplace() {
+    PieceTable pieceTable = new PieceTable("abcdef");
+    assertText("abcdef", pieceTable);
+
+    pieceTable.replace(3, 3, "123");
+    assertText("abc123def", pieceTable);
+    pieceTable.replace(0, 2, "");
+    assertText("c123def", pieceTable);
+    pieceTable.replace(7, 7, "gh");
+    pieceTable.replace(2, 5, "X");
+    assertText("c1Xefgh", pieceTable);
+    pieceTable.replace(0, 7, "");
+    assertText("", pieceTable);
+    pieceTable.replace(0, 0, "new");
+    assertText("new", pieceTable);
+
+    Assertions.assertEquals("ew", pieceTable.subSequence(1, 3).toString());
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> pieceTable.replace(2, 4, ""));
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> pieceTable.charAt(3));
+  }
+
+  @Test
+  public void testRandomReplacements() {
+    Random random = new Random(42);
+    StringBuilder expected = new StringBuilder("The quick brown fox jumps over the lazy dog.");
+    PieceTable pieceTable = new PieceTable(expected.toString());
+
+    for (int i = 0; i < 3000; i++) {
+      int fromPos = random.nextInt(expected.length() + 1);
+      int toPos = fromPos + random.nextInt(Math.min(expected.length() - fromPos, 5) + 1);
+      String replacement = "xyz\n".substring(random.nextInt(4));
+      expected.replace(fromPos, toPos, replacement);
+      pieceTable.replace(fromPos, toPos, replacement);
+
+      int pos = random.nextInt(expected.length());
+      Assertions.assertEquals(expected.charAt(pos), pieceTable.charAt(pos));
+      if (i % 500 == 0) assertText(expected.toString(), pieceTable);
+    }
+
+    assertText(expected.toString(), pieceTable);
+  }
+}
@@ -0,0 +1,60 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.server;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.bsplines.ltexls.languagetool.LanguageToolRuleMatch;
+import org.bsplines.ltexls.parsing.CodeAnnotatedTextBuilder;
+import org.bsplines.ltexls.parsing.CodeFragment;
+import org.bsplines.ltexls.parsing.CodeFragmentizer;
+import org.bsplines.ltexls.settings.Settings;
+import org.bsplines.ltexls.settings.SettingsManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Benchmark of the time from startup to the first diagnostic of a LaTeX document, split into
+ * the time to the first annotated text (class initialization of the LaTeX parser, including
+ * the default command signatures) and the time to check it (mostly the initialization of
+ * LanguageTool). This is not run by default (the class name does not end with @c Test); as the
+ * benchmark has to run in a fresh JVM, run it on its own with
+ * <code>mvn test -Dtest=StartupBenchmark</code>.
+ */
+public class StartupBenchmark {
+  private static final String code =
+      "This is a \\textbf{test} of the \\emph{startup}\\footnote{See \\cite{knuth}.} "
+      + "with $a^2 + b^2 = c^2$.\n"
+      + "This is an qwertyzuiopa.\n";
+
+  @Test
+  public void benchmarkFirstLatexDiagnostic() {
+    Instant startInstant = Instant.now();
+    Settings settings = new Settings();
+    CodeFragmentizer fragmentizer = CodeFragmentizer.create("latex");
+
+    for (CodeFragment codeFragment : fragmentizer.fragmentize(code, settings)) {
+      CodeAnnotatedTextBuilder builder = CodeAnnotatedTextBuilder.create("latex");
+      builder.setSettings(codeFragment.getSettings());
+      builder.addCode(codeFragment.getCode()).build();
+    }
+
+    final Duration parsingDuration = Duration.between(startInstant, Instant.now());
+    Instant checkingStartInstant = Instant.now();
+    DocumentChecker documentChecker = new DocumentChecker(new SettingsManager(settings));
+    List<LanguageToolRuleMatch> matches = documentChecker.check(
+        DocumentCheckerTest.createDocument("latex", code)).getKey();
+    Instant endInstant = Instant.now();
+
+    Assertions.assertFalse(matches.isEmpty());
+    System.out.println(String.format("First LaTeX diagnostic after %d ms: first annotated text "
+        + "after %d ms, checking %d ms", Duration.between(startInstant, endInstant).toMillis(),
+        parsingDuration.toMillis(), Duration.between(checkingStartInstant, endInstant).toMillis()));
+  }
+}
@@ -0,0 +1,122 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.settings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.bsplines.ltexls.languagetool.LanguageToolInterface;
+import org.checkerframework.checker.nullness.NullnessUtil;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.languagetool.ResultCache;
+
+public class LanguageToolInterfacePoolTest {
+  @Test
+  public void testLease() {
+    LanguageToolInterfacePool pool = new LanguageToolInterfacePool(2, 4);
+    Settings settings = (new Settings()).withLanguageShortCode("en-US");
+    LanguageToolInterface firstInstance = NullnessUtil.castNonNull(pool.lease(settings));
+    LanguageToolInterface secondInstance = NullnessUtil.castNonNull(pool.lease(settings));
+    Assertions.assertNotSame(firstInstance, secondInstance);
+
+    pool.release(firstInstance);
+    Assertions.assertSame(firstInstance, NullnessUtil.castNonNull(pool.lease(
+        settings.withDiagnosticSeverity(settings.getDiagnosticSeverity()))));
+    pool.release(firstInstance);
+
+    Settings otherSettings = settings.withDisabledRules(Collections.singleton("FOOBAR"));
+    LanguageToolInterface otherInstance = NullnessUtil.castNonNull(pool.lease(otherSettings));
+    Assertions.assertNotSame(firstInstance, otherInstance);
+    Assertions.assertNotSame(secondInstance, otherInstance);
+  }
+
+  @Test
+  public void testMaxInstanceCount() throws InterruptedException, ExecutionException {
+    LanguageToolInterfacePool pool = new LanguageToolInterfacePool(1, 1);
+    Settings settings = new Settings();
+    LanguageToolInterface instance = NullnessUtil.castNonNull(pool.lease(settings));
+    CompletableFuture<LanguageToolInterface> future = CompletableFuture.supplyAsync(
+        () -> NullnessUtil.castNonNull(pool.lease(settings)));
+
+    Thread.sleep(200);
+    Assertions.assertFalse(future.isDone());
+    pool.release(instance);
+    Assertions.assertSame(instance, future.get());
+  }
+
+  @Test
+  public void testEviction() {
+    LanguageToolInterfacePool pool = new LanguageToolInterfacePool(1, 2);
+    Settings englishSettings = (new Settings()).withLanguageShortCode("en-US");
+    Settings germanSettings = (new Settings()).withLanguageShortCode("de-DE");
+    final Settings frenchSettings = (new Settings()).withLanguageShortCode("fr");
+
+    LanguageToolInterface englishInstance =
+        NullnessUtil.castNonNull(pool.lease(englishSettings));
+    pool.release(englishInstance);
+    LanguageToolInterface germanInstance = NullnessUtil.castNonNull(pool.lease(germanSettings));
+    pool.release(germanInstance);
+    Assertions.assertSame(englishInstance,
+        NullnessUtil.castNonNull(pool.lease(englishSettings)));
+    pool.release(englishInstance);
+    Assertions.assertEquals(2, pool.getInstanceCount());
+    Assertions.assertEquals(1, pool.getHitCount());
+    Assertions.assertEquals(2, pool.getMissCount());
+    Assertions.assertEquals(0, pool.getEvictionCount());
+
+    // German is the least recently used language
+    LanguageToolInterface frenchInstance = NullnessUtil.castNonNull(pool.lease(frenchSettings));
+    pool.release(frenchInstance);
+    Assertions.assertEquals(2, pool.getInstanceCount());
+    Assertions.assertEquals(1, pool.getEvictionCount());
+    Assertions.assertSame(englishInstance,
+        NullnessUtil.castNonNull(pool.lease(englishSettings)));
+    pool.release(englishInstance);
+    Assertions.assertNotSame(germanInstance,
+        NullnessUtil.castNonNull(pool.lease(germanSettings)));
+    Assertions.assertEquals(2, pool.getInstanceCount());
+    Assertions.assertEquals(2, pool.getHitCount());
+    Assertions.assertEquals(4, pool.getMissCount());
+    Assertions.assertEquals(2, pool.getEvictionCount());
+  }
+
+  @Test
+  public void testResultCache() {
+    LanguageToolInterfacePool pool = new LanguageToolInterfacePool(1, 4);
+    Settings settings = (new Settings()).withLanguageShortCode("en-US");
+    pool.release(NullnessUtil.castNonNull(pool.lease(settings)));
+    ResultCache resultCache = NullnessUtil.castNonNull(pool.getResultCache(settings));
+    Assertions.assertEquals(1, pool.getResultCacheCount());
+
+    Settings dictionarySettings = settings.withDictionary(
+        new HashSet<>(Arrays.asList("foo", "bar")));
+    pool.release(NullnessUtil.castNonNull(pool.lease(dictionarySettings)));
+    Assertions.assertTrue(pool.getResultCache(dictionarySettings) == resultCache);
+    Assertions.assertEquals(1, pool.getResultCacheCount());
+
+    // matches of language model rules must not be shared with instances without these rules
+    Settings languageModelSettings =
+        settings.withLanguageModelRulesDirectory("/nonexistent/ngrams");
+    pool.release(NullnessUtil.castNonNull(pool.lease(languageModelSettings)));
+    Assertions.assertTrue(pool.getResultCache(languageModelSettings) != null);
+    Assertions.assertTrue(pool.getResultCache(languageModelSettings) != resultCache);
+    Assertions.assertTrue(pool.getResultCache(settings) == null);
+    Assertions.assertEquals(1, pool.getResultCacheCount());
+
+    Settings germanSettings = (new Settings()).withLanguageShortCode("de-DE");
+    pool.release(NullnessUtil.castNonNull(pool.lease(germanSettings)));
+    Assertions.assertEquals(2, pool.getResultCacheCount());
+    pool.release(NullnessUtil.castNonNull(pool.lease(
+        germanSettings.withDictionary(Collections.singleton("BsPlInEs")))));
+    Assertions.assertTrue(pool.getResultCache(germanSettings) == null);
+    Assertions.assertEquals(2, pool.getResultCacheCount());
+  }
+}
@@ -0,0 +1,57 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.bsplines.ltexls.settings;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SettingsManagerTest {
+  @Test
+  public void testScopeSettings() {
+    SettingsManager settingsManager = new SettingsManager();
+    JsonObject jsonSettings = new JsonObject();
+    jsonSettings.addProperty("language", "de-DE");
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-1") == null);
+
+    int generation = settingsManager.getScopeSettingsGeneration();
+    Settings settings = settingsManager.resolveScopeSettings(
+        "untitled:Untitled-1", generation, jsonSettings, new JsonObject());
+    Assertions.assertEquals("de-DE", settings.getLanguageShortCode());
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-1") == settings);
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-2") == null);
+
+    JsonObject jsonSettings2 = new JsonObject();
+    jsonSettings2.addProperty("language", "de-DE");
+    Assertions.assertSame(settings, settingsManager.resolveScopeSettings(
+        "untitled:Untitled-2", generation, jsonSettings2, new JsonObject()));
+
+    settingsManager.invalidateScopeSettings();
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-1") == null);
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-2") == null);
+
+    // configuration that has been requested before the invalidation
+    settingsManager.resolveScopeSettings(
+        "untitled:Untitled-1", generation, jsonSettings, new JsonObject());
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-1") == null);
+
+    generation = settingsManager.getScopeSettingsGeneration();
+    settingsManager.resolveScopeSettings(
+        "untitled:Untitled-1", generation, jsonSettings, new JsonObject());
+    settingsManager.resolveScopeSettings(
+        "untitled:Untitled-2", generation, jsonSettings, new JsonObject());
+    settingsManager.removeScopeSettings("untitled:Untitled-1");
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-1") == null);
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-2") == settings);
+
+    // configuration that has been requested before the document has been closed
+    settingsManager.resolveScopeSettings(
+        "untitled:Untitled-1", generation, jsonSettings, new JsonObject());
+    Assertions.assertTrue(settingsManager.getScopeSettings("untitled:Untitled-1") == null);
+  }
+}
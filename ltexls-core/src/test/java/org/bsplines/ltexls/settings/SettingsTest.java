@@ -64,6 +64,23 @@ public class SettingsTest {
     Assertions.assertEquals(!differenceRelevant,
         otherSettings2.getDifferencesRelevantForLanguageTool(settings2).isEmpty());
 
+    Assertions.assertEquals(settings.getLanguageToolFingerprint(),
+        settings2.getLanguageToolFingerprint());
+    Assertions.assertEquals(settings.getLanguageToolFingerprint().hashCode(),
+        settings2.getLanguageToolFingerprint().hashCode());
+    Assertions.assertSame(settings.getLanguageToolFingerprint(),
+        settings.getLanguageToolFingerprint());
+    Assertions.assertEquals(settings.getLanguageToolRuleFingerprint(),
+        settings2.getLanguageToolRuleFingerprint());
+
+    if (differenceRelevant) {
+      Assertions.assertNotEquals(settings.getLanguageToolFingerprint(),
+          otherSettings.getLanguageToolFingerprint());
+    } else if (settings.getLanguageShortCode().equals(otherSettings.getLanguageShortCode())) {
+      Assertions.assertEquals(settings.getLanguageToolFingerprint(),
+          otherSettings.getLanguageToolFingerprint());
+    }
+
     return settings2;
   }
 
@@ -108,6 +125,13 @@ public class SettingsTest {
     settings = settings.withLatexCommands(Collections.singletonMap("latexCommand", "ignore"));
     Assertions.assertEquals(Collections.singletonMap("latexCommand", "ignore"),
         settings.getLatexCommands());
+    Assertions.assertEquals(Collections.singleton("latexCommand"),
+        settings.getIgnoredLatexCommandPrototypes());
+    Assertions.assertSame(settings.getIgnoredLatexCommandPrototypes(),
+        settings.withLanguageShortCode("de-DE").getIgnoredLatexCommandPrototypes());
+    Assertions.assertTrue(settings.withLatexCommands(
+        Collections.singletonMap("latexCommand", "dummy"))
+        .getIgnoredLatexCommandPrototypes().isEmpty());
     settings2 = compareSettings(settings, settings2, false);
 
     settings = settings.withLatexEnvironments(
@@ -170,6 +194,10 @@ public class SettingsTest {
     settings = settings.withClearDiagnosticsWhenClosingFile(false);
     Assertions.assertEquals(false, settings.getClearDiagnosticsWhenClosingFile());
     settings2 = compareSettings(settings, settings2, false);
+
+    settings = settings.withCheckDelay(1337);
+    Assertions.assertEquals(1337, settings.getCheckDelay());
+    settings2 = compareSettings(settings, settings2, false);
   }
 
   @Test
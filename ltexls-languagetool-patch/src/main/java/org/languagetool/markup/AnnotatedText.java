@@ -20,11 +20,9 @@ package org.languagetool.markup;
 
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -46,31 +44,164 @@ public class AnnotatedText {
     EmailNumberOfAttachments
   }
 
-  private static class MappingEntryComparator
-        implements Comparator<Map.Entry<Integer, Integer>>, Serializable {
-    private static final long serialVersionUID = 4375747732047541460L;
+  /**
+   * Read-only view of a mapping between the positions of two texts. The mapping consists of
+   * pairs of corresponding positions, which are stored in two parallel arrays and sorted by the
+   * positions in the first text (and then by the positions in the second text). The arrays are
+   * shared and never copied, unless they have to be sorted.
+   * @since 5.1
+   */
+  public static final class Mapping {
+    private final int[] fromPositions;
+    private final int[] toPositions;
+
+    Mapping(int[] fromPositions, int[] toPositions) {
+      if (fromPositions.length != toPositions.length) {
+        throw new IllegalArgumentException("position arrays must have the same length: "
+            + fromPositions.length + " != " + toPositions.length);
+      }
+
+      if (isSorted(fromPositions, toPositions)) {
+        this.fromPositions = fromPositions;
+        this.toPositions = toPositions;
+      } else {
+        // pack the pairs into longs that are ordered like the pairs, such that they can be sorted
+        // without boxing
+        long[] pairs = new long[fromPositions.length];
+
+        for (int i = 0; i < pairs.length; i++) {
+          pairs[i] = ((long)fromPositions[i] << 32) | ((long)toPositions[i] - Integer.MIN_VALUE);
+        }
+
+        Arrays.sort(pairs);
+        this.fromPositions = new int[pairs.length];
+        this.toPositions = new int[pairs.length];
+
+        for (int i = 0; i < pairs.length; i++) {
+          this.fromPositions[i] = (int)(pairs[i] >> 32);
+          this.toPositions[i] = (int)((pairs[i] & 0xffffffffL) + Integer.MIN_VALUE);
+        }
+      }
+    }
+
+    private static boolean isSorted(int[] fromPositions, int[] toPositions) {
+      for (int i = 1; i < fromPositions.length; i++) {
+        if ((fromPositions[i - 1] > fromPositions[i]) || ((fromPositions[i - 1] == fromPositions[i])
+            && (toPositions[i - 1] > toPositions[i]))) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    public int size() {
+      return fromPositions.length;
+    }
+
+    public int getFromPosition(int index) {
+      return fromPositions[index];
+    }
+
+    public int getToPosition(int index) {
+      return toPositions[index];
+    }
+
+    /**
+     * Return the inverse mapping, which maps positions of the second text to positions of the
+     * first text. If the mapping is monotonic in both texts (as mappings created by
+     * {@link AnnotatedTextBuilder} are), the arrays are shared with this mapping.
+     * @return inverse mapping
+     */
+    public Mapping inverse() {
+      return new Mapping(toPositions, fromPositions);
+    }
 
-    @Override
-    public int compare(Map.Entry<Integer, Integer> o1, Map.Entry<Integer, Integer> o2) {
-      int result = o1.getKey().compareTo(o2.getKey());
-      if (result == 0) result = o1.getValue().compareTo(o2.getValue());
-      return result;
+    /**
+     * Map a position of the first text to the corresponding position of the second text.
+     * Positions between two pairs of the mapping are interpolated linearly, positions before the
+     * first or after the last pair are shifted by the offset of that pair. If several pairs have
+     * the same position in the first text, the last of them is used.
+     * @param fromPosition position in the first text
+     * @return corresponding position in the second text
+     */
+    public int map(int fromPosition) {
+      int size = fromPositions.length;
+
+      if (size == 0) {
+        throw new IllegalArgumentException("mapping must be non-empty");
+      }
+
+      // find the first pair whose position in the first text is greater than fromPosition
+      int low = 0;
+      int high = size;
+
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+
+        if (fromPositions[mid] <= fromPosition) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+
+      if (low == 0) {
+        return toPositions[0] + (fromPosition - fromPositions[0]);
+      }
+
+      int lowerFromPosition = fromPositions[low - 1];
+
+      if ((lowerFromPosition == fromPosition) || (low == size)) {
+        return toPositions[low - 1] + (fromPosition - lowerFromPosition);
+      } else {
+        // double precision is needed to map positions exactly within long runs of plain text
+        double t = (double)(fromPosition - lowerFromPosition) /
+            (double)(fromPositions[low] - lowerFromPosition);
+        return (int)Math.round((1 - t) * toPositions[low - 1] + t * toPositions[low]);
+      }
     }
   }
 
-  private List<TextPart> parts;
-  private List<Map.Entry<Integer, Integer>> mapping;  // plain text position to original text (with markup) position
-  private MappingEntryComparator mappingEntryComparator;
-  private Map<MetaDataKey, String> metaData;
-  private Map<String, String> customMetaData;
+  private final List<TextPart> parts;
+  private final Mapping mapping;  // plain text position to original text (with markup) position
+  private final Map<MetaDataKey, String> metaData;
+  private final Map<String, String> customMetaData;
+
+  // lazily computed; the parts and the mapping are immutable, so if several threads compute
+  // them at the same time, they compute equal results
+  private String originalText;
+  private String plainText;
+  private String textWithMarkup;
+  private Mapping inverseMapping;
+
+  /**
+   * @param plainTextPositions positions in the plain text; the array is not copied
+   * @param originalTextPositions corresponding positions in the original text (with markup);
+   *     the array is not copied
+   * @since 5.1
+   */
+  public AnnotatedText(List<TextPart> parts, int[] plainTextPositions, int[] originalTextPositions,
+      Map<MetaDataKey, String> metaData, Map<String, String> customMetaData) {
+    this.parts = Objects.requireNonNull(parts);
+    this.mapping = new Mapping(Objects.requireNonNull(plainTextPositions),
+        Objects.requireNonNull(originalTextPositions));
+    this.metaData = Objects.requireNonNull(metaData);
+    this.customMetaData = Objects.requireNonNull(customMetaData);
+  }
 
   public AnnotatedText(List<TextPart> parts, List<Map.Entry<Integer, Integer>> mapping,
       Map<MetaDataKey, String> metaData, Map<String, String> customMetaData) {
-    initialize(parts, mapping, metaData, customMetaData);
+    this(parts, getKeys(mapping), getValues(mapping), metaData, customMetaData);
   }
 
   public AnnotatedText(List<TextPart> parts, Map<Integer, MappingValue> mapping,
       Map<MetaDataKey, String> metaData, Map<String, String> customMetaData) {
+    this(parts, getTotalPositionMapping(mapping), metaData, customMetaData);
+  }
+
+  private static List<Map.Entry<Integer, Integer>> getTotalPositionMapping(
+      Map<Integer, MappingValue> mapping) {
     List<Map.Entry<Integer, Integer>> integerMapping = new ArrayList<>();
 
     for (Map.Entry<Integer, MappingValue> entry : mapping.entrySet()) {
@@ -78,81 +209,85 @@ public class AnnotatedText {
           entry.getKey(), entry.getValue().getTotalPosition()));
     }
 
-    initialize(parts, integerMapping, metaData, customMetaData);
+    return integerMapping;
   }
 
-  public void initialize(List<TextPart> parts, List<Map.Entry<Integer, Integer>> mapping,
-      Map<MetaDataKey, String> metaData, Map<String, String> customMetaData) {
-    this.parts = Objects.requireNonNull(parts);
-    this.mapping = copyMapping(Objects.requireNonNull(mapping));
-    this.mappingEntryComparator = new MappingEntryComparator();
-    Collections.sort(this.mapping, this.mappingEntryComparator);
-    this.metaData = Objects.requireNonNull(metaData);
-    this.customMetaData = Objects.requireNonNull(customMetaData);
+  private static int[] getKeys(List<Map.Entry<Integer, Integer>> mapping) {
+    int[] keys = new int[mapping.size()];
+    for (int i = 0; i < keys.length; i++) keys[i] = mapping.get(i).getKey();
+    return keys;
+  }
+
+  private static int[] getValues(List<Map.Entry<Integer, Integer>> mapping) {
+    int[] values = new int[mapping.size()];
+    for (int i = 0; i < values.length; i++) values[i] = mapping.get(i).getValue();
+    return values;
   }
 
   /**
    * Get the plain text, without markup and content from {@code interpretAs}.
+   * The text is computed on the first call and cached.
    * @since 4.3
    */
   public String getOriginalText() {
-    StringBuilder sb = new StringBuilder();
-    for (TextPart part : parts) {
-      if (part.getType() == TextPart.Type.TEXT) {
-        sb.append(part.getPart());
-      }
+    String result = originalText;
+
+    if (result == null) {
+      result = joinParts(TextPart.Type.TEXT, TextPart.Type.TEXT);
+      originalText = result;
     }
-    return sb.toString();
+
+    return result;
   }
 
   /**
    * Get the plain text, without markup but with content from {@code interpretAs}.
+   * The text is computed on the first call and cached.
    */
   public String getPlainText() {
-    StringBuilder sb = new StringBuilder();
-    for (TextPart part : parts) {
-      if (part.getType() == TextPart.Type.TEXT || part.getType() == TextPart.Type.FAKE_CONTENT) {
-        sb.append(part.getPart());
-      }
+    String result = plainText;
+
+    if (result == null) {
+      result = joinParts(TextPart.Type.TEXT, TextPart.Type.FAKE_CONTENT);
+      plainText = result;
     }
-    return sb.toString();
+
+    return result;
   }
 
   /**
+   * The text is computed on the first call and cached.
    * @since 4.3
    */
   public String getTextWithMarkup() {
+    String result = textWithMarkup;
+
+    if (result == null) {
+      result = joinParts(TextPart.Type.TEXT, TextPart.Type.MARKUP);
+      textWithMarkup = result;
+    }
+
+    return result;
+  }
+
+  private String joinParts(TextPart.Type type1, TextPart.Type type2) {
     StringBuilder sb = new StringBuilder();
     for (TextPart part : parts) {
-      if (part.getType() != TextPart.Type.FAKE_CONTENT) {
-        sb.append(part.getPart());
+      if (part.getType() == type1 || part.getType() == type2) {
+        part.appendTo(sb);
       }
     }
     return sb.toString();
   }
 
   /**
-   * Return a copy of the internal mapping.
-   * @return copy of the internal mapping
+   * Return a read-only view of the mapping from plain text positions to original text positions.
+   * The view shares the internal arrays, so calling this method doesn't copy the mapping.
+   * @return view of the internal mapping
+   * @since 5.1
    */
-  public List<Map.Entry<Integer, Integer>> getMapping() {
-    return copyMapping(mapping);
-  }
-
-  /**
-   * Return a copy of the specified mapping.
-   * @param mapping arbitrary mapping
-   * @return copy of mapping
-   */
-  private static List<Map.Entry<Integer, Integer>> copyMapping(
-      List<Map.Entry<Integer, Integer>> mapping) {
-    List<Map.Entry<Integer, Integer>> result = new ArrayList<>();
-
-    for (Map.Entry<Integer, Integer> entry : mapping) {
-      result.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue()));
-    }
-
-    return result;
+  public Mapping getMapping() {
+    return mapping;
   }
 
   /**
@@ -172,29 +307,9 @@ public class AnnotatedText {
   public int getOriginalTextPositionFor(int plainTextPosition) {
     if (plainTextPosition < 0) {
       throw new IllegalArgumentException("plainTextPosition must be >= 0: " + plainTextPosition);
-    } else if (mapping.isEmpty()) {
-      throw new IllegalArgumentException("mapping must be non-empty");
-    } else if (mapping.size() == 1) {
-      return mapping.get(0).getValue();
     }
 
-    Map.Entry<Integer, Integer> entry =
-        new AbstractMap.SimpleEntry<>(plainTextPosition, Integer.MAX_VALUE);
-    int i = -Collections.binarySearch(mapping, entry, mappingEntryComparator) - 1;
-    if (i <= 0) i = 1;
-    if (i >= mapping.size()) i = mapping.size() - 1;
-
-    Map.Entry<Integer, Integer> lowerNeighbor = mapping.get(i - 1);
-    Map.Entry<Integer, Integer> upperNeighbor = mapping.get(i);
-
-    if (lowerNeighbor.getKey() == plainTextPosition) {
-      return lowerNeighbor.getValue();
-    } else {
-      float t = (float)(plainTextPosition - lowerNeighbor.getKey()) /
-          (float)(upperNeighbor.getKey() - lowerNeighbor.getKey());
-      int result = Math.round((1 - t) * lowerNeighbor.getValue() + t * upperNeighbor.getValue());
-      return result;
-    }
+    return mapping.map(plainTextPosition);
   }
 
   /**
@@ -208,6 +323,29 @@ public class AnnotatedText {
     return getOriginalTextPositionFor(plainTextPosition);
   }
 
+  /**
+   * Inverse of {@link #getOriginalTextPositionFor(int)}. The inverse mapping is computed on the
+   * first call and cached.
+   * @param originalTextPosition the position in the original text (with markup)
+   * @return the corresponding position in the plain text
+   * @since 5.1
+   */
+  public int getPlainTextPositionFor(int originalTextPosition) {
+    if (originalTextPosition < 0) {
+      throw new IllegalArgumentException(
+          "originalTextPosition must be >= 0: " + originalTextPosition);
+    }
+
+    Mapping result = inverseMapping;
+
+    if (result == null) {
+      result = mapping.inverse();
+      inverseMapping = result;
+    }
+
+    return result.map(originalTextPosition);
+  }
+
   /**
    * @since 3.9
    */
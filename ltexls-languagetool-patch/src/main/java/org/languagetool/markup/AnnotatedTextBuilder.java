@@ -18,7 +18,6 @@
  */
 package org.languagetool.markup;
 
-import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -54,6 +53,13 @@ public class AnnotatedTextBuilder {
   private final Map<AnnotatedText.MetaDataKey, String> metaData = new HashMap<>();
   private final Map<String, String> customMetaData = new HashMap<>();
 
+  // pending part that refers to a range of a source text; adjacent ranges of the same type and
+  // source are merged into it, so that character-wise adding doesn't create a part per character
+  private TextPart.Type pendingType;
+  private CharSequence pendingSource;
+  private int pendingStart;
+  private int pendingEnd;
+
   public AnnotatedTextBuilder() {
   }
 
@@ -83,6 +89,7 @@ public class AnnotatedTextBuilder {
    * {@link org.languagetool.JLanguageTool#check(AnnotatedText)}.
    */
   public AnnotatedTextBuilder addText(String text) {
+    addPendingPart();
     parts.add(new TextPart(text, TextPart.Type.TEXT));
     return this;
   }
@@ -92,6 +99,7 @@ public class AnnotatedTextBuilder {
    * parts will be ignored by LanguageTool when using {@link org.languagetool.JLanguageTool#check(AnnotatedText)}.
    */
   public AnnotatedTextBuilder addMarkup(String markup) {
+    addPendingPart();
     parts.add(new TextPart(markup, TextPart.Type.MARKUP));
     return this;
   }
@@ -103,31 +111,102 @@ public class AnnotatedTextBuilder {
    *                    whitespace, e.g. {@code \n\n} for {@code <p>}
    */
   public AnnotatedTextBuilder addMarkup(String markup, String interpretAs) {
+    addPendingPart();
     parts.add(new TextPart(markup, TextPart.Type.MARKUP));
     parts.add(new TextPart(interpretAs, TextPart.Type.FAKE_CONTENT));
     return this;
   }
 
+  /**
+   * Add a plain text snippet given by a range of a source text. The range is not copied. If the
+   * previously added part is plain text that ends where the range starts in the same source, the
+   * range is merged into that part.
+   * @param source source text, which must not be modified afterwards
+   * @param start start of the range in the source text (inclusive)
+   * @param end end of the range in the source text (exclusive)
+   * @since 5.1
+   */
+  public AnnotatedTextBuilder addText(CharSequence source, int start, int end) {
+    addRange(TextPart.Type.TEXT, source, start, end);
+    return this;
+  }
+
+  /**
+   * Add a markup text snippet given by a range of a source text. The range is not copied. If the
+   * previously added part is markup without {@code interpretAs} that ends where the range starts
+   * in the same source, the range is merged into that part.
+   * @param source source text, which must not be modified afterwards
+   * @param start start of the range in the source text (inclusive)
+   * @param end end of the range in the source text (exclusive)
+   * @since 5.1
+   */
+  public AnnotatedTextBuilder addMarkup(CharSequence source, int start, int end) {
+    addRange(TextPart.Type.MARKUP, source, start, end);
+    return this;
+  }
+
+  /**
+   * Add a markup text snippet given by a range of a source text. The range is not copied.
+   * @param source source text, which must not be modified afterwards
+   * @param start start of the range in the source text (inclusive)
+   * @param end end of the range in the source text (exclusive)
+   * @param interpretAs A string that will be used by the checker instead of the markup
+   * @since 5.1
+   */
+  public AnnotatedTextBuilder addMarkup(CharSequence source, int start, int end,
+      String interpretAs) {
+    addPendingPart();
+    parts.add(new TextPart(source, start, end, TextPart.Type.MARKUP));
+    parts.add(new TextPart(interpretAs, TextPart.Type.FAKE_CONTENT));
+    return this;
+  }
+
+  private void addRange(TextPart.Type type, CharSequence source, int start, int end) {
+    if (start == end) {
+      return;
+    } else if (pendingType == type && pendingSource == source && pendingEnd == start) {
+      pendingEnd = end;
+      return;
+    }
+
+    addPendingPart();
+    pendingType = type;
+    pendingSource = source;
+    pendingStart = start;
+    pendingEnd = end;
+  }
+
+  private void addPendingPart() {
+    if (pendingSource != null) {
+      parts.add(new TextPart(pendingSource, pendingStart, pendingEnd, pendingType));
+      pendingType = null;
+      pendingSource = null;
+    }
+  }
+
   /**
    * Create the annotated text to be passed into {@link org.languagetool.JLanguageTool#check(AnnotatedText)}.
    */
   public AnnotatedText build() {
+    addPendingPart();
     int plainTextPosition = 0;
     int totalPosition = 0;
-    List<Map.Entry<Integer, Integer>> mapping = new ArrayList<>();
-    mapping.add(new AbstractMap.SimpleEntry<>(0, 0));
-    for (TextPart part : parts) {
+    int[] plainTextPositions = new int[parts.size() + 1];
+    int[] totalPositions = new int[parts.size() + 1];
+    for (int i = 0; i < parts.size(); i++) {
+      TextPart part = parts.get(i);
       if (part.getType() == TextPart.Type.TEXT) {
-        plainTextPosition += part.getPart().length();
-        totalPosition += part.getPart().length();
+        plainTextPosition += part.length();
+        totalPosition += part.length();
       } else if (part.getType() == TextPart.Type.MARKUP) {
-        totalPosition += part.getPart().length();
+        totalPosition += part.length();
       } else if (part.getType() == TextPart.Type.FAKE_CONTENT) {
-        plainTextPosition += part.getPart().length();
+        plainTextPosition += part.length();
       }
-      mapping.add(new AbstractMap.SimpleEntry<>(plainTextPosition, totalPosition));
+      plainTextPositions[i + 1] = plainTextPosition;
+      totalPositions[i + 1] = totalPosition;
     }
-    return new AnnotatedText(parts, mapping, metaData, customMetaData);
+    return new AnnotatedText(parts, plainTextPositions, totalPositions, metaData, customMetaData);
   }
 
 }
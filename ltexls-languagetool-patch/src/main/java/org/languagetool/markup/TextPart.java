@@ -22,23 +22,44 @@ import java.util.Objects;
 
 /**
  * A part of a text with markup, either plain text (to be checked by LanguageTool),
- * or markup (to be ignored by LanguageTool).
+ * or markup (to be ignored by LanguageTool). The part refers to a range of a source text,
+ * which is only copied into a string when {@link #getPart()} is called.
  * @since 2.3
  */
 public class TextPart {
 
   public enum Type {TEXT, MARKUP, FAKE_CONTENT}
 
-  private final String part;
+  private final CharSequence source;
+  private final int start;
+  private final int end;
   private final Type typ;
 
   TextPart(String part, Type typ) {
-    this.part = Objects.requireNonNull(part);
+    this(part, 0, part.length(), typ);
+  }
+
+  TextPart(CharSequence source, int start, int end, Type typ) {
+    this.source = Objects.requireNonNull(source);
+    this.start = start;
+    this.end = end;
     this.typ = Objects.requireNonNull(typ);
   }
 
   public String getPart() {
-    return part;
+    return source.subSequence(start, end).toString();
+  }
+
+  /**
+   * @return length of the part, without copying it
+   * @since 5.1
+   */
+  public int length() {
+    return end - start;
+  }
+
+  void appendTo(StringBuilder sb) {
+    sb.append(source, start, end);
   }
 
   public Type getType() {
@@ -47,6 +68,6 @@ public class TextPart {
 
   @Override
   public String toString() {
-    return part;
+    return getPart();
   }
 }
@@ -0,0 +1,188 @@
+/* Copyright (C) 2020 Julian Valentin, LTeX Development Community
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package org.languagetool.markup;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AnnotatedTextTest {
+
+  private static void assertMappingEquals(int[] expectedFromPositions,
+      int[] expectedToPositions, AnnotatedText.Mapping mapping) {
+    Assertions.assertEquals(expectedFromPositions.length, mapping.size());
+
+    for (int i = 0; i < mapping.size(); i++) {
+      Assertions.assertEquals(expectedFromPositions[i], mapping.getFromPosition(i));
+      Assertions.assertEquals(expectedToPositions[i], mapping.getToPosition(i));
+    }
+  }
+
+  private static AnnotatedText buildMarkupText() {
+    return new AnnotatedTextBuilder()
+        .addText("Here is ").addMarkup("<b>").addText("some text").addMarkup("</b>").build();
+  }
+
+  @Test
+  public void testSortedMapping() {
+    int[] fromPositions = {0, 8, 8, 17, 17};
+    int[] toPositions = {0, 8, 11, 20, 24};
+    AnnotatedText.Mapping mapping = new AnnotatedText.Mapping(fromPositions, toPositions);
+    assertMappingEquals(fromPositions, toPositions, mapping);
+
+    Assertions.assertEquals(0, mapping.map(0));
+    Assertions.assertEquals(3, mapping.map(3));
+    Assertions.assertEquals(15, mapping.map(12));
+  }
+
+  @Test
+  public void testUnsortedMapping() {
+    AnnotatedText.Mapping mapping = new AnnotatedText.Mapping(
+        new int[]{17, 0, 8, 17, 8}, new int[]{24, 0, 11, 20, 8});
+    assertMappingEquals(new int[]{0, 8, 8, 17, 17}, new int[]{0, 8, 11, 20, 24}, mapping);
+
+    Assertions.assertEquals(3, mapping.map(3));
+    Assertions.assertEquals(11, mapping.map(8));
+    Assertions.assertEquals(15, mapping.map(12));
+    Assertions.assertEquals(24, mapping.map(17));
+
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> new AnnotatedText.Mapping(new int[]{0, 1}, new int[]{0}));
+  }
+
+  @Test
+  public void testDuplicateKeys() {
+    AnnotatedText annotatedText = buildMarkupText();
+    assertMappingEquals(new int[]{0, 8, 8, 17, 17}, new int[]{0, 8, 11, 20, 24},
+        annotatedText.getMapping());
+
+    // positions at markup boundaries are mapped to the position after the markup
+    Assertions.assertEquals(11, annotatedText.getOriginalTextPositionFor(8));
+    Assertions.assertEquals(11, annotatedText.getOriginalTextPositionFor(8, true));
+    Assertions.assertEquals(24, annotatedText.getOriginalTextPositionFor(17));
+
+    // positions within markup are mapped to the position before the markup
+    Assertions.assertEquals(8, annotatedText.getPlainTextPositionFor(9));
+    Assertions.assertEquals(8, annotatedText.getPlainTextPositionFor(11));
+    Assertions.assertEquals(17, annotatedText.getPlainTextPositionFor(22));
+    Assertions.assertEquals(17, annotatedText.getPlainTextPositionFor(24));
+
+    AnnotatedText fakeContentText = new AnnotatedTextBuilder()
+        .addText("A").addMarkup("<br/>", "\n").addText("B").build();
+    assertMappingEquals(new int[]{0, 1, 1, 2, 3}, new int[]{0, 1, 6, 6, 7},
+        fakeContentText.getMapping());
+    Assertions.assertEquals(6, fakeContentText.getOriginalTextPositionFor(1));
+    Assertions.assertEquals(6, fakeContentText.getOriginalTextPositionFor(2));
+    Assertions.assertEquals(2, fakeContentText.getPlainTextPositionFor(6));
+    Assertions.assertEquals(3, fakeContentText.getPlainTextPositionFor(7));
+  }
+
+  @Test
+  public void testOutOfRangePositions() {
+    AnnotatedText.Mapping mapping = new AnnotatedText.Mapping(
+        new int[]{5, 10, 10}, new int[]{10, 20, 25});
+    Assertions.assertEquals(8, mapping.map(3));
+    Assertions.assertEquals(27, mapping.map(12));
+
+    AnnotatedText.Mapping singleMapping = new AnnotatedText.Mapping(new int[]{3}, new int[]{7});
+    Assertions.assertEquals(4, singleMapping.map(0));
+    Assertions.assertEquals(7, singleMapping.map(3));
+    Assertions.assertEquals(9, singleMapping.map(5));
+
+    AnnotatedText.Mapping emptyMapping = new AnnotatedText.Mapping(new int[0], new int[0]);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> emptyMapping.map(0));
+
+    AnnotatedText annotatedText = buildMarkupText();
+    Assertions.assertEquals(27, annotatedText.getOriginalTextPositionFor(20));
+    Assertions.assertEquals(23, annotatedText.getPlainTextPositionFor(30));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> annotatedText.getOriginalTextPositionFor(-1));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> annotatedText.getPlainTextPositionFor(-1));
+  }
+
+  @Test
+  public void testInverse() {
+    AnnotatedText.Mapping mapping = buildMarkupText().getMapping();
+    AnnotatedText.Mapping inverseMapping = mapping.inverse();
+    assertMappingEquals(new int[]{0, 8, 11, 20, 24}, new int[]{0, 8, 8, 17, 17}, inverseMapping);
+    assertMappingEquals(new int[]{0, 8, 8, 17, 17}, new int[]{0, 8, 11, 20, 24},
+        inverseMapping.inverse());
+
+    for (int plainTextPosition = 0; plainTextPosition <= 17; plainTextPosition++) {
+      Assertions.assertEquals(plainTextPosition,
+          inverseMapping.map(mapping.map(plainTextPosition)));
+    }
+
+    for (int originalTextPosition : new int[]{0, 5, 11, 15, 24}) {
+      Assertions.assertEquals(originalTextPosition,
+          mapping.map(inverseMapping.map(originalTextPosition)));
+    }
+  }
+
+  private static String joinParts(AnnotatedText annotatedText, TextPart.Type type1,
+      TextPart.Type type2) {
+    StringBuilder builder = new StringBuilder();
+
+    for (TextPart part : annotatedText.getParts()) {
+      if ((part.getType() == type1) || (part.getType() == type2)) {
+        builder.append(part.getPart());
+      }
+    }
+
+    return builder.toString();
+  }
+
+  @Test
+  public void testCachedTexts() {
+    String source = "Some <i>text</i> with<br/>markup.";
+    AnnotatedText annotatedText = new AnnotatedTextBuilder()
+        .addText(source, 0, 3).addText(source, 3, 5).addMarkup(source, 5, 8)
+        .addText(source, 8, 12).addMarkup(source, 12, 16).addText(source, 16, 21)
+        .addMarkup(source, 21, 26, "\n").addText(source, 26, 33).build();
+
+    String originalText = annotatedText.getOriginalText();
+    String plainText = annotatedText.getPlainText();
+    String textWithMarkup = annotatedText.getTextWithMarkup();
+    Assertions.assertEquals("Some text withmarkup.", originalText);
+    Assertions.assertEquals("Some text with\nmarkup.", plainText);
+    Assertions.assertEquals(source, textWithMarkup);
+    Assertions.assertEquals(joinParts(annotatedText, TextPart.Type.TEXT, TextPart.Type.TEXT),
+        originalText);
+    Assertions.assertEquals(
+        joinParts(annotatedText, TextPart.Type.TEXT, TextPart.Type.FAKE_CONTENT), plainText);
+    Assertions.assertEquals(joinParts(annotatedText, TextPart.Type.TEXT, TextPart.Type.MARKUP),
+        textWithMarkup);
+
+    Assertions.assertSame(originalText, annotatedText.getOriginalText());
+    Assertions.assertSame(plainText, annotatedText.getPlainText());
+    Assertions.assertSame(textWithMarkup, annotatedText.getTextWithMarkup());
+  }
+
+  @Test
+  public void testGetPlainTextPositionFor() {
+    String source = "Some <i>text</i> with<br/>markup.";
+    AnnotatedText annotatedText = new AnnotatedTextBuilder()
+        .addText(source, 0, 5).addMarkup(source, 5, 8).addText(source, 8, 12)
+        .addMarkup(source, 12, 16).addText(source, 16, 21).addMarkup(source, 21, 26, "\n")
+        .addText(source, 26, 33).build();
+    AnnotatedText.Mapping uncachedInverseMapping = annotatedText.getMapping().inverse();
+
+    Assertions.assertEquals(5, annotatedText.getPlainTextPositionFor(8));
+    Assertions.assertEquals(9, annotatedText.getPlainTextPositionFor(16));
+    Assertions.assertEquals(15, annotatedText.getPlainTextPositionFor(26));
+    Assertions.assertEquals(22, annotatedText.getPlainTextPositionFor(33));
+
+    for (int i = 0; i < 2; i++) {
+      for (int originalTextPosition = 0; originalTextPosition <= source.length();
+          originalTextPosition++) {
+        Assertions.assertEquals(uncachedInverseMapping.map(originalTextPosition),
+            annotatedText.getPlainTextPositionFor(originalTextPosition));
+      }
+    }
+  }
+}